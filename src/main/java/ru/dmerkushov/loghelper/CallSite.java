@@ -0,0 +1,160 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper;
+
+import java.util.Objects;
+
+/**
+ * An immutable logging call site: the class, method and line of the code calling a {@link LoggerWrapper}, with the source class and method strings preformatted (and interned) as they are put to log records.
+ *
+ * @author Dmitriy Merkushov
+ * @see CallSiteCache
+ */
+public final class CallSite {
+
+	/**
+	 * The call site used when the caller could not be resolved
+	 */
+	public static final CallSite UNKNOWN = new CallSite (LoggerWrapper.UNKNOWN_SOURCE_CLASS, LoggerWrapper.UNKNOWN_SOURCE_METHOD, -1, LoggerWrapper.UNKNOWN_SOURCE_CLASS, LoggerWrapper.UNKNOWN_SOURCE_METHOD);
+	/**
+	 * The call site used when no caller information is captured: all its names are null
+	 * @see CallerInfoMode#NONE
+	 */
+	public static final CallSite NONE = new CallSite (null, null, -1, null, null);
+
+	private final String className;
+	private final String methodName;
+	private final int lineNumber;
+	private final String sourceClassName;
+	private final String sourceMethodName;
+
+	/**
+	 * Create a call site. The source method name is formatted as <code>method():line</code>
+	 *
+	 * @param className
+	 * @param methodName
+	 * @param lineNumber
+	 */
+	public CallSite (String className, String methodName, int lineNumber) {
+		this (className.intern (), methodName.intern (), lineNumber, className.intern (), (methodName + "():" + lineNumber).intern ());
+	}
+
+	private CallSite (String className, String methodName, int lineNumber, String sourceClassName, String sourceMethodName) {
+		this.className = className;
+		this.methodName = methodName;
+		this.lineNumber = lineNumber;
+		this.sourceClassName = sourceClassName;
+		this.sourceMethodName = sourceMethodName;
+	}
+
+	/**
+	 * Create a call site that knows the caller's class and method, but not the line. The source method name is formatted as <code>method()</code>, and the line number is -1
+	 * @param className
+	 * @param methodName
+	 * @return
+	 * @see ru.dmerkushov.loghelper.processor.CallSiteProcessor
+	 */
+	public static CallSite forMethod (String className, String methodName) {
+		return new CallSite (className.intern (), methodName.intern (), -1, className.intern (), (methodName + "()").intern ());
+	}
+
+	/**
+	 * Create a call site that only knows the caller's class. Its method names are null
+	 * @param className
+	 * @return
+	 * @see CallerInfoMode#CLASS_ONLY
+	 */
+	public static CallSite classOnly (String className) {
+		return new CallSite (className, null, -1, className, null);
+	}
+
+	/**
+	 * Get the name of the calling class
+	 * @return
+	 */
+	public String getClassName () {
+		return className;
+	}
+
+	/**
+	 * Get the name of the calling method
+	 * @return may be null if the call site only knows the class
+	 */
+	public String getMethodName () {
+		return methodName;
+	}
+
+	/**
+	 * Get the line number of the call
+	 * @return -1 if the call site does not know the line
+	 */
+	public int getLineNumber () {
+		return lineNumber;
+	}
+
+	/**
+	 * Get the source class name, as it is set to log records
+	 * @return
+	 * @see java.util.logging.LogRecord#setSourceClassName(java.lang.String)
+	 */
+	public String getSourceClassName () {
+		return sourceClassName;
+	}
+
+	/**
+	 * Get the source method name, as it is set to log records, namely <code>method():line</code>
+	 * @return
+	 * @see java.util.logging.LogRecord#setSourceMethodName(java.lang.String)
+	 */
+	public String getSourceMethodName () {
+		return sourceMethodName;
+	}
+
+	/**
+	 * Check if this call site is the one of the given class, method and line
+	 * @param className
+	 * @param methodName
+	 * @param lineNumber
+	 * @return
+	 */
+	boolean matches (String className, String methodName, int lineNumber) {
+		return this.lineNumber == lineNumber && methodName.equals (this.methodName) && className.equals (this.className);
+	}
+
+	@Override
+	public boolean equals (Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof CallSite)) {
+			return false;
+		}
+
+		CallSite other = (CallSite) obj;
+		return lineNumber == other.lineNumber && Objects.equals (className, other.className) && Objects.equals (methodName, other.methodName) && Objects.equals (sourceMethodName, other.sourceMethodName);
+	}
+
+	@Override
+	public int hashCode () {
+		return (Objects.hashCode (className) * 31 + Objects.hashCode (methodName)) * 31 + lineNumber;
+	}
+
+	@Override
+	public String toString () {
+		return sourceClassName + ":" + sourceMethodName;
+	}
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of {@link CallSite call sites}, keyed by class, method and line.
+ * <p>
+ * The cache is a direct-mapped table: each key has exactly one slot, and a new call site evicts the one that occupied its slot. Lookups take no lock: call sites are immutable, so a racy read sees either a complete call site or none.
+ *
+ * @author Dmitriy Merkushov
+ */
+public class CallSiteCache {
+
+	/**
+	 * The default cache capacity, namely 4096 call sites
+	 */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	private final CallSite[] callSites;
+	private final int mask;
+	private final LongAdder hitCount = new LongAdder ();
+	private final LongAdder missCount = new LongAdder ();
+
+	/**
+	 * Create a call site cache with the default capacity
+	 * @see CallSiteCache#DEFAULT_CAPACITY
+	 */
+	public CallSiteCache () {
+		this (DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create a call site cache
+	 * @param capacity maximum number of cached call sites. Rounded up to a power of two
+	 * @throws IllegalArgumentException if the capacity is less than 1
+	 */
+	public CallSiteCache (int capacity) throws IllegalArgumentException {
+		if (capacity < 1) {
+			throw new IllegalArgumentException ("Capacity is less than 1");
+		}
+
+		int tableSize = Integer.highestOneBit (capacity);
+		if (tableSize < capacity) {
+			tableSize <<= 1;
+		}
+
+		callSites = new CallSite[tableSize];
+		mask = tableSize - 1;
+	}
+
+	/**
+	 * Get the call site for the given class, method and line, creating and caching it if it is not cached yet
+	 * @param className
+	 * @param methodName
+	 * @param lineNumber
+	 * @return
+	 */
+	public CallSite get (String className, String methodName, int lineNumber) {
+		int index = index (className, methodName, lineNumber);
+
+		CallSite callSite = callSites[index];
+		if (callSite != null && callSite.matches (className, methodName, lineNumber)) {
+			hitCount.increment ();
+		} else {
+			missCount.increment ();
+			callSite = new CallSite (className, methodName, lineNumber);
+			callSites[index] = callSite;
+		}
+
+		return callSite;
+	}
+
+	/**
+	 * Get the call site for a stack frame
+	 * @param frame
+	 * @return
+	 * @see CallSiteCache#get(java.lang.String, java.lang.String, int)
+	 */
+	public CallSite get (StackWalker.StackFrame frame) {
+		return get (frame.getClassName (), frame.getMethodName (), frame.getLineNumber ());
+	}
+
+	private int index (String className, String methodName, int lineNumber) {
+		int hash = (className.hashCode () * 31 + methodName.hashCode ()) * 31 + lineNumber;
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+
+	/**
+	 * Get the number of lookups that found a cached call site
+	 * @return
+	 */
+	public long getHitCount () {
+		return hitCount.sum ();
+	}
+
+	/**
+	 * Get the number of lookups that had to create a call site
+	 * @return
+	 */
+	public long getMissCount () {
+		return missCount.sum ();
+	}
+
+	/**
+	 * Get the maximum number of cached call sites
+	 * @return
+	 */
+	public int getCapacity () {
+		return callSites.length;
+	}
+
+	/**
+	 * Remove all the cached call sites and reset the hit and miss counts
+	 */
+	public void clear () {
+		Arrays.fill (callSites, null);
+		hitCount.reset ();
+		missCount.reset ();
+	}
+
+}
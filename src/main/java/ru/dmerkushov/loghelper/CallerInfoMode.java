@@ -0,0 +1,39 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper;
+
+/**
+ * How much caller information a {@link LoggerWrapper} captures for its log records
+ *
+ * @author Dmitriy Merkushov
+ * @see LoggerWrapper#setCallerInfoMode(ru.dmerkushov.loghelper.CallerInfoMode, java.util.logging.Level)
+ */
+public enum CallerInfoMode {
+
+	/**
+	 * No caller information: no stack walk is made, source class and method of the records are null
+	 */
+	NONE,
+	/**
+	 * Only the caller's class name: source method of the records is null
+	 */
+	CLASS_ONLY,
+	/**
+	 * Caller's class, method and line
+	 */
+	FULL
+
+}
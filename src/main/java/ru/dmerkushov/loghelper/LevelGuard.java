@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MutableCallSite;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+/**
+ * Level checks of a {@link LoggerWrapper} exposed as method handles that the JIT compiler treats as constants.
+ * <p>
+ * Each level gets a {@link MutableCallSite} whose target always returns the same boolean. When the LoggerWrapper's effective level changes, the targets are relinked and the code compiled against the old constants is deoptimized. So a disabled log statement guarded by such a handle, held in a <code>static final</code> field, is folded away entirely by the JIT, even inside tight loops:
+ * <p>
+ * <code>static final MethodHandle FINEST = LogHelper.getLoggerWrapper ("x").getLevelGuard ().enabled (Level.FINEST);<br>
+ * ...<br>
+ * if ((boolean) FINEST.invokeExact ()) { loggerWrapper.finest (...); }</code>
+ * <p>
+ * Relinking is expensive, so this is meant for loggers whose levels change rarely. Only the levels set through LoggerWrappers relink the guards, not the ones set on the JUL loggers directly.
+ *
+ * @author Dmitriy Merkushov
+ * @see LoggerWrapper#getLevelGuard()
+ */
+public class LevelGuard {
+
+	private static final MethodHandle ENABLED = MethodHandles.constant (boolean.class, true);
+	private static final MethodHandle DISABLED = MethodHandles.constant (boolean.class, false);
+
+	private final LoggerWrapper loggerWrapper;
+	private final ConcurrentHashMap<Level, MutableCallSite> callSites = new ConcurrentHashMap<Level, MutableCallSite> ();
+
+	LevelGuard (LoggerWrapper loggerWrapper) {
+		this.loggerWrapper = loggerWrapper;
+	}
+
+	/**
+	 * Get the method handle telling if the level is loggable. The handle's type is <code>()boolean</code>
+	 * @param level
+	 * @return
+	 */
+	public MethodHandle enabled (Level level) {
+		return callSite (level).dynamicInvoker ();
+	}
+
+	/**
+	 * Check if the level is loggable through the level's method handle
+	 * @param level
+	 * @return
+	 */
+	public boolean isEnabled (Level level) {
+		try {
+			return (boolean) callSite (level).getTarget ().invokeExact ();
+		} catch (Throwable ex) {
+			throw new IllegalStateException (ex);
+		}
+	}
+
+	private MutableCallSite callSite (Level level) {
+		MutableCallSite callSite = callSites.get (level);
+		if (callSite == null) {
+			synchronized (this) {
+				callSite = callSites.get (level);
+				if (callSite == null) {
+					callSite = new MutableCallSite (target (level));
+					callSites.put (level, callSite);
+				}
+			}
+		}
+		return callSite;
+	}
+
+	private MethodHandle target (Level level) {
+		return (loggerWrapper.isLoggable (level) ? ENABLED : DISABLED);
+	}
+
+	/**
+	 * Relink the level call sites to the LoggerWrapper's current effective level
+	 */
+	synchronized void update () {
+		ArrayList<MutableCallSite> changedCallSites = new ArrayList<MutableCallSite> ();
+
+		for (Map.Entry<Level, MutableCallSite> entry : callSites.entrySet ()) {
+			MutableCallSite callSite = entry.getValue ();
+			MethodHandle target = target (entry.getKey ());
+			if (callSite.getTarget () != target) {
+				callSite.setTarget (target);
+				changedCallSites.add (callSite);
+			}
+		}
+
+		if (!changedCallSites.isEmpty ()) {
+			MutableCallSite.syncAll (changedCallSites.toArray (new MutableCallSite[changedCallSites.size ()]));
+		}
+	}
+
+}
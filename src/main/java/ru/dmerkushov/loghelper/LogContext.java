@@ -0,0 +1,262 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+/**
+ * Per-thread logging context (a mapped diagnostic context): key/value pairs, such as a request id or a tenant, attached to every record logged through {@link LoggerWrapper} by the thread.
+ * <p>
+ * The context of a thread is an immutable {@link Snapshot}. Changing the context creates a new snapshot (copy-on-write), so capturing it for a record or passing it to another thread is just a reference copy.
+ * <p>
+ * The context is not inherited by new threads: pool workers and the background threads of the handlers are often created while some request is being served, and would keep its context for good. It is passed to another thread explicitly, by {@link LogContext#wrap(java.lang.Runnable)} or {@link LogContext#setSnapshot(ru.dmerkushov.loghelper.LogContext.Snapshot)}.
+ * <p>
+ * Usage: <code>LogContext.put ("requestId", id); executor.submit (LogContext.wrap (task));</code>
+ *
+ * @author Dmitriy Merkushov
+ */
+public class LogContext {
+
+	private static final ThreadLocal<Snapshot> threadSnapshot = ThreadLocal.withInitial (() -> Snapshot.EMPTY);
+
+	private LogContext () {
+	}
+
+	/**
+	 * Get the current thread's context snapshot
+	 * @return never null
+	 */
+	public static Snapshot getSnapshot () {
+		return threadSnapshot.get ();
+	}
+
+	/**
+	 * Set the current thread's context snapshot
+	 * @param snapshot if null, the context is cleared
+	 * @return the previous snapshot
+	 */
+	public static Snapshot setSnapshot (Snapshot snapshot) {
+		Snapshot previousSnapshot = threadSnapshot.get ();
+		threadSnapshot.set (snapshot != null ? snapshot : Snapshot.EMPTY);
+		return previousSnapshot;
+	}
+
+	/**
+	 * Get a value from the current thread's context
+	 * @param key
+	 * @return may be null if there is no such key
+	 */
+	public static String get (String key) {
+		return threadSnapshot.get ().get (key);
+	}
+
+	/**
+	 * Put a value to the current thread's context, replacing the value with the same key, if any
+	 * @param key
+	 * @param value if null, the key is removed
+	 */
+	public static void put (String key, String value) {
+		threadSnapshot.set (threadSnapshot.get ().with (key, value));
+	}
+
+	/**
+	 * Remove a key from the current thread's context
+	 * @param key
+	 */
+	public static void remove (String key) {
+		threadSnapshot.set (threadSnapshot.get ().without (key));
+	}
+
+	/**
+	 * Clear the current thread's context
+	 */
+	public static void clear () {
+		threadSnapshot.set (Snapshot.EMPTY);
+	}
+
+	/**
+	 * Wrap a task so that it runs with the calling thread's current context, whichever thread runs it. The thread's own context is restored after the task.
+	 * @param task
+	 * @return
+	 */
+	public static Runnable wrap (final Runnable task) {
+		final Snapshot snapshot = getSnapshot ();
+		return () -> {
+			Snapshot previousSnapshot = setSnapshot (snapshot);
+			try {
+				task.run ();
+			} finally {
+				setSnapshot (previousSnapshot);
+			}
+		};
+	}
+
+	/**
+	 * Wrap a task so that it runs with the calling thread's current context, whichever thread runs it. The thread's own context is restored after the task.
+	 * @param <V>
+	 * @param task
+	 * @return
+	 */
+	public static <V> Callable<V> wrap (final Callable<V> task) {
+		final Snapshot snapshot = getSnapshot ();
+		return () -> {
+			Snapshot previousSnapshot = setSnapshot (snapshot);
+			try {
+				return task.call ();
+			} finally {
+				setSnapshot (previousSnapshot);
+			}
+		};
+	}
+
+	/**
+	 * An immutable set of context key/value pairs, in the order the keys were first put
+	 */
+	public static final class Snapshot {
+
+		/**
+		 * The empty context
+		 */
+		public static final Snapshot EMPTY = new Snapshot (new String[0], new String[0]);
+
+		private final String[] keys;
+		private final String[] values;
+
+		private Snapshot (String[] keys, String[] values) {
+			this.keys = keys;
+			this.values = values;
+		}
+
+		/**
+		 * Get the number of keys in the snapshot
+		 * @return
+		 */
+		public int size () {
+			return keys.length;
+		}
+
+		/**
+		 * Check if the snapshot has no keys
+		 * @return
+		 */
+		public boolean isEmpty () {
+			return keys.length == 0;
+		}
+
+		/**
+		 * Get a key by index
+		 * @param index
+		 * @return
+		 */
+		public String getKey (int index) {
+			return keys[index];
+		}
+
+		/**
+		 * Get a value by index
+		 * @param index
+		 * @return
+		 */
+		public String getValue (int index) {
+			return values[index];
+		}
+
+		/**
+		 * Get a value by key
+		 * @param key
+		 * @return may be null if there is no such key
+		 */
+		public String get (String key) {
+			int index = indexOf (key);
+			return (index >= 0 ? values[index] : null);
+		}
+
+		/**
+		 * Get a snapshot with the key set to the value
+		 * @param key
+		 * @param value if null, the key is removed
+		 * @return
+		 * @throws NullPointerException if key is null
+		 */
+		public Snapshot with (String key, String value) throws NullPointerException {
+			if (key == null) {
+				throw new NullPointerException ("key");
+			}
+			if (value == null) {
+				return without (key);
+			}
+
+			int index = indexOf (key);
+			Snapshot snapshot;
+			if (index >= 0) {
+				String[] newValues = values.clone ();
+				newValues[index] = value;
+				snapshot = new Snapshot (keys, newValues);
+			} else {
+				String[] newKeys = Arrays.copyOf (keys, keys.length + 1);
+				String[] newValues = Arrays.copyOf (values, values.length + 1);
+				newKeys[keys.length] = key;
+				newValues[values.length] = value;
+				snapshot = new Snapshot (newKeys, newValues);
+			}
+			return snapshot;
+		}
+
+		/**
+		 * Get a snapshot without the key
+		 * @param key
+		 * @return this snapshot, if it has no such key
+		 */
+		public Snapshot without (String key) {
+			int index = indexOf (key);
+			if (index < 0) {
+				return this;
+			}
+
+			String[] newKeys = new String[keys.length - 1];
+			String[] newValues = new String[values.length - 1];
+			System.arraycopy (keys, 0, newKeys, 0, index);
+			System.arraycopy (values, 0, newValues, 0, index);
+			System.arraycopy (keys, index + 1, newKeys, index, keys.length - index - 1);
+			System.arraycopy (values, index + 1, newValues, index, values.length - index - 1);
+			return new Snapshot (newKeys, newValues);
+		}
+
+		private int indexOf (String key) {
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i].equals (key)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public String toString () {
+			StringBuilder sb = new StringBuilder ();
+			for (int i = 0; i < keys.length; i++) {
+				if (i > 0) {
+					sb.append (", ");
+				}
+				sb.append (keys[i]).append ("=").append (values[i]);
+			}
+			return sb.toString ();
+		}
+
+	}
+
+}
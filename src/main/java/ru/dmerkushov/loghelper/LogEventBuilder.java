@@ -0,0 +1,264 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper;
+
+import java.util.Arrays;
+import java.util.logging.Level;
+
+/**
+ * A fluent builder of a log event with named fields, obtained from {@link LoggerWrapper#at(java.util.logging.Level)}.
+ * <p>
+ * Usage: <code>loggerWrapper.atInfo ().with ("userId", id).with ("latencyNs", ns).log ("served");</code>
+ * <p>
+ * If the level is not loggable, the shared {@link LogEventBuilder#NOOP no-op builder} is used. Otherwise, every thread reuses its own builder, so only the emitted {@link StructuredLogRecord} is allocated. A builder must not be kept after {@link LogEventBuilder#log(java.lang.String)} has been called.
+ * <p>
+ * A builder that is never finished with <code>log</code> is simply dropped: the next event of the thread starts a new builder, which the thread reuses from then on.
+ *
+ * @author Dmitriy Merkushov
+ */
+public class LogEventBuilder {
+
+	/**
+	 * The builder that ignores everything, used for levels that are not loggable
+	 */
+	public static final LogEventBuilder NOOP = new NoopLogEventBuilder ();
+
+	private static final int INITIAL_FIELD_CAPACITY = 8;
+
+	private static final ThreadLocal<LogEventBuilder> threadBuilder = ThreadLocal.withInitial (LogEventBuilder::new);
+
+	static {
+		StackTraceUtils.registerLoggingClass (LogEventBuilder.class);
+	}
+
+	LoggerWrapper loggerWrapper;
+	Level level;
+	Throwable thrown;
+	String[] fieldKeys = new String[INITIAL_FIELD_CAPACITY];
+	StructuredLogRecord.FieldType[] fieldTypes = new StructuredLogRecord.FieldType[INITIAL_FIELD_CAPACITY];
+	long[] longValues = new long[INITIAL_FIELD_CAPACITY];
+	double[] doubleValues = new double[INITIAL_FIELD_CAPACITY];
+	Object[] objectValues = new Object[INITIAL_FIELD_CAPACITY];
+	int fieldCount;
+	boolean inUse;
+
+	LogEventBuilder () {
+	}
+
+	/**
+	 * Get a builder for the calling thread and start an event with it. If the thread's builder is in use (e.g. a field value is computed by a method that logs an event itself, or an event has been left unfinished), a new builder is created and becomes the thread's builder. So an unfinished event costs one allocation, not one per every later event.
+	 *
+	 * @param loggerWrapper
+	 * @param level a level that has been checked as loggable
+	 * @return
+	 */
+	static LogEventBuilder start (LoggerWrapper loggerWrapper, Level level) {
+		LogEventBuilder builder = threadBuilder.get ();
+		if (builder.inUse) {
+			builder = new LogEventBuilder ();
+			threadBuilder.set (builder);
+		}
+
+		builder.inUse = true;
+		builder.loggerWrapper = loggerWrapper;
+		builder.level = level;
+
+		return builder;
+	}
+
+	/**
+	 * Add a named field to the event
+	 *
+	 * @param key
+	 * @param value may be null
+	 * @return this builder
+	 */
+	public LogEventBuilder with (String key, Object value) {
+		objectValues[addField (key, StructuredLogRecord.FieldType.OBJECT)] = value;
+
+		return this;
+	}
+
+	/**
+	 * Add a named character sequence field to the event. The sequence is not copied, so it must not be modified after the event is logged
+	 *
+	 * @param key
+	 * @param value may be null
+	 * @return this builder
+	 */
+	public LogEventBuilder with (String key, CharSequence value) {
+		objectValues[addField (key, StructuredLogRecord.FieldType.CHARS)] = value;
+
+		return this;
+	}
+
+	/**
+	 * Add a named <code>long</code> field to the event, with no boxing
+	 *
+	 * @param key
+	 * @param value
+	 * @return this builder
+	 */
+	public LogEventBuilder with (String key, long value) {
+		longValues[addField (key, StructuredLogRecord.FieldType.LONG)] = value;
+
+		return this;
+	}
+
+	/**
+	 * Add a named <code>int</code> field to the event, with no boxing
+	 *
+	 * @param key
+	 * @param value
+	 * @return this builder
+	 */
+	public LogEventBuilder with (String key, int value) {
+		longValues[addField (key, StructuredLogRecord.FieldType.INT)] = value;
+
+		return this;
+	}
+
+	/**
+	 * Add a named <code>double</code> field to the event, with no boxing
+	 *
+	 * @param key
+	 * @param value
+	 * @return this builder
+	 */
+	public LogEventBuilder with (String key, double value) {
+		doubleValues[addField (key, StructuredLogRecord.FieldType.DOUBLE)] = value;
+
+		return this;
+	}
+
+	/**
+	 * Add a named <code>boolean</code> field to the event, with no boxing
+	 *
+	 * @param key
+	 * @param value
+	 * @return this builder
+	 */
+	public LogEventBuilder with (String key, boolean value) {
+		longValues[addField (key, StructuredLogRecord.FieldType.BOOLEAN)] = (value ? 1 : 0);
+
+		return this;
+	}
+
+	/**
+	 * Add a field key and type, growing the arrays if needed
+	 *
+	 * @param key
+	 * @param fieldType
+	 * @return the index of the new field
+	 */
+	private int addField (String key, StructuredLogRecord.FieldType fieldType) {
+		if (fieldCount == fieldKeys.length) {
+			int newCapacity = fieldCount * 2;
+			fieldKeys = Arrays.copyOf (fieldKeys, newCapacity);
+			fieldTypes = Arrays.copyOf (fieldTypes, newCapacity);
+			longValues = Arrays.copyOf (longValues, newCapacity);
+			doubleValues = Arrays.copyOf (doubleValues, newCapacity);
+			objectValues = Arrays.copyOf (objectValues, newCapacity);
+		}
+
+		int fieldIndex = fieldCount;
+		fieldKeys[fieldIndex] = key;
+		fieldTypes[fieldIndex] = fieldType;
+		fieldCount++;
+
+		return fieldIndex;
+	}
+
+	/**
+	 * Set the Throwable associated with the event
+	 *
+	 * @param thrown
+	 * @return this builder
+	 */
+	public LogEventBuilder withThrown (Throwable thrown) {
+		this.thrown = thrown;
+
+		return this;
+	}
+
+	/**
+	 * Log the event with the given message, and release the builder
+	 *
+	 * @param msg The string message (or a key in the message catalog)
+	 */
+	public void log (String msg) {
+		StructuredLogRecord record = new StructuredLogRecord (level, msg, fieldKeys, fieldTypes, longValues, doubleValues, objectValues, fieldCount);
+		record.setThrown (thrown);
+
+		LoggerWrapper recordLoggerWrapper = loggerWrapper;
+		reset ();
+
+		recordLoggerWrapper.publishRecord (record, null);
+	}
+
+	private void reset () {
+		Arrays.fill (objectValues, 0, fieldCount, null);
+		fieldCount = 0;
+		thrown = null;
+		loggerWrapper = null;
+		level = null;
+		inUse = false;
+	}
+
+	private static class NoopLogEventBuilder extends LogEventBuilder {
+
+		@Override
+		public LogEventBuilder with (String key, Object value) {
+			return this;
+		}
+
+		@Override
+		public LogEventBuilder with (String key, CharSequence value) {
+			return this;
+		}
+
+		@Override
+		public LogEventBuilder with (String key, long value) {
+			return this;
+		}
+
+		@Override
+		public LogEventBuilder with (String key, int value) {
+			return this;
+		}
+
+		@Override
+		public LogEventBuilder with (String key, double value) {
+			return this;
+		}
+
+		@Override
+		public LogEventBuilder with (String key, boolean value) {
+			return this;
+		}
+
+		@Override
+		public LogEventBuilder withThrown (Throwable thrown) {
+			return this;
+		}
+
+		@Override
+		public void log (String msg) {
+		}
+
+	}
+
+}
@@ -15,7 +15,11 @@
  */
 package ru.dmerkushov.loghelper;
 
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 
 /**
  *
@@ -23,24 +27,129 @@ import java.util.HashMap;
  */
 public class LogHelper {
 
-	final static HashMap<String, LoggerWrapper> loggerWrappers = new HashMap<String, LoggerWrapper> ();
+	final static ConcurrentHashMap<String, LoggerWrapper> loggerWrappers = new ConcurrentHashMap<String, LoggerWrapper> ();
+	final static CallSiteCache callSiteCache = new CallSiteCache ();
+	private final static Object levelLock = new Object ();
+	private final static AtomicInteger levelVersion = new AtomicInteger ();
 
+	/**
+	 * Register a LoggerWrapper, replacing the one registered with the same name, if any
+	 * @param loggerWrapper
+	 */
 	public static void registerLoggerWrapper (LoggerWrapper loggerWrapper) {
-		synchronized (loggerWrappers) {
-			loggerWrappers.put (loggerWrapper.getName (), loggerWrapper);
-		}
+		loggerWrappers.put (loggerWrapper.getName (), loggerWrapper);
+	}
+
+	/**
+	 * Register a LoggerWrapper, unless one is already registered with the same name
+	 * @param loggerWrapper
+	 * @return <code>true</code> if the LoggerWrapper has been registered, <code>false</code> if another one was registered before
+	 */
+	static boolean registerLoggerWrapperIfAbsent (LoggerWrapper loggerWrapper) {
+		return loggerWrappers.putIfAbsent (loggerWrapper.getName (), loggerWrapper) == null;
 	}
 
+	/**
+	 * Get the LoggerWrapper with the given name, creating it if needed. Takes no lock: if several threads create the same LoggerWrapper at once, all of them get the one registered first.
+	 * @param name
+	 * @return
+	 */
 	public static LoggerWrapper getLoggerWrapper (String name) {
 		LoggerWrapper loggerWrapper = loggerWrappers.get (name);
 		if (loggerWrapper == null) {
-			synchronized (loggerWrappers) {
-				loggerWrapper = new LoggerWrapper (name);
-				registerLoggerWrapper (loggerWrapper);
-			}
+			new LoggerWrapper (name);
+			loggerWrapper = loggerWrappers.get (name);
 		}
 
 		return loggerWrapper;
 	}
 
+	/**
+	 * Get the LoggerWrappers with the given names, creating the missing ones
+	 * @param names
+	 * @return LoggerWrappers in the order of the names
+	 * @see LogHelper#getLoggerWrapper(java.lang.String)
+	 */
+	public static LoggerWrapper[] getLoggerWrappers (String... names) {
+		LoggerWrapper[] result = new LoggerWrapper[names.length];
+		for (int i = 0; i < names.length; i++) {
+			result[i] = getLoggerWrapper (names[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * Get all the registered LoggerWrappers. The returned collection is a live, unmodifiable view: iterating it takes no lock, and it reflects registrations made during the iteration or not
+	 * @return
+	 */
+	public static Collection<LoggerWrapper> getLoggerWrappers () {
+		return Collections.unmodifiableCollection (loggerWrappers.values ());
+	}
+
+	/**
+	 * Recompute the effective level of a LoggerWrapper and push it to all its descendants, in a single pass over the registry. Used when the own level of the LoggerWrapper changes
+	 * @param loggerWrapper
+	 * @see LoggerWrapper#getEffectiveLevel()
+	 */
+	static void updateEffectiveLevels (LoggerWrapper loggerWrapper) {
+		synchronized (levelLock) {
+			levelVersion.incrementAndGet ();
+
+			String descendantPrefix = loggerWrapper.getName () + ".";
+			for (LoggerWrapper registered : loggerWrappers.values ()) {
+				if (registered == loggerWrapper || registered.getName ().startsWith (descendantPrefix)) {
+					registered.applyEffectiveLevel (resolveEffectiveLevel (registered));
+				}
+			}
+			if (loggerWrappers.get (loggerWrapper.getName ()) != loggerWrapper) {
+				loggerWrapper.applyEffectiveLevel (resolveEffectiveLevel (loggerWrapper));
+			}
+		}
+	}
+
+	/**
+	 * Compute the effective level of a newly registered LoggerWrapper. It has no level of its own, so no descendant depends on it: only its ancestors are looked up, with no lock and no pass over the registry.
+	 * If the level of some LoggerWrapper changes meanwhile, the level is computed again, so that the new LoggerWrapper does not keep a level older than the one pushed by the change
+	 * @param loggerWrapper
+	 * @see LogHelper#updateEffectiveLevels(ru.dmerkushov.loghelper.LoggerWrapper)
+	 */
+	static void initEffectiveLevel (LoggerWrapper loggerWrapper) {
+		int version;
+		do {
+			version = levelVersion.get ();
+			loggerWrapper.applyEffectiveLevel (resolveEffectiveLevel (loggerWrapper));
+		} while (levelVersion.get () != version);
+	}
+
+	/**
+	 * Find the own level of a LoggerWrapper or of its nearest registered ancestor that has one
+	 * @param loggerWrapper
+	 * @return {@link Level#ALL} if neither has its own level
+	 */
+	private static Level resolveEffectiveLevel (LoggerWrapper loggerWrapper) {
+		Level ownLevel = loggerWrapper.getOwnLevel ();
+		String name = loggerWrapper.getName ();
+		while (ownLevel == null) {
+			int dotIndex = name.lastIndexOf ('.');
+			if (dotIndex < 0) {
+				return Level.ALL;
+			}
+			name = name.substring (0, dotIndex);
+
+			LoggerWrapper ancestor = loggerWrappers.get (name);
+			if (ancestor != null) {
+				ownLevel = ancestor.getOwnLevel ();
+			}
+		}
+		return ownLevel;
+	}
+
+	/**
+	 * Get the call site cache shared by all the LoggerWrappers
+	 * @return
+	 */
+	public static CallSiteCache getCallSiteCache () {
+		return callSiteCache;
+	}
+
 }
@@ -9,13 +9,18 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.HashMap;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 import java.util.logging.Handler;
 import java.util.logging.Level;
+import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import ru.dmerkushov.loghelper.configure.LogHelperConfigurator;
+import ru.dmerkushov.loghelper.handler.DeduplicatingHandler;
+import ru.dmerkushov.loghelper.limit.RecordLimiter;
 
 /**
  * Class that slightly extends the functionality of
@@ -31,21 +36,49 @@ import ru.dmerkushov.loghelper.configure.LogHelperConfigurator;
  */
 public class LoggerWrapper {
 
+	/**
+	 * The source class name used when the caller could not be resolved
+	 */
+	public static final String UNKNOWN_SOURCE_CLASS = "(UnknownSourceClass)";
+	/**
+	 * The source method name used when the caller could not be resolved
+	 */
+	public static final String UNKNOWN_SOURCE_METHOD = "(unknownSourceMethod)";
+
+	private static final int OFF_VALUE = Level.OFF.intValue ();
+
 	Logger logger;
 	protected Level defaultLevel = Level.ALL;
 	String name;
+	volatile Level ownLevel;
+	volatile Level appliedLevel;
+	volatile int effectiveLevelValue = Level.ALL.intValue ();
+	volatile LevelGuard levelGuard;
+	volatile CallerInfoMode callerInfoMode = CallerInfoMode.FULL;
+	volatile int callerInfoFullLevelValue = Integer.MAX_VALUE;
+	volatile Supplier<? extends RecordLimiter> recordLimiterFactory;
+	final ConcurrentHashMap<CallSite, RecordLimiter> recordLimiters = new ConcurrentHashMap<CallSite, RecordLimiter> ();
+	long deduplicationWindowMillis = 0L;
+	int deduplicationCapacity = DeduplicatingHandler.DEFAULT_CAPACITY;
 	
 	static {
 		LogHelperConfigurator.configure ();
 	}
 
+	/**
+	 * Create a LoggerWrapper and register it, unless another one with the same name is already registered. The new LoggerWrapper has no level of its own: it inherits the level of its ancestors. Only the registered instance sets the level of the linked logger, so losing a creation race has no side effects
+	 *
+	 * @param name
+	 * @see LogHelper#getLoggerWrapper(java.lang.String)
+	 */
 	protected LoggerWrapper (String name) {
 		logger = Logger.getLogger (name);
-		logger.setLevel (defaultLevel);
 		
 		this.name = name;
 		
-		LogHelper.registerLoggerWrapper (this);
+		if (LogHelper.registerLoggerWrapperIfAbsent (this)) {
+			LogHelper.initEffectiveLevel (this);
+		}
 	}
 
 	/**
@@ -58,12 +91,99 @@ public class LoggerWrapper {
 	}
 
 	/**
-	 * Set the JUL level
+	 * Set the JUL level. It becomes the own level of this LoggerWrapper, inherited by its descendants with no level of their own, and is pushed to them at once
 	 *
-	 * @param level
+	 * @param level if null, this LoggerWrapper inherits its level from its ancestors
+	 * @see LoggerWrapper#getEffectiveLevel()
 	 */
 	public synchronized void setJulLevel (Level level) {
-			logger.setLevel (level);
+		ownLevel = level;
+		LogHelper.updateEffectiveLevels (this);
+	}
+
+	/**
+	 * Get the caller information mode used for records of the given level
+	 *
+	 * @param level
+	 * @return
+	 * @see LoggerWrapper#setCallerInfoMode(ru.dmerkushov.loghelper.CallerInfoMode, java.util.logging.Level)
+	 */
+	public CallerInfoMode getCallerInfoMode (Level level) {
+		return (level.intValue () >= callerInfoFullLevelValue ? CallerInfoMode.FULL : callerInfoMode);
+	}
+
+	/**
+	 * Set the caller information mode for records of all levels
+	 *
+	 * @param mode
+	 */
+	public void setCallerInfoMode (CallerInfoMode mode) {
+		setCallerInfoMode (mode, null);
+	}
+
+	/**
+	 * Set the caller information mode, level-dependent: records at or above <code>fullFromLevel</code> always get {@link CallerInfoMode#FULL full} caller information, the others get the given mode.
+	 * E.g., <code>setCallerInfoMode (CallerInfoMode.NONE, Level.WARNING)</code> makes no stack walk for INFO and below.
+	 *
+	 * @param mode
+	 * @param fullFromLevel may be null, then the mode is used for all levels
+	 * @throws NullPointerException if mode is null
+	 */
+	public synchronized void setCallerInfoMode (CallerInfoMode mode, Level fullFromLevel) throws NullPointerException {
+		if (mode == null) {
+			throw new NullPointerException ("mode");
+		}
+
+		this.callerInfoMode = mode;
+		this.callerInfoFullLevelValue = (fullFromLevel != null ? fullFromLevel.intValue () : Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Get the level at and above which records always get full caller information
+	 *
+	 * @return may be null if the caller information mode is not level-dependent
+	 */
+	public Level getCallerInfoFullLevel () {
+		int fullLevelValue = callerInfoFullLevelValue;
+		return (fullLevelValue != Integer.MAX_VALUE ? Level.parse (String.valueOf (fullLevelValue)) : null);
+	}
+
+	/**
+	 * Set the factory of record limiters. Every call site gets its own limiter, created on its first loggable record, unless a limiter is {@link LoggerWrapper#setRecordLimiter(ru.dmerkushov.loghelper.CallSite, ru.dmerkushov.loghelper.limit.RecordLimiter) set for it explicitly}.
+	 * <p>
+	 * Example: <code>setRecordLimiterFactory (() -&gt; new TokenBucketRecordLimiter (10, 100));</code>
+	 * <p>
+	 * Call sites are told apart by class, method and line whatever the {@link LoggerWrapper#getCallerInfoMode(java.util.logging.Level) caller information mode} is. So with {@link CallerInfoMode#NONE} or {@link CallerInfoMode#CLASS_ONLY}, a limiter still costs a full stack walk per record, though the records keep only the caller information of their mode. The records logged with a given {@link CallSite} are limited by the limiter of that call site.
+	 *
+	 * @param recordLimiterFactory if null, the call sites without an explicitly set limiter are not limited
+	 */
+	public void setRecordLimiterFactory (Supplier<? extends RecordLimiter> recordLimiterFactory) {
+		this.recordLimiterFactory = recordLimiterFactory;
+		recordLimiters.clear ();
+	}
+
+	/**
+	 * Set a record limiter for a single call site
+	 *
+	 * @param callSite
+	 * @param recordLimiter if null, the call site's limiter is removed
+	 */
+	public void setRecordLimiter (CallSite callSite, RecordLimiter recordLimiter) {
+		if (recordLimiter != null) {
+			recordLimiters.put (callSite, recordLimiter);
+		} else {
+			recordLimiters.remove (callSite);
+		}
+	}
+
+	/**
+	 * Get the record limiter of a call site
+	 *
+	 * @param callSite
+	 * @return may be null if the call site is not limited, or has logged no records yet
+	 */
+	public RecordLimiter getRecordLimiter (CallSite callSite) {
+		return recordLimiters.get (callSite);
 	}
 
 	/**
@@ -83,20 +203,66 @@ public class LoggerWrapper {
 		return name;
 	}
 	
-	public void addLoggerHandler (Handler handler) {
+	/**
+	 * Add a handler to the linked logger. If {@link LoggerWrapper#setDeduplication(long, int) deduplication} is on, the handler is wrapped in a {@link DeduplicatingHandler}
+	 * @param handler
+	 */
+	public synchronized void addLoggerHandler (Handler handler) {
+		if (deduplicationWindowMillis > 0 && !(handler instanceof DeduplicatingHandler)) {
+			handler = new DeduplicatingHandler (handler, deduplicationWindowMillis, deduplicationCapacity);
+		}
+
 		logger.addHandler (handler);
 	}
 
 	/**
-	 * Remove a handler from the linked logger
+	 * Remove a handler from the linked logger. The handler may also be one wrapped in a {@link DeduplicatingHandler}, then the wrapper is removed
 	 * @param handler 
 	 */
-	public void removeLoggerHandler (Handler handler) {
-		logger.removeHandler (handler);
+	public synchronized void removeLoggerHandler (Handler handler) {
+		for (Handler loggerHandler : logger.getHandlers ()) {
+			if (loggerHandler == handler || (loggerHandler instanceof DeduplicatingHandler && ((DeduplicatingHandler) loggerHandler).getTarget () == handler)) {
+				if (loggerHandler instanceof DeduplicatingHandler) {
+					loggerHandler.flush ();
+				}
+				logger.removeHandler (loggerHandler);
+			}
+		}
+	}
+
+	/**
+	 * Set up burst deduplication of records in front of every handler of the linked logger: identical records (same level, call site and message template) within the window are collapsed into one repeat record. Handlers already added are rewrapped.
+	 * @param windowMillis deduplication window in milliseconds. If less than 1, deduplication is off
+	 * @param capacity number of bursts tracked at once by each handler
+	 * @see DeduplicatingHandler
+	 */
+	public synchronized void setDeduplication (long windowMillis, int capacity) {
+		this.deduplicationWindowMillis = (windowMillis > 0 ? windowMillis : 0);
+		this.deduplicationCapacity = capacity;
+
+		for (Handler loggerHandler : logger.getHandlers ()) {
+			logger.removeHandler (loggerHandler);
+
+			Handler handler = loggerHandler;
+			if (loggerHandler instanceof DeduplicatingHandler) {
+				loggerHandler.flush ();
+				handler = ((DeduplicatingHandler) loggerHandler).getTarget ();
+			}
+			addLoggerHandler (handler);
+		}
+	}
+
+	/**
+	 * Get the burst deduplication window
+	 * @return window in milliseconds, 0 if deduplication is off
+	 * @see LoggerWrapper#setDeduplication(long, int)
+	 */
+	public long getDeduplicationWindowMillis () {
+		return deduplicationWindowMillis;
 	}
 	
 	/**
-	 * Get an array of handlers from the linked logger
+	 * Get an array of handlers from the linked logger. If deduplication is on, these are the {@link DeduplicatingHandler} wrappers
 	 * @return 
 	 */
 	public Handler[] getLoggerHandlers () {
@@ -121,8 +287,11 @@ public class LoggerWrapper {
 	 * <p>
 	 */
 	public void entering () {
-		StackTraceElement caller = StackTraceUtils.getCallerStackTraceElement ();
-		logger.entering (caller.getClassName (), caller.getMethodName ());
+		if (!isLoggable (Level.FINER)) {
+			return;
+		}
+
+		logMethodRecord ("ENTRY", null);
 	}
 
 	/**
@@ -138,8 +307,11 @@ public class LoggerWrapper {
 	 * @param methodParams array of parameters to the method being entered
 	 */
 	public void entering (Object... methodParams) {
-		StackTraceElement caller = StackTraceUtils.getCallerStackTraceElement ();
-		logger.entering (caller.getClassName (), caller.getMethodName (), methodParams);
+		if (!isLoggable (Level.FINER)) {
+			return;
+		}
+
+		logMethodRecord (enteringMessage (methodParams), methodParams);
 	}
 
 	/**
@@ -151,8 +323,11 @@ public class LoggerWrapper {
 	 * <p>
 	 */
 	public void exiting () {
-		StackTraceElement caller = StackTraceUtils.getCallerStackTraceElement ();
-		logger.exiting (caller.getClassName (), caller.getMethodName ());
+		if (!isLoggable (Level.FINER)) {
+			return;
+		}
+
+		logMethodRecord ("RETURN", null);
 	}
 
 	/**
@@ -167,8 +342,11 @@ public class LoggerWrapper {
 	 * @param result Object that is being returned
 	 */
 	public void exiting (Object result) {
-		StackTraceElement caller = StackTraceUtils.getCallerStackTraceElement ();
-		logger.exiting (caller.getClassName (), caller.getMethodName (), result);
+		if (!isLoggable (Level.FINER)) {
+			return;
+		}
+
+		logMethodRecord ("RETURN {0}", new Object[] {result});
 	}
 
 	/**
@@ -204,7 +382,7 @@ public class LoggerWrapper {
 			throwing (ex);
 		}
 
-		logger.config (propsStr);
+		logWithCaller (Level.CONFIG, propsStr, null);
 	}
 
 	/**
@@ -229,13 +407,7 @@ public class LoggerWrapper {
 	 * java.lang.Throwable)
 	 */
 	public void throwing (Throwable t) {
-		StackTraceElement caller = StackTraceUtils.getCallerStackTraceElement ();
-		if (caller != null) {
-			logger.throwing (caller.getClassName (), caller.getMethodName () + "():" + caller.getLineNumber (), t);
-		} else {
-			logger.throwing ("(UnknownSourceClass)", "(unknownSourceMethod)", t);
-		}
-
+		logWithCaller (Level.FINER, "THROW", t);
 	}
 
 	/**
@@ -259,12 +431,7 @@ public class LoggerWrapper {
 	 * java.lang.String, java.lang.String, java.lang.Throwable)
 	 */
 	public void throwing (String msg, Throwable t) {
-		StackTraceElement caller = StackTraceUtils.getCallerStackTraceElement ();
-		if (caller != null) {
-			logger.logp (Level.FINER, caller.getClassName (), caller.getMethodName () + "():" + caller.getLineNumber (), msg, t);
-		} else {
-			logger.logp (Level.FINER, "(UnknownSourceClass)", "(unknownSourceMethod)", msg, t);
-		}
+		logWithCaller (Level.FINER, msg, t);
 	}
 
 	/**
@@ -279,11 +446,79 @@ public class LoggerWrapper {
 	 * @param msg The string message (or a key in the message catalog)
 	 */
 	public void severe (String msg) {
-		StackTraceElement caller = StackTraceUtils.getCallerStackTraceElement ();
-		if (caller != null) {
-			logger.logp (Level.SEVERE, caller.getClassName (), caller.getMethodName () + "():" + caller.getLineNumber (), msg);
-		} else {
-			logger.logp (Level.SEVERE, "(UnknownSourceClass)", "(unknownSourceMethod)", msg);
+		logWithCaller (Level.SEVERE, msg, null);
+	}
+
+	/**
+	 * Log a SEVERE message, specifying source class and method. The message is
+	 * obtained from the supplier only if the logger is currently enabled for
+	 * the level.
+	 *
+	 * @param msgSupplier supplier of the string message
+	 */
+	public void severe (Supplier<String> msgSupplier) {
+		logWithCaller (Level.SEVERE, msgSupplier);
+	}
+
+	/**
+	 * Log a SEVERE message template, specifying source class and method, with
+	 * one parameter. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 */
+	public void severe (String template, Object arg0) {
+		if (isLoggable (Level.SEVERE)) {
+			logRecordWithCaller (Level.SEVERE, template, new Object[] {arg0}, null);
+		}
+	}
+
+	/**
+	 * Log a SEVERE message template, specifying source class and method, with
+	 * two parameters. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 * @param arg1 parameter {1} of the template
+	 */
+	public void severe (String template, Object arg0, Object arg1) {
+		if (isLoggable (Level.SEVERE)) {
+			logRecordWithCaller (Level.SEVERE, template, new Object[] {arg0, arg1}, null);
+		}
+	}
+
+	/**
+	 * Log a SEVERE message template, specifying source class and method, with
+	 * three parameters. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 * @param arg1 parameter {1} of the template
+	 * @param arg2 parameter {2} of the template
+	 */
+	public void severe (String template, Object arg0, Object arg1, Object arg2) {
+		if (isLoggable (Level.SEVERE)) {
+			logRecordWithCaller (Level.SEVERE, template, new Object[] {arg0, arg1, arg2}, null);
+		}
+	}
+
+	/**
+	 * Log a SEVERE message template, specifying source class and method, with
+	 * four parameters. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 * @param arg1 parameter {1} of the template
+	 * @param arg2 parameter {2} of the template
+	 * @param arg3 parameter {3} of the template
+	 */
+	public void severe (String template, Object arg0, Object arg1, Object arg2, Object arg3) {
+		if (isLoggable (Level.SEVERE)) {
+			logRecordWithCaller (Level.SEVERE, template, new Object[] {arg0, arg1, arg2, arg3}, null);
 		}
 	}
 
@@ -299,11 +534,79 @@ public class LoggerWrapper {
 	 * @param msg The string message (or a key in the message catalog)
 	 */
 	public void warning (String msg) {
-		StackTraceElement caller = StackTraceUtils.getCallerStackTraceElement ();
-		if (caller != null) {
-			logger.logp (Level.WARNING, caller.getClassName (), caller.getMethodName () + "():" + caller.getLineNumber (), msg);
-		} else {
-			logger.logp (Level.WARNING, "(UnknownSourceClass)", "(unknownSourceMethod)", msg);
+		logWithCaller (Level.WARNING, msg, null);
+	}
+
+	/**
+	 * Log a WARNING message, specifying source class and method. The message is
+	 * obtained from the supplier only if the logger is currently enabled for
+	 * the level.
+	 *
+	 * @param msgSupplier supplier of the string message
+	 */
+	public void warning (Supplier<String> msgSupplier) {
+		logWithCaller (Level.WARNING, msgSupplier);
+	}
+
+	/**
+	 * Log a WARNING message template, specifying source class and method, with
+	 * one parameter. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 */
+	public void warning (String template, Object arg0) {
+		if (isLoggable (Level.WARNING)) {
+			logRecordWithCaller (Level.WARNING, template, new Object[] {arg0}, null);
+		}
+	}
+
+	/**
+	 * Log a WARNING message template, specifying source class and method, with
+	 * two parameters. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 * @param arg1 parameter {1} of the template
+	 */
+	public void warning (String template, Object arg0, Object arg1) {
+		if (isLoggable (Level.WARNING)) {
+			logRecordWithCaller (Level.WARNING, template, new Object[] {arg0, arg1}, null);
+		}
+	}
+
+	/**
+	 * Log a WARNING message template, specifying source class and method, with
+	 * three parameters. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 * @param arg1 parameter {1} of the template
+	 * @param arg2 parameter {2} of the template
+	 */
+	public void warning (String template, Object arg0, Object arg1, Object arg2) {
+		if (isLoggable (Level.WARNING)) {
+			logRecordWithCaller (Level.WARNING, template, new Object[] {arg0, arg1, arg2}, null);
+		}
+	}
+
+	/**
+	 * Log a WARNING message template, specifying source class and method, with
+	 * four parameters. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 * @param arg1 parameter {1} of the template
+	 * @param arg2 parameter {2} of the template
+	 * @param arg3 parameter {3} of the template
+	 */
+	public void warning (String template, Object arg0, Object arg1, Object arg2, Object arg3) {
+		if (isLoggable (Level.WARNING)) {
+			logRecordWithCaller (Level.WARNING, template, new Object[] {arg0, arg1, arg2, arg3}, null);
 		}
 	}
 
@@ -319,11 +622,79 @@ public class LoggerWrapper {
 	 * @param msg The string message (or a key in the message catalog)
 	 */
 	public void info (String msg) {
-		StackTraceElement caller = StackTraceUtils.getCallerStackTraceElement ();
-		if (caller != null) {
-			logger.logp (Level.INFO, caller.getClassName (), caller.getMethodName () + "():" + caller.getLineNumber (), msg);
-		} else {
-			logger.logp (Level.INFO, "(UnknownSourceClass)", "(unknownSourceMethod)", msg);
+		logWithCaller (Level.INFO, msg, null);
+	}
+
+	/**
+	 * Log an INFO message, specifying source class and method. The message is
+	 * obtained from the supplier only if the logger is currently enabled for
+	 * the level.
+	 *
+	 * @param msgSupplier supplier of the string message
+	 */
+	public void info (Supplier<String> msgSupplier) {
+		logWithCaller (Level.INFO, msgSupplier);
+	}
+
+	/**
+	 * Log an INFO message template, specifying source class and method, with
+	 * one parameter. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 */
+	public void info (String template, Object arg0) {
+		if (isLoggable (Level.INFO)) {
+			logRecordWithCaller (Level.INFO, template, new Object[] {arg0}, null);
+		}
+	}
+
+	/**
+	 * Log an INFO message template, specifying source class and method, with
+	 * two parameters. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 * @param arg1 parameter {1} of the template
+	 */
+	public void info (String template, Object arg0, Object arg1) {
+		if (isLoggable (Level.INFO)) {
+			logRecordWithCaller (Level.INFO, template, new Object[] {arg0, arg1}, null);
+		}
+	}
+
+	/**
+	 * Log an INFO message template, specifying source class and method, with
+	 * three parameters. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 * @param arg1 parameter {1} of the template
+	 * @param arg2 parameter {2} of the template
+	 */
+	public void info (String template, Object arg0, Object arg1, Object arg2) {
+		if (isLoggable (Level.INFO)) {
+			logRecordWithCaller (Level.INFO, template, new Object[] {arg0, arg1, arg2}, null);
+		}
+	}
+
+	/**
+	 * Log an INFO message template, specifying source class and method, with
+	 * four parameters. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 * @param arg1 parameter {1} of the template
+	 * @param arg2 parameter {2} of the template
+	 * @param arg3 parameter {3} of the template
+	 */
+	public void info (String template, Object arg0, Object arg1, Object arg2, Object arg3) {
+		if (isLoggable (Level.INFO)) {
+			logRecordWithCaller (Level.INFO, template, new Object[] {arg0, arg1, arg2, arg3}, null);
 		}
 	}
 
@@ -339,11 +710,79 @@ public class LoggerWrapper {
 	 * @param msg The string message (or a key in the message catalog)
 	 */
 	public void config (String msg) {
-		StackTraceElement caller = StackTraceUtils.getCallerStackTraceElement ();
-		if (caller != null) {
-			logger.logp (Level.CONFIG, caller.getClassName (), caller.getMethodName () + "():" + caller.getLineNumber (), msg);
-		} else {
-			logger.logp (Level.CONFIG, "(UnknownSourceClass)", "(unknownSourceMethod)", msg);
+		logWithCaller (Level.CONFIG, msg, null);
+	}
+
+	/**
+	 * Log a CONFIG message, specifying source class and method. The message is
+	 * obtained from the supplier only if the logger is currently enabled for
+	 * the level.
+	 *
+	 * @param msgSupplier supplier of the string message
+	 */
+	public void config (Supplier<String> msgSupplier) {
+		logWithCaller (Level.CONFIG, msgSupplier);
+	}
+
+	/**
+	 * Log a CONFIG message template, specifying source class and method, with
+	 * one parameter. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 */
+	public void config (String template, Object arg0) {
+		if (isLoggable (Level.CONFIG)) {
+			logRecordWithCaller (Level.CONFIG, template, new Object[] {arg0}, null);
+		}
+	}
+
+	/**
+	 * Log a CONFIG message template, specifying source class and method, with
+	 * two parameters. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 * @param arg1 parameter {1} of the template
+	 */
+	public void config (String template, Object arg0, Object arg1) {
+		if (isLoggable (Level.CONFIG)) {
+			logRecordWithCaller (Level.CONFIG, template, new Object[] {arg0, arg1}, null);
+		}
+	}
+
+	/**
+	 * Log a CONFIG message template, specifying source class and method, with
+	 * three parameters. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 * @param arg1 parameter {1} of the template
+	 * @param arg2 parameter {2} of the template
+	 */
+	public void config (String template, Object arg0, Object arg1, Object arg2) {
+		if (isLoggable (Level.CONFIG)) {
+			logRecordWithCaller (Level.CONFIG, template, new Object[] {arg0, arg1, arg2}, null);
+		}
+	}
+
+	/**
+	 * Log a CONFIG message template, specifying source class and method, with
+	 * four parameters. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 * @param arg1 parameter {1} of the template
+	 * @param arg2 parameter {2} of the template
+	 * @param arg3 parameter {3} of the template
+	 */
+	public void config (String template, Object arg0, Object arg1, Object arg2, Object arg3) {
+		if (isLoggable (Level.CONFIG)) {
+			logRecordWithCaller (Level.CONFIG, template, new Object[] {arg0, arg1, arg2, arg3}, null);
 		}
 	}
 
@@ -359,11 +798,79 @@ public class LoggerWrapper {
 	 * @param msg The string message (or a key in the message catalog)
 	 */
 	public void fine (String msg) {
-		StackTraceElement caller = StackTraceUtils.getCallerStackTraceElement ();
-		if (caller != null) {
-			logger.logp (Level.FINE, caller.getClassName (), caller.getMethodName () + "():" + caller.getLineNumber (), msg);
-		} else {
-			logger.logp (Level.FINE, "(UnknownSourceClass)", "(unknownSourceMethod)", msg);
+		logWithCaller (Level.FINE, msg, null);
+	}
+
+	/**
+	 * Log a FINE message, specifying source class and method. The message is
+	 * obtained from the supplier only if the logger is currently enabled for
+	 * the level.
+	 *
+	 * @param msgSupplier supplier of the string message
+	 */
+	public void fine (Supplier<String> msgSupplier) {
+		logWithCaller (Level.FINE, msgSupplier);
+	}
+
+	/**
+	 * Log a FINE message template, specifying source class and method, with
+	 * one parameter. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 */
+	public void fine (String template, Object arg0) {
+		if (isLoggable (Level.FINE)) {
+			logRecordWithCaller (Level.FINE, template, new Object[] {arg0}, null);
+		}
+	}
+
+	/**
+	 * Log a FINE message template, specifying source class and method, with
+	 * two parameters. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 * @param arg1 parameter {1} of the template
+	 */
+	public void fine (String template, Object arg0, Object arg1) {
+		if (isLoggable (Level.FINE)) {
+			logRecordWithCaller (Level.FINE, template, new Object[] {arg0, arg1}, null);
+		}
+	}
+
+	/**
+	 * Log a FINE message template, specifying source class and method, with
+	 * three parameters. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 * @param arg1 parameter {1} of the template
+	 * @param arg2 parameter {2} of the template
+	 */
+	public void fine (String template, Object arg0, Object arg1, Object arg2) {
+		if (isLoggable (Level.FINE)) {
+			logRecordWithCaller (Level.FINE, template, new Object[] {arg0, arg1, arg2}, null);
+		}
+	}
+
+	/**
+	 * Log a FINE message template, specifying source class and method, with
+	 * four parameters. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 * @param arg1 parameter {1} of the template
+	 * @param arg2 parameter {2} of the template
+	 * @param arg3 parameter {3} of the template
+	 */
+	public void fine (String template, Object arg0, Object arg1, Object arg2, Object arg3) {
+		if (isLoggable (Level.FINE)) {
+			logRecordWithCaller (Level.FINE, template, new Object[] {arg0, arg1, arg2, arg3}, null);
 		}
 	}
 
@@ -379,11 +886,79 @@ public class LoggerWrapper {
 	 * @param msg The string message (or a key in the message catalog)
 	 */
 	public void finer (String msg) {
-		StackTraceElement caller = StackTraceUtils.getCallerStackTraceElement ();
-		if (caller != null) {
-			logger.logp (Level.FINER, caller.getClassName (), caller.getMethodName () + "():" + caller.getLineNumber (), msg);
-		} else {
-			logger.logp (Level.FINER, "(UnknownSourceClass)", "(unknownSourceMethod)", msg);
+		logWithCaller (Level.FINER, msg, null);
+	}
+
+	/**
+	 * Log a FINER message, specifying source class and method. The message is
+	 * obtained from the supplier only if the logger is currently enabled for
+	 * the level.
+	 *
+	 * @param msgSupplier supplier of the string message
+	 */
+	public void finer (Supplier<String> msgSupplier) {
+		logWithCaller (Level.FINER, msgSupplier);
+	}
+
+	/**
+	 * Log a FINER message template, specifying source class and method, with
+	 * one parameter. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 */
+	public void finer (String template, Object arg0) {
+		if (isLoggable (Level.FINER)) {
+			logRecordWithCaller (Level.FINER, template, new Object[] {arg0}, null);
+		}
+	}
+
+	/**
+	 * Log a FINER message template, specifying source class and method, with
+	 * two parameters. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 * @param arg1 parameter {1} of the template
+	 */
+	public void finer (String template, Object arg0, Object arg1) {
+		if (isLoggable (Level.FINER)) {
+			logRecordWithCaller (Level.FINER, template, new Object[] {arg0, arg1}, null);
+		}
+	}
+
+	/**
+	 * Log a FINER message template, specifying source class and method, with
+	 * three parameters. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 * @param arg1 parameter {1} of the template
+	 * @param arg2 parameter {2} of the template
+	 */
+	public void finer (String template, Object arg0, Object arg1, Object arg2) {
+		if (isLoggable (Level.FINER)) {
+			logRecordWithCaller (Level.FINER, template, new Object[] {arg0, arg1, arg2}, null);
+		}
+	}
+
+	/**
+	 * Log a FINER message template, specifying source class and method, with
+	 * four parameters. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 * @param arg1 parameter {1} of the template
+	 * @param arg2 parameter {2} of the template
+	 * @param arg3 parameter {3} of the template
+	 */
+	public void finer (String template, Object arg0, Object arg1, Object arg2, Object arg3) {
+		if (isLoggable (Level.FINER)) {
+			logRecordWithCaller (Level.FINER, template, new Object[] {arg0, arg1, arg2, arg3}, null);
 		}
 	}
 
@@ -399,14 +974,171 @@ public class LoggerWrapper {
 	 * @param msg The string message (or a key in the message catalog)
 	 */
 	public void finest (String msg) {
-		StackTraceElement caller = StackTraceUtils.getCallerStackTraceElement ();
-		if (caller != null) {
-			logger.logp (Level.FINEST, caller.getClassName (), caller.getMethodName () + "():" + caller.getLineNumber (), msg);
-		} else {
-			logger.logp (Level.FINEST, "(UnknownSourceClass)", "(unknownSourceMethod)", msg);
+		logWithCaller (Level.FINEST, msg, null);
+	}
+
+	/**
+	 * Log a FINEST message, specifying source class and method. The message is
+	 * obtained from the supplier only if the logger is currently enabled for
+	 * the level.
+	 *
+	 * @param msgSupplier supplier of the string message
+	 */
+	public void finest (Supplier<String> msgSupplier) {
+		logWithCaller (Level.FINEST, msgSupplier);
+	}
+
+	/**
+	 * Log a FINEST message template, specifying source class and method, with
+	 * one parameter. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 */
+	public void finest (String template, Object arg0) {
+		if (isLoggable (Level.FINEST)) {
+			logRecordWithCaller (Level.FINEST, template, new Object[] {arg0}, null);
+		}
+	}
+
+	/**
+	 * Log a FINEST message template, specifying source class and method, with
+	 * two parameters. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 * @param arg1 parameter {1} of the template
+	 */
+	public void finest (String template, Object arg0, Object arg1) {
+		if (isLoggable (Level.FINEST)) {
+			logRecordWithCaller (Level.FINEST, template, new Object[] {arg0, arg1}, null);
+		}
+	}
+
+	/**
+	 * Log a FINEST message template, specifying source class and method, with
+	 * three parameters. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 * @param arg1 parameter {1} of the template
+	 * @param arg2 parameter {2} of the template
+	 */
+	public void finest (String template, Object arg0, Object arg1, Object arg2) {
+		if (isLoggable (Level.FINEST)) {
+			logRecordWithCaller (Level.FINEST, template, new Object[] {arg0, arg1, arg2}, null);
 		}
 	}
 
+	/**
+	 * Log a FINEST message template, specifying source class and method, with
+	 * four parameters. The parameters array is only created if the logger is
+	 * currently enabled for the level.
+	 *
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param arg0 parameter {0} of the template
+	 * @param arg1 parameter {1} of the template
+	 * @param arg2 parameter {2} of the template
+	 * @param arg3 parameter {3} of the template
+	 */
+	public void finest (String template, Object arg0, Object arg1, Object arg2, Object arg3) {
+		if (isLoggable (Level.FINEST)) {
+			logRecordWithCaller (Level.FINEST, template, new Object[] {arg0, arg1, arg2, arg3}, null);
+		}
+	}
+
+	/**
+	 * Start a log event at the given level.
+	 * <p>
+	 * Usage: <code>loggerWrapper.at (Level.INFO).with ("userId", id).with ("latencyNs", ns).log ("served");</code>
+	 * <p>
+	 * If the level is not loggable, a shared no-op builder is returned, so the event costs nothing but the level check. Otherwise, the calling thread's builder is reused.
+	 *
+	 * @param level
+	 * @return
+	 * @see LogEventBuilder
+	 */
+	public LogEventBuilder at (Level level) {
+		if (!isLoggable (level)) {
+			return LogEventBuilder.NOOP;
+		}
+
+		return LogEventBuilder.start (this, level);
+	}
+
+	/**
+	 * Start a log event at the SEVERE level
+	 *
+	 * @return
+	 * @see LoggerWrapper#at(java.util.logging.Level)
+	 */
+	public LogEventBuilder atSevere () {
+		return at (Level.SEVERE);
+	}
+
+	/**
+	 * Start a log event at the WARNING level
+	 *
+	 * @return
+	 * @see LoggerWrapper#at(java.util.logging.Level)
+	 */
+	public LogEventBuilder atWarning () {
+		return at (Level.WARNING);
+	}
+
+	/**
+	 * Start a log event at the INFO level
+	 *
+	 * @return
+	 * @see LoggerWrapper#at(java.util.logging.Level)
+	 */
+	public LogEventBuilder atInfo () {
+		return at (Level.INFO);
+	}
+
+	/**
+	 * Start a log event at the CONFIG level
+	 *
+	 * @return
+	 * @see LoggerWrapper#at(java.util.logging.Level)
+	 */
+	public LogEventBuilder atConfig () {
+		return at (Level.CONFIG);
+	}
+
+	/**
+	 * Start a log event at the FINE level
+	 *
+	 * @return
+	 * @see LoggerWrapper#at(java.util.logging.Level)
+	 */
+	public LogEventBuilder atFine () {
+		return at (Level.FINE);
+	}
+
+	/**
+	 * Start a log event at the FINER level
+	 *
+	 * @return
+	 * @see LoggerWrapper#at(java.util.logging.Level)
+	 */
+	public LogEventBuilder atFiner () {
+		return at (Level.FINER);
+	}
+
+	/**
+	 * Start a log event at the FINEST level
+	 *
+	 * @return
+	 * @see LoggerWrapper#at(java.util.logging.Level)
+	 */
+	public LogEventBuilder atFinest () {
+		return at (Level.FINEST);
+	}
+
 	/**
 	 * Log a DOM node list at the FINER level
 	 *
@@ -416,18 +1148,16 @@ public class LoggerWrapper {
 	 * @see NodeList
 	 */
 	public void logDomNodeList (String msg, NodeList nodeList) {
-		StackTraceElement caller = StackTraceUtils.getCallerStackTraceElement ();
+		if (!isLoggable (Level.FINER)) {
+			return;
+		}
 
 		String toLog = (msg != null ? msg + "\n" : "DOM nodelist:\n");
 		for (int i = 0; i < nodeList.getLength (); i++) {
 			toLog += domNodeDescription (nodeList.item (i), 0) + "\n";
 		}
 
-		if (caller != null) {
-			logger.logp (Level.FINER, caller.getClassName (), caller.getMethodName () + "():" + caller.getLineNumber (), toLog);
-		} else {
-			logger.logp (Level.FINER, "(UnknownSourceClass)", "(unknownSourceMethod)", toLog);
-		}
+		logWithCaller (Level.FINER, toLog, null);
 	}
 
 	/**
@@ -438,9 +1168,7 @@ public class LoggerWrapper {
 	 * @see Node
 	 */
 	public void logDomNode (String msg, Node node) {
-		StackTraceElement caller = StackTraceUtils.getCallerStackTraceElement ();
-		
-		logDomNode (msg, node, Level.FINER, caller);
+		logDomNode (msg, node, Level.FINER);
 	}
 	
 	/**
@@ -450,9 +1178,13 @@ public class LoggerWrapper {
 	 * @param level 
 	 */
 	public void logDomNode (String msg, Node node, Level level) {
-		StackTraceElement caller = StackTraceUtils.getCallerStackTraceElement ();
-		
-		logDomNode (msg, node, level, caller);
+		if (!isLoggable (level)) {
+			return;
+		}
+
+		String toLog = (msg != null ? msg + "\n" : "DOM node:\n") + domNodeDescription (node, 0);
+
+		logWithCaller (level, toLog, null);
 	}
 	
 	/**
@@ -464,15 +1196,227 @@ public class LoggerWrapper {
 	 * @see ru.dmerkushov.loghelper.StackTraceUtils#getMyStackTraceElement() 
 	 */
 	public void logDomNode (String msg, Node node, Level level, StackTraceElement caller) {
+		if (!isLoggable (level)) {
+			return;
+		}
+
 		String toLog = (msg != null ? msg + "\n" : "DOM node:\n") + domNodeDescription (node, 0);
 
 		if (caller != null) {
 			logger.logp (level, caller.getClassName (), caller.getMethodName () + "():" + caller.getLineNumber (), toLog);
 		} else {
-			logger.logp (level, "(UnknownSourceClass)", "(unknownSourceMethod)", toLog);
+			logger.logp (level, UNKNOWN_SOURCE_CLASS, UNKNOWN_SOURCE_METHOD, toLog);
 		}
 	}
 
+	/**
+	 * Log a message at the given level, specifying the source class and method of the caller.
+	 * <p>
+	 * The caller is resolved by a {@link StackTraceUtils#getCallerStackFrame() stack walk} only when the level is loggable, so disabled messages cost a single level check.
+	 * <p>
+	 *
+	 * @param level
+	 * @param msg The string message (or a key in the message catalog)
+	 * @param thrown Throwable associated with the message, may be null
+	 */
+	void logWithCaller (Level level, String msg, Throwable thrown) {
+		if (isLoggable (level)) {
+			logRecordWithCaller (level, msg, null, thrown);
+		}
+	}
+
+	/**
+	 * Log a message at the given level, specifying the source class and method of the caller. The message supplier is only called when the level is loggable.
+	 *
+	 * @param level
+	 * @param msgSupplier
+	 */
+	void logWithCaller (Level level, Supplier<String> msgSupplier) {
+		if (isLoggable (level)) {
+			logRecordWithCaller (level, msgSupplier.get (), null, null);
+		}
+	}
+
+	/**
+	 * Log a message at the given level from a known call site, with no stack walk.
+	 * <p>
+	 * This is the method that calls generated by the {@link ru.dmerkushov.loghelper.processor.CallSiteProcessor call site processor} are meant for. If the call site is null, it is resolved at runtime, as for the other logging methods.
+	 * <p>
+	 *
+	 * @param callSite the caller's call site, may be null
+	 * @param level
+	 * @param msg The string message (or a key in the message catalog)
+	 */
+	public void log (CallSite callSite, Level level, String msg) {
+		if (isLoggable (level)) {
+			logRecord (callSite, level, msg, null, null);
+		}
+	}
+
+	/**
+	 * Log a message at the given level from a known call site, with associated Throwable information and no stack walk.
+	 *
+	 * @param callSite the caller's call site, may be null
+	 * @param level
+	 * @param msg The string message (or a key in the message catalog)
+	 * @param thrown Throwable associated with the message, may be null
+	 * @see LoggerWrapper#log(ru.dmerkushov.loghelper.CallSite, java.util.logging.Level, java.lang.String)
+	 */
+	public void log (CallSite callSite, Level level, String msg, Throwable thrown) {
+		if (isLoggable (level)) {
+			logRecord (callSite, level, msg, null, thrown);
+		}
+	}
+
+	/**
+	 * Log a message at the given level from a known call site, with no stack walk. The message is obtained from the supplier only if the level is loggable.
+	 *
+	 * @param callSite the caller's call site, may be null
+	 * @param level
+	 * @param msgSupplier supplier of the string message
+	 * @see LoggerWrapper#log(ru.dmerkushov.loghelper.CallSite, java.util.logging.Level, java.lang.String)
+	 */
+	public void log (CallSite callSite, Level level, Supplier<String> msgSupplier) {
+		if (isLoggable (level)) {
+			logRecord (callSite, level, msgSupplier.get (), null, null);
+		}
+	}
+
+	/**
+	 * Log a message template at the given level from a known call site, with parameters and no stack walk.
+	 *
+	 * @param callSite the caller's call site, may be null
+	 * @param level
+	 * @param template The string message template (or a key in the message catalog)
+	 * @param params parameters of the template
+	 * @see LoggerWrapper#log(ru.dmerkushov.loghelper.CallSite, java.util.logging.Level, java.lang.String)
+	 */
+	public void log (CallSite callSite, Level level, String template, Object... params) {
+		if (isLoggable (level)) {
+			logRecord (callSite, level, template, params, null);
+		}
+	}
+
+	/**
+	 * Create a LogRecord for the caller and pass it to the linked logger. The level must have been checked as loggable before.
+	 *
+	 * @param level
+	 * @param msg
+	 * @param params may be null
+	 * @param thrown may be null
+	 */
+	void logRecordWithCaller (Level level, String msg, Object[] params, Throwable thrown) {
+		logRecord (null, level, msg, params, thrown);
+	}
+
+	/**
+	 * Create a LogRecord and pass it to the linked logger. The level must have been checked as loggable before.
+	 *
+	 * @param callSite the caller's call site. If null, it is resolved by a stack walk
+	 * @param level
+	 * @param msg
+	 * @param params may be null
+	 * @param thrown may be null
+	 */
+	void logRecord (CallSite callSite, Level level, String msg, Object[] params, Throwable thrown) {
+		LogRecord record = new StructuredLogRecord (level, msg);
+		record.setParameters (params);
+		record.setThrown (thrown);
+
+		publishRecord (record, callSite);
+	}
+
+	/**
+	 * Set the source class and method and the logger name of a record, and pass it to the linked logger. The record's level must have been checked as loggable before.
+	 *
+	 * @param record
+	 * @param callSite the caller's call site. If null, it is resolved by a stack walk
+	 */
+	void publishRecord (LogRecord record, CallSite callSite) {
+		boolean callSiteResolved = (callSite == null);
+		if (callSiteResolved) {
+			callSite = resolveCallSite (record.getLevel ());
+		}
+
+		Supplier<? extends RecordLimiter> limiterFactory = recordLimiterFactory;
+		if (limiterFactory != null || !recordLimiters.isEmpty ()) {
+			// A call site resolved in a coarse caller information mode would let one limiter serve a whole logger or class
+			CallSite limiterCallSite = callSite;
+			if (callSiteResolved && getCallerInfoMode (record.getLevel ()) != CallerInfoMode.FULL) {
+				limiterCallSite = StackTraceUtils.getCallerCallSite ();
+			}
+
+			RecordLimiter limiter = recordLimiters.get (limiterCallSite);
+			if (limiter == null && limiterFactory != null) {
+				limiter = recordLimiters.computeIfAbsent (limiterCallSite, key -> limiterFactory.get ());
+			}
+
+			if (limiter != null) {
+				long suppressedCount = limiter.acquire ();
+				if (suppressedCount == RecordLimiter.SUPPRESSED) {
+					return;
+				}
+				if (suppressedCount > 0 && record instanceof StructuredLogRecord) {
+					((StructuredLogRecord) record).setSuppressedCount (suppressedCount);
+				}
+			}
+		}
+
+		record.setSourceClassName (callSite.getSourceClassName ());
+		record.setSourceMethodName (callSite.getSourceMethodName ());
+		record.setLoggerName (logger.getName ());
+
+		logger.log (record);
+	}
+
+	/**
+	 * Log a FINER method entry or return record, with the caller's class and method (without the line number) as its source, the way {@link Logger#entering(java.lang.String, java.lang.String)} and {@link Logger#exiting(java.lang.String, java.lang.String)} do. The level must have been checked as loggable before.
+	 *
+	 * @param msg
+	 * @param params may be null
+	 */
+	private void logMethodRecord (String msg, Object[] params) {
+		CallSite caller = resolveCallSite (Level.FINER);
+
+		LogRecord record = new StructuredLogRecord (Level.FINER, msg);
+		record.setParameters (params);
+		record.setSourceClassName (caller.getClassName ());
+		record.setSourceMethodName (caller.getMethodName ());
+		record.setLoggerName (logger.getName ());
+
+		logger.log (record);
+	}
+
+	private static String enteringMessage (Object[] methodParams) {
+		StringBuilder msgBuilder = new StringBuilder ("ENTRY");
+		for (int i = 0; methodParams != null && i < methodParams.length; i++) {
+			msgBuilder.append (" {").append (i).append ("}");
+		}
+		return msgBuilder.toString ();
+	}
+
+	/**
+	 * Resolve the caller's call site according to the {@link LoggerWrapper#getCallerInfoMode(java.util.logging.Level) caller information mode} for the level
+	 *
+	 * @param level
+	 * @return the resolved call site. Its source class and method may be null, depending on the mode
+	 */
+	CallSite resolveCallSite (Level level) {
+		CallSite callSite;
+		switch (getCallerInfoMode (level)) {
+			case NONE:
+				callSite = CallSite.NONE;
+				break;
+			case CLASS_ONLY:
+				String className = StackTraceUtils.getCallerClassName ();
+				callSite = (className != null ? CallSite.classOnly (className) : CallSite.UNKNOWN);
+				break;
+			default:
+				callSite = StackTraceUtils.getCallerCallSite ();
+		}
+		return callSite;
+	}
+
 	/**
 	 * Form a DOM node textual representation recursively
 	 *
@@ -530,22 +1474,85 @@ public class LoggerWrapper {
 	 * @return true if the given message level is currently being logged.
 	 */
 	public boolean isLoggable (Level level) {
-		return logger.isLoggable (level);
+		if (logger.getLevel () != appliedLevel) {
+			// The level was set on the logger directly, e.g. by LogManager.readConfiguration ()
+			return logger.isLoggable (level);
+		}
+		int levelValue = effectiveLevelValue;
+		return level.intValue () >= levelValue && levelValue != OFF_VALUE;
 	}
 
 	/**
-	 * Set this level for all configured loggers
+	 * Set this level for all configured loggers. The descendant LoggerWrappers with no level of their own inherit it
 	 *
 	 * @param level
+	 * @see LoggerWrapper#setJulLevel(java.util.logging.Level)
 	 */
 	public void setLevel (Level level) {
 
 		this.defaultLevel = level;
-		logger.setLevel (level);
+		setJulLevel (level);
 		for (Handler handler : logger.getHandlers ()) {
 			handler.setLevel (level);
 		}
 	}
+
+	/**
+	 * Get the level set for this LoggerWrapper itself
+	 *
+	 * @return may be null if the level is inherited
+	 * @see LoggerWrapper#getEffectiveLevel()
+	 */
+	public Level getOwnLevel () {
+		return ownLevel;
+	}
+
+	/**
+	 * Get the effective level of this LoggerWrapper: its own level, or the own level of the nearest ancestor LoggerWrapper that has one (in the dotted name hierarchy, e.g. "a.b" is the parent of "a.b.c"), or {@link Level#ALL} if there is no such ancestor
+	 *
+	 * @return
+	 */
+	public Level getEffectiveLevel () {
+		return logger.getLevel ();
+	}
+
+	/**
+	 * Set the effective level, as computed by the LoggerWrapper registry
+	 *
+	 * @param level
+	 * @see LogHelper#updateEffectiveLevels(ru.dmerkushov.loghelper.LoggerWrapper)
+	 */
+	void applyEffectiveLevel (Level level) {
+		logger.setLevel (level);
+		effectiveLevelValue = level.intValue ();
+		appliedLevel = level;
+
+		LevelGuard guard = levelGuard;
+		if (guard != null) {
+			guard.update ();
+		}
+	}
+
+	/**
+	 * Get the level guard of this LoggerWrapper, creating it on the first call. Level guards expose the level checks as method handles the JIT compiler may constant-fold; they are relinked whenever the effective level changes
+	 *
+	 * @return
+	 * @see LevelGuard
+	 */
+	public LevelGuard getLevelGuard () {
+		LevelGuard guard = levelGuard;
+		if (guard == null) {
+			synchronized (this) {
+				guard = levelGuard;
+				if (guard == null) {
+					guard = new LevelGuard (this);
+					levelGuard = guard;
+					guard.update ();
+				}
+			}
+		}
+		return guard;
+	}
 	
 	/**
 	 * 
@@ -4,24 +4,101 @@
  */
 package ru.dmerkushov.loghelper;
 
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
 /**
  *
  * @author Dmitriy Merkushov
  */
 public class StackTraceUtils {
 
+	private static final StackWalker stackWalker = StackWalker.getInstance (StackWalker.Option.RETAIN_CLASS_REFERENCE);
+
+	/**
+	 * Classes whose frames are skipped when looking for the caller of a logging method
+	 */
+	private static final Set<Class<?>> loggingClasses = new CopyOnWriteArraySet<Class<?>> ();
+
+	static {
+		loggingClasses.add (StackTraceUtils.class);
+		loggingClasses.add (LoggerWrapper.class);
+	}
+
+	private static final Function<Stream<StackWalker.StackFrame>, Optional<StackWalker.StackFrame>> callerFrameFinder = frames -> frames.filter (frame -> !isLoggingClass (frame.getDeclaringClass ())).findFirst ();
+
+	/**
+	 * Register a class whose frames must be skipped when looking for the caller of a logging method. {@link LoggerWrapper} and its subclasses are always skipped.
+	 * @param loggingClass
+	 * @see StackTraceUtils#getCallerStackFrame()
+	 */
+	public static void registerLoggingClass (Class<?> loggingClass) {
+		loggingClasses.add (loggingClass);
+	}
+
+	/**
+	 * Check if the class belongs to the logging code, so its frames are not considered as the caller's ones
+	 * @param clazz
+	 * @return
+	 */
+	static boolean isLoggingClass (Class<?> clazz) {
+		return loggingClasses.contains (clazz) || LoggerWrapper.class.isAssignableFrom (clazz);
+	}
+
+	/**
+	 * Get the stack frame of the first method on the current thread's stack that does not belong to the logging code ({@link LoggerWrapper}, its subclasses, and the classes registered via {@link StackTraceUtils#registerLoggingClass(java.lang.Class) }).
+	 * Only the frames up to the caller's one are walked, so no full stack trace is materialized.
+	 * @return may be null
+	 */
+	public static StackWalker.StackFrame getCallerStackFrame () {
+		return stackWalker.walk (callerFrameFinder).orElse (null);
+	}
+
+	/**
+	 * Get the class name of the first method on the current thread's stack that does not belong to the logging code. Cheaper than {@link StackTraceUtils#getCallerCallSite()}, since neither the method name nor the line number is resolved.
+	 * @return may be null
+	 * @see StackTraceUtils#getCallerStackFrame()
+	 */
+	public static String getCallerClassName () {
+		StackWalker.StackFrame callerFrame = getCallerStackFrame ();
+
+		String callerClassName = null;
+		if (callerFrame != null) {
+			callerClassName = callerFrame.getClassName ();
+		}
+
+		return callerClassName;
+	}
+
+	/**
+	 * Get the call site of the first method on the current thread's stack that does not belong to the logging code, from the {@link LogHelper#getCallSiteCache() shared call site cache}
+	 * @return the call site, or {@link CallSite#UNKNOWN} if it could not be resolved
+	 * @see StackTraceUtils#getCallerStackFrame()
+	 */
+	public static CallSite getCallerCallSite () {
+		StackWalker.StackFrame callerFrame = getCallerStackFrame ();
+
+		CallSite callSite = CallSite.UNKNOWN;
+		if (callerFrame != null) {
+			callSite = LogHelper.getCallSiteCache ().get (callerFrame);
+		}
+
+		return callSite;
+	}
+
 	/**
 	 * Get the StackTraceElement of the method that called the caller of getCallerStackTraceElement ()
 	 * @return may be null
 	 */
 	public static StackTraceElement getCallerStackTraceElement () {
-		StackTraceElement callerStackTraceElement = null;
+		StackWalker.StackFrame callerFrame = stackWalker.walk (frames -> frames.skip (2).findFirst ()).orElse (null);
 
-		StackTraceElement[] stackTraceElements = Thread.currentThread ().getStackTrace ();
-		if (stackTraceElements != null) {
-			if (stackTraceElements.length > 3) {
-				callerStackTraceElement = stackTraceElements[3];
-			}
+		StackTraceElement callerStackTraceElement = null;
+		if (callerFrame != null) {
+			callerStackTraceElement = callerFrame.toStackTraceElement ();
 		}
 
 		return callerStackTraceElement;
@@ -32,13 +109,11 @@ public class StackTraceUtils {
 	 * @return 
 	 */
 	public static StackTraceElement getMyStackTraceElement () {
+		StackWalker.StackFrame myFrame = stackWalker.walk (frames -> frames.skip (1).findFirst ()).orElse (null);
+
 		StackTraceElement myStackTraceElement = null;
-		
-		StackTraceElement[] stackTraceElements = Thread.currentThread ().getStackTrace ();
-		if (stackTraceElements != null) {
-			if (stackTraceElements.length > 2) {
-				myStackTraceElement = stackTraceElements[2];
-			}
+		if (myFrame != null) {
+			myStackTraceElement = myFrame.toStackTraceElement ();
 		}
 
 		return myStackTraceElement;
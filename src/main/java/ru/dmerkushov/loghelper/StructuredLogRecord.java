@@ -0,0 +1,356 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper;
+
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * A LogRecord carrying named fields (key/value pairs) besides the message and parameters, and the {@link LogContext logging context} of the thread that created it.
+ * <p>
+ * Field values are typed: primitive values are kept in primitive arrays, so they are never boxed. Formatters may write them with {@link StructuredLogRecord#appendFieldValue(int, java.lang.StringBuilder)}, which makes no intermediate Strings.
+ *
+ * @author Dmitriy Merkushov
+ * @see LogEventBuilder
+ */
+public class StructuredLogRecord extends LogRecord {
+
+	/**
+	 * Type of a field value
+	 */
+	public enum FieldType {
+		LONG,
+		INT,
+		DOUBLE,
+		BOOLEAN,
+		CHARS,
+		OBJECT
+	}
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String[] NO_KEYS = new String[0];
+	private static final FieldType[] NO_TYPES = new FieldType[0];
+
+	private final String[] fieldKeys;
+	private final FieldType[] fieldTypes;
+	private final long[] longValues;
+	private final double[] doubleValues;
+	private final Object[] objectValues;
+	private LogContext.Snapshot context = LogContext.getSnapshot ();
+	private String threadName = Thread.currentThread ().getName ();
+	private long suppressedCount = 0L;
+	private long repeatCount = 0L;
+	private long firstRepeatMillis;
+	private long lastRepeatMillis;
+
+	/**
+	 * Create a structured log record with no fields
+	 *
+	 * @param level
+	 * @param msg
+	 */
+	public StructuredLogRecord (Level level, String msg) {
+		super (level, msg);
+
+		this.fieldKeys = NO_KEYS;
+		this.fieldTypes = NO_TYPES;
+		this.longValues = null;
+		this.doubleValues = null;
+		this.objectValues = null;
+	}
+
+	/**
+	 * Create a structured log record with object field values. The first <code>fieldCount</code> keys and values are copied.
+	 *
+	 * @param level
+	 * @param msg
+	 * @param fieldKeys
+	 * @param fieldValues
+	 * @param fieldCount
+	 */
+	public StructuredLogRecord (Level level, String msg, String[] fieldKeys, Object[] fieldValues, int fieldCount) {
+		super (level, msg);
+
+		this.longValues = null;
+		this.doubleValues = null;
+		if (fieldCount > 0) {
+			this.fieldKeys = Arrays.copyOf (fieldKeys, fieldCount);
+			this.fieldTypes = new FieldType[fieldCount];
+			Arrays.fill (this.fieldTypes, FieldType.OBJECT);
+			this.objectValues = Arrays.copyOf (fieldValues, fieldCount);
+		} else {
+			this.fieldKeys = NO_KEYS;
+			this.fieldTypes = NO_TYPES;
+			this.objectValues = null;
+		}
+	}
+
+	/**
+	 * Create a structured log record with typed field values. The first <code>fieldCount</code> keys and types are copied. Of the value arrays, only the elements up to the last field stored in each are copied, and an array no field is stored in is not copied at all.
+	 * Values of type LONG, INT and BOOLEAN (as 0 or 1) are taken from <code>longValues</code>, DOUBLE from <code>doubleValues</code>, CHARS and OBJECT from <code>objectValues</code>.
+	 *
+	 * @param level
+	 * @param msg
+	 * @param fieldKeys
+	 * @param fieldTypes
+	 * @param longValues
+	 * @param doubleValues
+	 * @param objectValues
+	 * @param fieldCount
+	 */
+	StructuredLogRecord (Level level, String msg, String[] fieldKeys, FieldType[] fieldTypes, long[] longValues, double[] doubleValues, Object[] objectValues, int fieldCount) {
+		super (level, msg);
+
+		if (fieldCount < 1) {
+			this.fieldKeys = NO_KEYS;
+			this.fieldTypes = NO_TYPES;
+			this.longValues = null;
+			this.doubleValues = null;
+			this.objectValues = null;
+			return;
+		}
+
+		int longLength = 0;
+		int doubleLength = 0;
+		int objectLength = 0;
+		for (int fieldIndex = 0; fieldIndex < fieldCount; fieldIndex++) {
+			switch (fieldTypes[fieldIndex]) {
+				case LONG:
+				case INT:
+				case BOOLEAN:
+					longLength = fieldIndex + 1;
+					break;
+				case DOUBLE:
+					doubleLength = fieldIndex + 1;
+					break;
+				default:
+					objectLength = fieldIndex + 1;
+			}
+		}
+
+		this.fieldKeys = Arrays.copyOf (fieldKeys, fieldCount);
+		this.fieldTypes = Arrays.copyOf (fieldTypes, fieldCount);
+		this.longValues = (longLength > 0 ? Arrays.copyOf (longValues, longLength) : null);
+		this.doubleValues = (doubleLength > 0 ? Arrays.copyOf (doubleValues, doubleLength) : null);
+		this.objectValues = (objectLength > 0 ? Arrays.copyOf (objectValues, objectLength) : null);
+	}
+
+	/**
+	 * Get the name of the thread that created the record. Handlers publishing on another thread, like {@link ru.dmerkushov.loghelper.handler.AsyncHandler}, keep it right this way
+	 * @return
+	 */
+	public String getThreadName () {
+		return threadName;
+	}
+
+	/**
+	 * Set the name of the thread the record is attributed to, e.g. for a record standing for records created by another thread
+	 * @param threadName
+	 */
+	public void setThreadName (String threadName) {
+		this.threadName = threadName;
+	}
+
+	/**
+	 * Get the logging context snapshot captured when the record was created
+	 * @return never null
+	 */
+	public LogContext.Snapshot getContext () {
+		return context;
+	}
+
+	/**
+	 * Set the logging context snapshot of the record
+	 * @param context if null, the empty context is set
+	 */
+	public void setContext (LogContext.Snapshot context) {
+		this.context = (context != null ? context : LogContext.Snapshot.EMPTY);
+	}
+
+	/**
+	 * Get the number of similar records suppressed before this one by a {@link ru.dmerkushov.loghelper.limit.RecordLimiter record limiter}
+	 * @return
+	 */
+	public long getSuppressedCount () {
+		return suppressedCount;
+	}
+
+	/**
+	 * Set the number of similar records suppressed before this one
+	 * @param suppressedCount
+	 */
+	public void setSuppressedCount (long suppressedCount) {
+		this.suppressedCount = suppressedCount;
+	}
+
+	/**
+	 * Get the number of identical records this one stands for, collapsed by a {@link ru.dmerkushov.loghelper.handler.DeduplicatingHandler}
+	 * @return 0 if the record is not a repeat record
+	 */
+	public long getRepeatCount () {
+		return repeatCount;
+	}
+
+	/**
+	 * Get the time of the first collapsed record
+	 * @return milliseconds since the epoch, meaningful only if the repeat count is positive
+	 */
+	public long getFirstRepeatMillis () {
+		return firstRepeatMillis;
+	}
+
+	/**
+	 * Get the time of the last collapsed record
+	 * @return milliseconds since the epoch, meaningful only if the repeat count is positive
+	 */
+	public long getLastRepeatMillis () {
+		return lastRepeatMillis;
+	}
+
+	/**
+	 * Make this record stand for a number of collapsed identical records
+	 * @param repeatCount
+	 * @param firstRepeatMillis time of the first collapsed record
+	 * @param lastRepeatMillis time of the last collapsed record
+	 */
+	public void setRepeats (long repeatCount, long firstRepeatMillis, long lastRepeatMillis) {
+		this.repeatCount = repeatCount;
+		this.firstRepeatMillis = firstRepeatMillis;
+		this.lastRepeatMillis = lastRepeatMillis;
+	}
+
+	/**
+	 * Get the number of fields of the record
+	 * @return
+	 */
+	public int getFieldCount () {
+		return fieldKeys.length;
+	}
+
+	/**
+	 * Get the key of a field
+	 * @param index
+	 * @return
+	 */
+	public String getFieldKey (int index) {
+		return fieldKeys[index];
+	}
+
+	/**
+	 * Get the type of a field value
+	 * @param index
+	 * @return
+	 */
+	public FieldType getFieldType (int index) {
+		return fieldTypes[index];
+	}
+
+	/**
+	 * Get the value of a LONG or INT field
+	 * @param index
+	 * @return
+	 * @throws IllegalStateException if the field is of another type
+	 */
+	public long getLongFieldValue (int index) throws IllegalStateException {
+		FieldType fieldType = fieldTypes[index];
+		if (fieldType != FieldType.LONG && fieldType != FieldType.INT) {
+			throw new IllegalStateException ("Field " + fieldKeys[index] + " is of type " + fieldType);
+		}
+		return longValues[index];
+	}
+
+	/**
+	 * Get the value of a DOUBLE field
+	 * @param index
+	 * @return
+	 * @throws IllegalStateException if the field is of another type
+	 */
+	public double getDoubleFieldValue (int index) throws IllegalStateException {
+		if (fieldTypes[index] != FieldType.DOUBLE) {
+			throw new IllegalStateException ("Field " + fieldKeys[index] + " is of type " + fieldTypes[index]);
+		}
+		return doubleValues[index];
+	}
+
+	/**
+	 * Get the value of a BOOLEAN field
+	 * @param index
+	 * @return
+	 * @throws IllegalStateException if the field is of another type
+	 */
+	public boolean getBooleanFieldValue (int index) throws IllegalStateException {
+		if (fieldTypes[index] != FieldType.BOOLEAN) {
+			throw new IllegalStateException ("Field " + fieldKeys[index] + " is of type " + fieldTypes[index]);
+		}
+		return longValues[index] != 0;
+	}
+
+	/**
+	 * Get the value of a field, boxing it if it is primitive. Formatters should rather use {@link StructuredLogRecord#appendFieldValue(int, java.lang.StringBuilder)}
+	 * @param index
+	 * @return may be null
+	 */
+	public Object getFieldValue (int index) {
+		Object fieldValue;
+		switch (fieldTypes[index]) {
+			case LONG:
+				fieldValue = longValues[index];
+				break;
+			case INT:
+				fieldValue = (int) longValues[index];
+				break;
+			case DOUBLE:
+				fieldValue = doubleValues[index];
+				break;
+			case BOOLEAN:
+				fieldValue = (longValues[index] != 0);
+				break;
+			default:
+				fieldValue = objectValues[index];
+		}
+		return fieldValue;
+	}
+
+	/**
+	 * Append the textual value of a field to a StringBuilder, with no boxing and no intermediate Strings for primitive and CharSequence values
+	 * @param index
+	 * @param sb
+	 * @return the StringBuilder
+	 */
+	public StringBuilder appendFieldValue (int index, StringBuilder sb) {
+		switch (fieldTypes[index]) {
+			case LONG:
+			case INT:
+				sb.append (longValues[index]);
+				break;
+			case DOUBLE:
+				sb.append (doubleValues[index]);
+				break;
+			case BOOLEAN:
+				sb.append (longValues[index] != 0);
+				break;
+			case CHARS:
+				sb.append ((CharSequence) objectValues[index]);
+				break;
+			default:
+				sb.append (objectValues[index]);
+		}
+		return sb;
+	}
+
+}
@@ -20,6 +20,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Date;
+import java.util.logging.Level;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
@@ -27,6 +28,7 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
+import ru.dmerkushov.loghelper.CallerInfoMode;
 import ru.dmerkushov.loghelper.LogHelper;
 import ru.dmerkushov.loghelper.LogHelperDebug;
 import ru.dmerkushov.loghelper.LoggerWrapper;
@@ -167,7 +169,7 @@ public class LogHelperConfigurator {
 	}
 
 	/**
-	 * Configure a LoggerWrapper to the values of a DOM node. It MUST have an attribute named "name", storing the LoggerWrapper's name. It may have subnodes named "configurator", keeping the properties for
+	 * Configure a LoggerWrapper to the values of a DOM node. It MUST have an attribute named "name", storing the LoggerWrapper's name. It may have subnodes named "configurator", keeping the properties for a {@link LoggerWrapperConfigurator}, and a subnode named "caller-info", setting the caller information mode.
 	 *
 	 * @param configNode
 	 */
@@ -189,10 +191,56 @@ public class LogHelperConfigurator {
 
 			if (subnodeName.equals ("configurator")) {
 				configureLoggerWrapperByConfigurator (loggerWrapper, subnode);
+			} else if (subnodeName.equals ("caller-info")) {
+				configureLoggerWrapperCallerInfo (loggerWrapper, subnode);
 			}
 		}
 	}
 
+	/**
+	 * Configure the caller information mode of a LoggerWrapper. The node MUST have an attribute named "mode", one of {@link CallerInfoMode} names. It may have an attribute named "full-from-level", storing a JUL level name: records at or above this level always get full caller information.
+	 * <p>
+	 * Example: <code>&lt;caller-info mode="NONE" full-from-level="WARNING"/&gt;</code>
+	 *
+	 * @param loggerWrapper
+	 * @param configNode
+	 * @see LoggerWrapper#setCallerInfoMode(ru.dmerkushov.loghelper.CallerInfoMode, java.util.logging.Level)
+	 */
+	private static void configureLoggerWrapperCallerInfo (LoggerWrapper loggerWrapper, Node configNode) {
+		boolean goOn = true;
+
+		Node modeNode = configNode.getAttributes ().getNamedItem ("mode");
+		CallerInfoMode mode = null;
+		if (modeNode == null) {
+			LogHelperDebug.printError ("No mode attribute in caller-info node for LoggerWrapper " + loggerWrapper.getName (), false);
+			goOn = false;
+		} else {
+			try {
+				mode = CallerInfoMode.valueOf (modeNode.getTextContent ().trim ().toUpperCase ());
+			} catch (IllegalArgumentException ex) {
+				LogHelperDebug.printError ("Unknown caller info mode " + modeNode.getTextContent () + " for LoggerWrapper " + loggerWrapper.getName (), ex, false);
+				goOn = false;
+			}
+		}
+
+		Level fullFromLevel = null;
+		if (goOn) {
+			Node fullFromLevelNode = configNode.getAttributes ().getNamedItem ("full-from-level");
+			if (fullFromLevelNode != null) {
+				try {
+					fullFromLevel = Level.parse (fullFromLevelNode.getTextContent ().trim ().toUpperCase ());
+				} catch (IllegalArgumentException ex) {
+					LogHelperDebug.printError ("Unknown level " + fullFromLevelNode.getTextContent () + " in caller-info node for LoggerWrapper " + loggerWrapper.getName (), ex, false);
+					goOn = false;
+				}
+			}
+		}
+
+		if (goOn) {
+			loggerWrapper.setCallerInfoMode (mode, fullFromLevel);
+		}
+	}
+
 	private static void configureLoggerWrapperByConfigurator (LoggerWrapper loggerWrapper, Node configNode) {
 		boolean goOn = true;
 
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.configure.loggerwrapper;
+
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import org.w3c.dom.Node;
+import ru.dmerkushov.loghelper.LogHelperDebug;
+import ru.dmerkushov.loghelper.LoggerWrapper;
+import ru.dmerkushov.loghelper.handler.AsyncHandler;
+import ru.dmerkushov.loghelper.handler.DeduplicatingHandler;
+
+/**
+ * Runs the wrapped configurator, then makes every handler of the LoggerWrapper asynchronous by wrapping it in an {@link AsyncHandler}
+ *
+ * @author Dmitriy Merkushov
+ */
+public class AsyncConfigurator extends WrappingConfigurator {
+
+	public AsyncConfigurator (LoggerWrapper loggerWrapper, Node configuration) {
+		super (loggerWrapper, configuration);
+	}
+
+	/**
+	 * Runs the wrapped configurator and wraps the resulting handlers in AsyncHandlers.
+	 * The supplied configuration options may contain the following properties:
+	 * <ul>
+	 * <li><code>ru.dmerkushov.loghelper.AsyncHandler.capacity</code> set to the ring buffer capacity.</li>
+	 * <li><code>ru.dmerkushov.loghelper.AsyncHandler.queueFullPolicy</code> set to one of <code>BLOCK</code>, <code>DROP_NEWEST</code>, <code>DROP_BELOW_LEVEL</code>, <code>SPIN_THEN_PARK</code>.</li>
+	 * <li><code>ru.dmerkushov.loghelper.AsyncHandler.dropBelowLevel</code> set to the level below which records are dropped with the <code>DROP_BELOW_LEVEL</code> policy.</li>
+	 * </ul>
+	 * If the configuration options do not contain any of the options, AsyncHandler's defaults are used.
+	 *
+	 * @return <code>true</code> if both the wrapped configurator and the wrapping are successful
+	 *
+	 * @see AsyncHandler#AsyncHandler(java.util.logging.Handler, int, ru.dmerkushov.loghelper.handler.AsyncHandler.QueueFullPolicy, java.util.logging.Level)
+	 */
+	@Override
+	public boolean configure () {
+		boolean success = true;
+
+		if (wrappedConfigurator != null) {
+			success = wrappedConfigurator.configure ();
+		} else {
+			LogHelperDebug.printError ("No wrapped configurator for AsyncConfigurator", false);
+			success = false;
+		}
+
+		String capacityStr = this.getConfigurationOptionValue ("ru.dmerkushov.loghelper.AsyncHandler.capacity", String.valueOf (AsyncHandler.DEFAULT_CAPACITY));
+		String queueFullPolicyStr = this.getConfigurationOptionValue ("ru.dmerkushov.loghelper.AsyncHandler.queueFullPolicy", AsyncHandler.QueueFullPolicy.BLOCK.name ());
+		String dropBelowLevelStr = this.getConfigurationOptionValue ("ru.dmerkushov.loghelper.AsyncHandler.dropBelowLevel", Level.INFO.getName ());
+
+		int capacity = AsyncHandler.DEFAULT_CAPACITY;
+		try {
+			capacity = Integer.parseInt (capacityStr.trim ());
+		} catch (NumberFormatException ex) {
+			LogHelperDebug.printError ("Could not parse AsyncHandler capacity " + capacityStr + ", using " + capacity, ex, false);
+			success = false;
+		}
+
+		AsyncHandler.QueueFullPolicy queueFullPolicy = AsyncHandler.QueueFullPolicy.BLOCK;
+		try {
+			queueFullPolicy = AsyncHandler.QueueFullPolicy.valueOf (queueFullPolicyStr.trim ().toUpperCase ());
+		} catch (IllegalArgumentException ex) {
+			LogHelperDebug.printError ("Unknown AsyncHandler queue full policy " + queueFullPolicyStr + ", using " + queueFullPolicy, ex, false);
+			success = false;
+		}
+
+		Level dropBelowLevel = Level.INFO;
+		try {
+			dropBelowLevel = Level.parse (dropBelowLevelStr.trim ());
+		} catch (IllegalArgumentException ex) {
+			LogHelperDebug.printError ("Could not parse AsyncHandler drop level " + dropBelowLevelStr + ", using " + dropBelowLevel, ex, false);
+			success = false;
+		}
+
+		for (Handler handler : loggerWrapper.getLoggerHandlers ()) {
+			Handler target = handler;
+			if (handler instanceof DeduplicatingHandler) {
+				target = ((DeduplicatingHandler) handler).getTarget ();
+			}
+			if (target instanceof AsyncHandler) {
+				continue;
+			}
+
+			AsyncHandler asyncHandler;
+			try {
+				asyncHandler = new AsyncHandler (target, capacity, queueFullPolicy, dropBelowLevel);
+			} catch (IllegalArgumentException ex) {
+				LogHelperDebug.printError ("Could not create AsyncHandler with capacity " + capacity, ex, false);
+				success = false;
+				continue;
+			}
+
+			loggerWrapper.removeLoggerHandler (handler);
+			loggerWrapper.addLoggerHandler (asyncHandler);
+		}
+
+		return success;
+	}
+
+}
@@ -19,7 +19,6 @@ package ru.dmerkushov.loghelper.configure.loggerwrapper;
 import java.util.logging.ConsoleHandler;
 import org.w3c.dom.Node;
 import ru.dmerkushov.loghelper.LoggerWrapper;
-import ru.dmerkushov.loghelper.formatter.DefaultFormatter;
 
 /**
  *
@@ -34,7 +33,7 @@ public class ConsoleConfigurator extends LoggerWrapperConfigurator {
 	@Override
 	public boolean configure () {
 		ConsoleHandler consoleHandler = new ConsoleHandler ();
-		consoleHandler.setFormatter (new DefaultFormatter ());
+		consoleHandler.setFormatter (getFormatterOption ("ru.dmerkushov.loghelper.ConsoleHandler"));
 		
 		loggerWrapper.addLoggerHandler (consoleHandler);
 
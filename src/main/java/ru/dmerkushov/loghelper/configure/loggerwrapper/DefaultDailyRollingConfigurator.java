@@ -19,8 +19,8 @@ import java.io.IOException;
 import org.w3c.dom.Node;
 import ru.dmerkushov.loghelper.LogHelperDebug;
 import ru.dmerkushov.loghelper.LoggerWrapper;
-import ru.dmerkushov.loghelper.formatter.DefaultFormatter;
 import ru.dmerkushov.loghelper.handler.DailyRollingFileHandler;
+import ru.dmerkushov.loghelper.handler.FlushPolicy;
 
 /**
  * Configures LoggerWrapper to use only DailyRollingFileHandler
@@ -38,6 +38,13 @@ public class DefaultDailyRollingConfigurator extends LoggerWrapperConfigurator {
 	 * The supplied configuration options may contain the following properties:
 	 * <ul>
 	 * <li><code>ru.dmerkushov.loghelper.SizeRollingFileHandler.pattern</code> set to the desired DailyRollingFileHandler log file name pattern.</li>
+	 * <li><code>ru.dmerkushov.loghelper.DailyRollingFileHandler.flushEveryRecords</code>, <code>.flushEveryBytes</code>, <code>.flushIntervalMillis</code>, <code>.flushImmediatelyLevel</code> set to the DailyRollingFileHandler flush policy, see {@link LoggerWrapperConfigurator#getFlushPolicyOption(java.lang.String)}. By default, every record is flushed, or, with aligned writes, the records are flushed as of {@link ru.dmerkushov.loghelper.handler.FlushPolicy#BATCHED}.</li>
+	 * <li><code>ru.dmerkushov.loghelper.DailyRollingFileHandler.bufferSize</code> set to the output buffer size in bytes.</li>
+	 * <li><code>ru.dmerkushov.loghelper.DailyRollingFileHandler.alignedWrites</code> set to <code>true</code> to write the log files in aligned blocks, with direct I/O where supported. Every flush then writes the pending data padded to whole 4 KiB blocks and truncates the padding, so flushing every record is much slower than with unaligned writes; aligned writes pay off with a batching flush policy only.</li>
+	 * <li><code>ru.dmerkushov.loghelper.DailyRollingFileHandler.formatter</code> set to <code>json</code> to write the log files as JSON Lines with {@link ru.dmerkushov.loghelper.formatter.JsonFormatter}.</li>
+	 * <li><code>ru.dmerkushov.loghelper.DailyRollingFileHandler.formatterPattern</code> set to a {@link ru.dmerkushov.loghelper.formatter.PatternFormatter} pattern, to use it instead of DefaultFormatter, see {@link LoggerWrapperConfigurator#getFormatterOption(java.lang.String)}.</li>
+	 * <li><code>ru.dmerkushov.loghelper.DailyRollingFileHandler.traceCacheCapacity</code>, <code>.foldCommonFrames</code>, <code>.maxTraceDepth</code> set to the rendering of the record throwables, see {@link LoggerWrapperConfigurator#getThrowableRendererOption(java.lang.String)}. By default, the throwables are rendered in full.</li>
+	 * <li><code>ru.dmerkushov.loghelper.DailyRollingFileHandler.timestampPrecision</code> and <code>ru.dmerkushov.loghelper.TimestampService.coarseClockTickMillis</code> set to the record timestamp rendering, see {@link LoggerWrapperConfigurator#getTimestampServiceOption(java.lang.String)}.</li>
 	 * </ul>
 	 * If the configuration options do not contain any of the options, SizeRollingFileHandler's default are used.
 	 *
@@ -66,9 +73,12 @@ public class DefaultDailyRollingConfigurator extends LoggerWrapperConfigurator {
 			success = false;
 		}
 
-		drfh.setFormatter (new DefaultFormatter ());
+		drfh.setFormatter (getFormatterOption ("ru.dmerkushov.loghelper.DailyRollingFileHandler"));
 
 		if (drfh != null) {
+			boolean alignedWrites = Boolean.parseBoolean (this.getConfigurationOptionValue ("ru.dmerkushov.loghelper.DailyRollingFileHandler.alignedWrites", "false").trim ());
+			drfh.setFlushPolicy (getFlushPolicyOption ("ru.dmerkushov.loghelper.DailyRollingFileHandler", alignedWrites ? FlushPolicy.BATCHED : FlushPolicy.EVERY_RECORD));
+			drfh.setOutputOptions (getBufferSizeOption ("ru.dmerkushov.loghelper.DailyRollingFileHandler.bufferSize"), alignedWrites);
 			loggerWrapper.addLoggerHandler (drfh);
 		} else {
 			LogHelperDebug.printError ("The created DailyRollingFileHandler is null with pattern " + pattern, false);
@@ -16,11 +16,10 @@
 package ru.dmerkushov.loghelper.configure.loggerwrapper;
 
 import java.util.Properties;
-import java.util.logging.Handler;
-import java.util.logging.Logger;
 import org.w3c.dom.Node;
 import ru.dmerkushov.loghelper.LogHelperDebug;
 import ru.dmerkushov.loghelper.LoggerWrapper;
+import ru.dmerkushov.loghelper.handler.FlushPolicy;
 import ru.dmerkushov.loghelper.handler.SizeRollingFileHandler;
 
 /**
@@ -36,6 +35,15 @@ public class DefaultSizeRollingConfigurator extends LoggerWrapperConfigurator {
 	 * <ul>
 	 * <li><code>ru.dmerkushov.loghelper.SizeRollingFileHandler.pattern</code> set to the desired SizeRollingFileHandler log file name pattern.</li>
 	 * <li><code>ru.dmerkushov.loghelper.SizeRollingFileHandler.maxLogSize</code> set to the desired SizeRollingFileHandler maximum log size (decimal number). By default, the size is set in bytes, but the value may end with "K" to indicate that the size is set in KiB, "M" (MiB), "G" (GiB), or "T" (TiB).</li>
+	 * <li><code>ru.dmerkushov.loghelper.SizeRollingFileHandler.flushEveryRecords</code>, <code>.flushEveryBytes</code>, <code>.flushIntervalMillis</code>, <code>.flushImmediatelyLevel</code> set to the SizeRollingFileHandler flush policy, see {@link LoggerWrapperConfigurator#getFlushPolicyOption(java.lang.String)}. By default, every record is flushed, or, with aligned writes, the records are flushed as of {@link ru.dmerkushov.loghelper.handler.FlushPolicy#BATCHED}.</li>
+	 * <li><code>ru.dmerkushov.loghelper.SizeRollingFileHandler.bufferSize</code> set to the output buffer size in bytes.</li>
+	 * <li><code>ru.dmerkushov.loghelper.SizeRollingFileHandler.alignedWrites</code> set to <code>true</code> to write the log files in aligned blocks, with direct I/O where supported. Every flush then writes the pending data padded to whole 4 KiB blocks and truncates the padding, so flushing every record is much slower than with unaligned writes; aligned writes pay off with a batching flush policy only.</li>
+	 * <li><code>ru.dmerkushov.loghelper.SizeRollingFileHandler.mappedSegments</code> set to <code>true</code> to write the log files through memory-mapped segments.</li>
+	 * <li><code>ru.dmerkushov.loghelper.SizeRollingFileHandler.rolloverMargin</code> set to the pre-rollover margin in bytes. The value may end with "K", "M", "G" or "T", as the maximum log size.</li>
+	 * <li><code>ru.dmerkushov.loghelper.SizeRollingFileHandler.formatter</code> set to <code>json</code> to write the log files as JSON Lines with {@link ru.dmerkushov.loghelper.formatter.JsonFormatter}.</li>
+	 * <li><code>ru.dmerkushov.loghelper.SizeRollingFileHandler.formatterPattern</code> set to a {@link ru.dmerkushov.loghelper.formatter.PatternFormatter} pattern, to use it instead of DefaultFormatter, see {@link LoggerWrapperConfigurator#getFormatterOption(java.lang.String)}.</li>
+	 * <li><code>ru.dmerkushov.loghelper.SizeRollingFileHandler.traceCacheCapacity</code>, <code>.foldCommonFrames</code>, <code>.maxTraceDepth</code> set to the rendering of the record throwables, see {@link LoggerWrapperConfigurator#getThrowableRendererOption(java.lang.String)}. By default, the throwables are rendered in full.</li>
+	 * <li><code>ru.dmerkushov.loghelper.SizeRollingFileHandler.timestampPrecision</code> and <code>ru.dmerkushov.loghelper.TimestampService.coarseClockTickMillis</code> set to the record timestamp rendering, see {@link LoggerWrapperConfigurator#getTimestampServiceOption(java.lang.String)}.</li>
 	 * </ul>
 	 * If the configuration options do not contain any of the options, SizeRollingFileHandler's defaults are used.
 	 * 
@@ -54,12 +62,7 @@ public class DefaultSizeRollingConfigurator extends LoggerWrapperConfigurator {
 	 * @see SizeRollingFileHandler#SizeRollingFileHandler(java.lang.String, long)
 	 */
 	public boolean configure () {
-		Logger logger = loggerWrapper.getLogger ();
-		Handler[] handlers = logger.getHandlers ();
-
-		for (Handler handler : handlers) {
-			logger.removeHandler (handler);
-		}
+		loggerWrapper.removeAllLoggerHandlers ();
 
 		String pattern = this.getConfigurationOptionValue ("ru.dmerkushov.loghelper.SizeRollingFileHandler.pattern", SizeRollingFileHandler.DEFAULT_LOG_FILENAME_PATTERN);
 		String maxLogSizeStr = this.getConfigurationOptionValue ("ru.dmerkushov.loghelper.SizeRollingFileHandler.maxLogSize", String.valueOf (SizeRollingFileHandler.DEFAULT_LOG_SIZE_BOUND));
@@ -67,8 +70,18 @@ public class DefaultSizeRollingConfigurator extends LoggerWrapperConfigurator {
 		long maxLogSize = parseMaxLogSize (maxLogSizeStr);
 
 		SizeRollingFileHandler srfh = new SizeRollingFileHandler (pattern, maxLogSize);
+		srfh.setFormatter (getFormatterOption ("ru.dmerkushov.loghelper.SizeRollingFileHandler"));
+		boolean alignedWrites = Boolean.parseBoolean (this.getConfigurationOptionValue ("ru.dmerkushov.loghelper.SizeRollingFileHandler.alignedWrites", "false").trim ());
+		srfh.setFlushPolicy (getFlushPolicyOption ("ru.dmerkushov.loghelper.SizeRollingFileHandler", alignedWrites ? FlushPolicy.BATCHED : FlushPolicy.EVERY_RECORD));
+		srfh.setOutputOptions (getBufferSizeOption ("ru.dmerkushov.loghelper.SizeRollingFileHandler.bufferSize"), alignedWrites);
+		srfh.setMappedSegments (Boolean.parseBoolean (this.getConfigurationOptionValue ("ru.dmerkushov.loghelper.SizeRollingFileHandler.mappedSegments", "false").trim ()));
 
-		logger.addHandler (srfh);
+		String rolloverMarginStr = this.getConfigurationOptionValue ("ru.dmerkushov.loghelper.SizeRollingFileHandler.rolloverMargin", null);
+		if (rolloverMarginStr != null) {
+			srfh.setRolloverMargin (parseSize (rolloverMarginStr, 0L));
+		}
+
+		loggerWrapper.addLoggerHandler (srfh);
 		
 		return true;
 	}
@@ -79,48 +92,58 @@ public class DefaultSizeRollingConfigurator extends LoggerWrapperConfigurator {
 	 * @return 
 	 */
 	long parseMaxLogSize (String maxLogSizeStr) {
-		long maxLogSize = SizeRollingFileHandler.DEFAULT_LOG_SIZE_BOUND;
+		return parseSize (maxLogSizeStr, SizeRollingFileHandler.DEFAULT_LOG_SIZE_BOUND);
+	}
+
+	/**
+	 * Parse a size in bytes, possibly ending with "K", "M", "G" or "T", to a <code>long</code>
+	 * @param sizeStr
+	 * @param defaultSize returned if the size could not be parsed
+	 * @return 
+	 */
+	long parseSize (String sizeStr, long defaultSize) {
+		long size = defaultSize;
 
-		if (maxLogSizeStr != null) {
-			maxLogSizeStr = maxLogSizeStr.trim ().toUpperCase ();
+		if (sizeStr != null) {
+			sizeStr = sizeStr.trim ().toUpperCase ();
 			
-			if (maxLogSizeStr.endsWith ("T")) {
-				maxLogSizeStr = maxLogSizeStr.substring (0, maxLogSizeStr.length () - 1);
+			if (sizeStr.endsWith ("T")) {
+				sizeStr = sizeStr.substring (0, sizeStr.length () - 1);
 				try {
-					maxLogSize = Long.parseLong (maxLogSizeStr) * 1024L * 1024L * 1024L * 1024L;
+					size = Long.parseLong (sizeStr) * 1024L * 1024L * 1024L * 1024L;
 				} catch (NumberFormatException ex) {
-					LogHelperDebug.printError ("Could not parse a long in " + maxLogSizeStr, ex, false);
+					LogHelperDebug.printError ("Could not parse a long in " + sizeStr, ex, false);
 				}
-			} else if (maxLogSizeStr.endsWith ("G")) {
-				maxLogSizeStr = maxLogSizeStr.substring (0, maxLogSizeStr.length () - 1);
+			} else if (sizeStr.endsWith ("G")) {
+				sizeStr = sizeStr.substring (0, sizeStr.length () - 1);
 				try {
-					maxLogSize = Long.parseLong (maxLogSizeStr) * 1024L * 1024L * 1024L;
+					size = Long.parseLong (sizeStr) * 1024L * 1024L * 1024L;
 				} catch (NumberFormatException ex) {
-					LogHelperDebug.printError ("Could not parse a long in " + maxLogSizeStr, ex, false);
+					LogHelperDebug.printError ("Could not parse a long in " + sizeStr, ex, false);
 				}
-			} else if (maxLogSizeStr.endsWith ("M")) {
-				maxLogSizeStr = maxLogSizeStr.substring (0, maxLogSizeStr.length () - 1);
+			} else if (sizeStr.endsWith ("M")) {
+				sizeStr = sizeStr.substring (0, sizeStr.length () - 1);
 				try {
-					maxLogSize = Long.parseLong (maxLogSizeStr) * 1024L * 1024L;
+					size = Long.parseLong (sizeStr) * 1024L * 1024L;
 				} catch (NumberFormatException ex) {
-					LogHelperDebug.printError ("Could not parse a long in " + maxLogSizeStr, ex, false);
+					LogHelperDebug.printError ("Could not parse a long in " + sizeStr, ex, false);
 				}
-			} else if (maxLogSizeStr.endsWith ("K")) {
-				maxLogSizeStr = maxLogSizeStr.substring (0, maxLogSizeStr.length () - 1);
+			} else if (sizeStr.endsWith ("K")) {
+				sizeStr = sizeStr.substring (0, sizeStr.length () - 1);
 				try {
-					maxLogSize = Long.parseLong (maxLogSizeStr) * 1024L;
+					size = Long.parseLong (sizeStr) * 1024L;
 				} catch (NumberFormatException ex) {
-					LogHelperDebug.printError ("Could not parse a long in " + maxLogSizeStr, ex, false);
+					LogHelperDebug.printError ("Could not parse a long in " + sizeStr, ex, false);
 				}
 			} else {
 				try {
-					maxLogSize = Long.parseLong (maxLogSizeStr);
+					size = Long.parseLong (sizeStr);
 				} catch (NumberFormatException ex) {
-					LogHelperDebug.printError ("Could not parse a long in " + maxLogSizeStr, ex, false);
+					LogHelperDebug.printError ("Could not parse a long in " + sizeStr, ex, false);
 				}
 			}
 		}
-		return maxLogSize;
+		return size;
 	}
 
 }
@@ -18,10 +18,19 @@ package ru.dmerkushov.loghelper.configure.loggerwrapper;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import ru.dmerkushov.loghelper.LogHelperDebug;
 import ru.dmerkushov.loghelper.LoggerWrapper;
+import ru.dmerkushov.loghelper.formatter.DefaultFormatter;
+import ru.dmerkushov.loghelper.formatter.JsonFormatter;
+import ru.dmerkushov.loghelper.formatter.PatternFormatter;
+import ru.dmerkushov.loghelper.formatter.ThrowableRenderer;
+import ru.dmerkushov.loghelper.formatter.TimestampService;
+import ru.dmerkushov.loghelper.handler.FileChannelOutput;
+import ru.dmerkushov.loghelper.handler.FlushPolicy;
 
 /**
  *
@@ -108,6 +117,203 @@ public abstract class LoggerWrapperConfigurator {
 		return optionValue;
 	}
 	
+	/**
+	 * Get a flush policy from the configuration options. The options are named by the prefix followed by:
+	 * <ul>
+	 * <li><code>.flushEveryRecords</code> &mdash; flush after this number of records;</li>
+	 * <li><code>.flushEveryBytes</code> &mdash; flush after this number of bytes;</li>
+	 * <li><code>.flushIntervalMillis</code> &mdash; flush by a background timer with this interval;</li>
+	 * <li><code>.flushImmediatelyLevel</code> &mdash; flush immediately after records of this level or above.</li>
+	 * </ul>
+	 * @param optionPrefix the option name prefix, like <code>ru.dmerkushov.loghelper.SizeRollingFileHandler</code>
+	 * @return {@link FlushPolicy#EVERY_RECORD} if none of the options is set
+	 */
+	public FlushPolicy getFlushPolicyOption (String optionPrefix) {
+		return getFlushPolicyOption (optionPrefix, FlushPolicy.EVERY_RECORD);
+	}
+
+	/**
+	 * Get a flush policy from the configuration options, named as for {@link LoggerWrapperConfigurator#getFlushPolicyOption(java.lang.String)}
+	 * @param optionPrefix the option name prefix, like <code>ru.dmerkushov.loghelper.SizeRollingFileHandler</code>
+	 * @param defaultPolicy the policy returned if none of the options is set
+	 * @return
+	 */
+	public FlushPolicy getFlushPolicyOption (String optionPrefix, FlushPolicy defaultPolicy) {
+		String everyRecordsStr = this.getConfigurationOptionValue (optionPrefix + ".flushEveryRecords", null);
+		String everyBytesStr = this.getConfigurationOptionValue (optionPrefix + ".flushEveryBytes", null);
+		String intervalMillisStr = this.getConfigurationOptionValue (optionPrefix + ".flushIntervalMillis", null);
+		String immediateLevelStr = this.getConfigurationOptionValue (optionPrefix + ".flushImmediatelyLevel", null);
+
+		if (everyRecordsStr == null && everyBytesStr == null && intervalMillisStr == null && immediateLevelStr == null) {
+			return defaultPolicy;
+		}
+
+		int everyRecords = 0;
+		if (everyRecordsStr != null) {
+			try {
+				everyRecords = Integer.parseInt (everyRecordsStr.trim ());
+			} catch (NumberFormatException ex) {
+				LogHelperDebug.printError ("Could not parse an int in " + everyRecordsStr, ex, false);
+			}
+		}
+
+		long everyBytes = 0L;
+		if (everyBytesStr != null) {
+			try {
+				everyBytes = Long.parseLong (everyBytesStr.trim ());
+			} catch (NumberFormatException ex) {
+				LogHelperDebug.printError ("Could not parse a long in " + everyBytesStr, ex, false);
+			}
+		}
+
+		long intervalMillis = 0L;
+		if (intervalMillisStr != null) {
+			try {
+				intervalMillis = Long.parseLong (intervalMillisStr.trim ());
+			} catch (NumberFormatException ex) {
+				LogHelperDebug.printError ("Could not parse a long in " + intervalMillisStr, ex, false);
+			}
+		}
+
+		Level immediateLevel = null;
+		if (immediateLevelStr != null) {
+			try {
+				immediateLevel = Level.parse (immediateLevelStr.trim ());
+			} catch (IllegalArgumentException ex) {
+				LogHelperDebug.printError ("Could not parse a level in " + immediateLevelStr, ex, false);
+			}
+		}
+
+		return new FlushPolicy (everyRecords, everyBytes, intervalMillis, immediateLevel);
+	}
+
+	/**
+	 * Get an output buffer size from the configuration options
+	 * @param optionName
+	 * @return {@link FileChannelOutput#DEFAULT_BUFFER_SIZE} if the option is not set or could not be parsed
+	 */
+	public int getBufferSizeOption (String optionName) {
+		int bufferSize = FileChannelOutput.DEFAULT_BUFFER_SIZE;
+
+		String bufferSizeStr = this.getConfigurationOptionValue (optionName, null);
+		if (bufferSizeStr != null) {
+			try {
+				bufferSize = Integer.parseInt (bufferSizeStr.trim ());
+			} catch (NumberFormatException ex) {
+				LogHelperDebug.printError ("Could not parse an int in " + bufferSizeStr, ex, false);
+			}
+		}
+
+		return bufferSize;
+	}
+
+	/**
+	 * Get a timestamp service from the configuration options:
+	 * <ul>
+	 * <li>the prefix followed by <code>.timestampPrecision</code> &mdash; <code>MILLISECONDS</code> or <code>NANOSECONDS</code>, see {@link TimestampService.Precision};</li>
+	 * <li><code>ru.dmerkushov.loghelper.TimestampService.coarseClockTickMillis</code> &mdash; if set, the shared coarse clock is started with this tick, see {@link TimestampService#startCoarseClock(long)}. A clock already running with this tick is left as is, so configuring several handlers does not restart it.</li>
+	 * </ul>
+	 * @param optionPrefix the option name prefix, like <code>ru.dmerkushov.loghelper.SizeRollingFileHandler</code>
+	 * @return {@link TimestampService#getDefault()} if the precision is not set or could not be parsed
+	 */
+	public TimestampService getTimestampServiceOption (String optionPrefix) {
+		String coarseClockTickStr = this.getConfigurationOptionValue ("ru.dmerkushov.loghelper.TimestampService.coarseClockTickMillis", null);
+		if (coarseClockTickStr != null) {
+			try {
+				TimestampService.startCoarseClock (Long.parseLong (coarseClockTickStr.trim ()));
+			} catch (IllegalArgumentException ex) {
+				LogHelperDebug.printError ("Could not start the coarse clock with tick " + coarseClockTickStr, ex, false);
+			}
+		}
+
+		String precisionStr = this.getConfigurationOptionValue (optionPrefix + ".timestampPrecision", null);
+		if (precisionStr == null) {
+			return TimestampService.getDefault ();
+		}
+
+		TimestampService.Precision precision;
+		try {
+			precision = TimestampService.Precision.valueOf (precisionStr.trim ().toUpperCase ());
+		} catch (IllegalArgumentException ex) {
+			LogHelperDebug.printError ("Could not parse a timestamp precision in " + precisionStr, ex, false);
+			return TimestampService.getDefault ();
+		}
+
+		if (precision == TimestampService.getDefault ().getPrecision ()) {
+			return TimestampService.getDefault ();
+		}
+		return new TimestampService (TimestampService.getDefault ().getZone (), precision);
+	}
+
+	/**
+	 * Get a formatter from the configuration options. If the option named by the prefix followed by <code>.formatter</code> is set to <code>json</code>, a {@link JsonFormatter} is created. Otherwise, if the option named by the prefix followed by <code>.formatterPattern</code> is set, a {@link PatternFormatter} with this pattern is created, otherwise a {@link DefaultFormatter}. The timestamps of all of them are set by {@link LoggerWrapperConfigurator#getTimestampServiceOption(java.lang.String)}, the throwables of DefaultFormatter and PatternFormatter &mdash; by {@link LoggerWrapperConfigurator#getThrowableRendererOption(java.lang.String)}
+	 * @param optionPrefix the option name prefix, like <code>ru.dmerkushov.loghelper.SizeRollingFileHandler</code>
+	 * @return a {@link DefaultFormatter} if the pattern is not set or could not be compiled
+	 */
+	public Formatter getFormatterOption (String optionPrefix) {
+		TimestampService timestamps = getTimestampServiceOption (optionPrefix);
+		ThrowableRenderer throwableRenderer = getThrowableRendererOption (optionPrefix);
+
+		String formatterName = this.getConfigurationOptionValue (optionPrefix + ".formatter", null);
+		if (formatterName != null && formatterName.trim ().equalsIgnoreCase ("json")) {
+			return new JsonFormatter (timestamps);
+		}
+
+		String formatterPattern = this.getConfigurationOptionValue (optionPrefix + ".formatterPattern", null);
+		if (formatterPattern != null) {
+			try {
+				return new PatternFormatter (formatterPattern, timestamps, throwableRenderer);
+			} catch (IllegalArgumentException ex) {
+				LogHelperDebug.printError ("Could not compile a formatter pattern " + formatterPattern, ex, false);
+			}
+		}
+
+		return new DefaultFormatter (timestamps, throwableRenderer);
+	}
+
+	/**
+	 * Get a throwable renderer from the configuration options. The options are named by the prefix followed by:
+	 * <ul>
+	 * <li><code>.traceCacheCapacity</code> &mdash; the number of stack traces remembered, so that a repeated trace is rendered as a reference to the first one;</li>
+	 * <li><code>.foldCommonFrames</code> &mdash; <code>true</code> to skip the frames a cause has in common with the trace of the throwable it caused;</li>
+	 * <li><code>.maxTraceDepth</code> &mdash; the maximum number of frames rendered per stack trace.</li>
+	 * </ul>
+	 * @param optionPrefix the option name prefix, like <code>ru.dmerkushov.loghelper.SizeRollingFileHandler</code>
+	 * @return {@link ThrowableRenderer#FULL} if none of the options is set
+	 * @see ThrowableRenderer
+	 */
+	public ThrowableRenderer getThrowableRendererOption (String optionPrefix) {
+		String cacheCapacityStr = this.getConfigurationOptionValue (optionPrefix + ".traceCacheCapacity", null);
+		String foldCommonFramesStr = this.getConfigurationOptionValue (optionPrefix + ".foldCommonFrames", null);
+		String maxDepthStr = this.getConfigurationOptionValue (optionPrefix + ".maxTraceDepth", null);
+
+		if (cacheCapacityStr == null && foldCommonFramesStr == null && maxDepthStr == null) {
+			return ThrowableRenderer.FULL;
+		}
+
+		int cacheCapacity = 0;
+		if (cacheCapacityStr != null) {
+			try {
+				cacheCapacity = Math.max (Integer.parseInt (cacheCapacityStr.trim ()), 0);
+			} catch (NumberFormatException ex) {
+				LogHelperDebug.printError ("Could not parse an int in " + cacheCapacityStr, ex, false);
+			}
+		}
+
+		boolean foldCommonFrames = (foldCommonFramesStr != null && Boolean.parseBoolean (foldCommonFramesStr.trim ()));
+
+		int maxDepth = 0;
+		if (maxDepthStr != null) {
+			try {
+				maxDepth = Math.max (Integer.parseInt (maxDepthStr.trim ()), 0);
+			} catch (NumberFormatException ex) {
+				LogHelperDebug.printError ("Could not parse an int in " + maxDepthStr, ex, false);
+			}
+		}
+
+		return new ThrowableRenderer (cacheCapacity, foldCommonFrames, maxDepth);
+	}
+
 	/**
 	 * Get a configurator instance with a specified class name
 	 * @param className
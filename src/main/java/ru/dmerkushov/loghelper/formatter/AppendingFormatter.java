@@ -0,0 +1,41 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.formatter;
+
+import java.util.logging.LogRecord;
+
+/**
+ * A formatter able to append a formatted record to a buffer supplied by the caller, instead of creating a String. The file handlers of log-helper use it to format records to reusable buffers
+ *
+ * @author Dmitriy Merkushov
+ */
+public interface AppendingFormatter {
+
+	/**
+	 * Append a formatted record to a buffer. The result is the same as of {@link java.util.logging.Formatter#format(java.util.logging.LogRecord)}
+	 * @param logRecord
+	 * @param sb
+	 * @return <code>sb</code>
+	 */
+	StringBuilder formatTo (LogRecord logRecord, StringBuilder sb);
+
+	/**
+	 * Forget the state referring to the records formatted so far, like the traces cached by a {@link ThrowableRenderer}. The rolling file handlers call it when they switch to a new log file, so no record refers to a record in another file
+	 */
+	default void reset () {
+	}
+
+}
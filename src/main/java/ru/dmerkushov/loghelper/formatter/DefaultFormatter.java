@@ -4,17 +4,68 @@
  */
 package ru.dmerkushov.loghelper.formatter;
 
-import java.text.SimpleDateFormat;
 import java.util.logging.Formatter;
 import java.util.logging.LogRecord;
+import ru.dmerkushov.loghelper.LogContext;
+import ru.dmerkushov.loghelper.StructuredLogRecord;
 
 /**
+ * The default formatter of log-helper. Every line of a formatted record starts with the record level name and a tab.
+ * <p>
+ * The formatter is thread-safe. The timestamps are rendered by a {@link TimestampService}. It builds records in per-thread buffers that are reused, and adds the line prefixes in a single pass over the record text. Handlers may skip creating a String per record with {@link DefaultFormatter#formatTo(java.util.logging.LogRecord, java.lang.StringBuilder)}.
  *
  * @author Dmitriy Merkushov
  */
-public class DefaultFormatter extends Formatter {
+public class DefaultFormatter extends Formatter implements AppendingFormatter {
 
-	static SimpleDateFormat sdf = new SimpleDateFormat ("yyyy-MM-dd HH:mm:ss.S Z");
+	private static final ThreadBuffer rawBuffer = new ThreadBuffer (512);
+	private static final ThreadBuffer resultBuffer = new ThreadBuffer (512);
+
+	private final TimestampService timestamps;
+	private final ThrowableRenderer throwableRenderer;
+
+	/**
+	 * Create a formatter with the default timestamp service
+	 * @see TimestampService#getDefault()
+	 */
+	public DefaultFormatter () {
+		this (TimestampService.getDefault ());
+	}
+
+	/**
+	 * Create a formatter rendering the throwables in full
+	 * @param timestamps the service rendering the record timestamps. If null, the default one is used
+	 */
+	public DefaultFormatter (TimestampService timestamps) {
+		this (timestamps, ThrowableRenderer.FULL);
+	}
+
+	/**
+	 * Create a formatter
+	 * @param timestamps the service rendering the record timestamps. If null, the default one is used
+	 * @param throwableRenderer the renderer of the record throwables. If null, {@link ThrowableRenderer#FULL} is used
+	 */
+	public DefaultFormatter (TimestampService timestamps, ThrowableRenderer throwableRenderer) {
+		this.timestamps = (timestamps != null ? timestamps : TimestampService.getDefault ());
+		this.throwableRenderer = (throwableRenderer != null ? throwableRenderer : ThrowableRenderer.FULL);
+	}
+
+	public TimestampService getTimestampService () {
+		return timestamps;
+	}
+
+	public ThrowableRenderer getThrowableRenderer () {
+		return throwableRenderer;
+	}
+
+	/**
+	 * Reset the throwable renderer
+	 * @see ThrowableRenderer#reset()
+	 */
+	@Override
+	public void reset () {
+		throwableRenderer.reset ();
+	}
 
 	/**
 	 * Format a logging message
@@ -24,20 +75,77 @@ public class DefaultFormatter extends Formatter {
 	 */
 	@Override
 	public String format (LogRecord logRecord) {
-		StringBuilder resultBuilder = new StringBuilder ();
-		String prefix = logRecord.getLevel ().getName () + "\t";
+		StringBuilder result = resultBuffer.take ();
+		try {
+			return formatTo (logRecord, result).toString ();
+		} finally {
+			resultBuffer.release (result);
+		}
+	}
 
-		resultBuilder.append (prefix);
+	/**
+	 * Append a formatted logging message to a buffer
+	 *
+	 * @param logRecord
+	 * @param sb
+	 * @return <code>sb</code>
+	 */
+	@Override
+	public StringBuilder formatTo (LogRecord logRecord, StringBuilder sb) {
+		StringBuilder resultBuilder = rawBuffer.take ();
+		try {
+			appendRaw (logRecord, resultBuilder);
+
+			// Every line starts with the prefix
+			String prefix = logRecord.getLevel ().getName ();
+			sb.append (prefix).append ('\t');
+			int lineStart = 0;
+			int length = resultBuilder.length ();
+			for (int i = 0; i < length; i++) {
+				if (resultBuilder.charAt (i) == '\n') {
+					sb.append (resultBuilder, lineStart, i + 1)
+							.append (prefix)
+							.append ('\t');
+					lineStart = i + 1;
+				}
+			}
+			sb.append (resultBuilder, lineStart, length)
+					.append ('\n');
+		} finally {
+			rawBuffer.release (resultBuilder);
+		}
 
-		resultBuilder.append (Thread.currentThread ().getName ())
-				.append (" ")
-				.append (sdf.format (new java.util.Date (logRecord.getMillis ())))
-				.append (": ")
-				.append (logRecord.getSourceClassName ())
-				.append (":")
-				.append (logRecord.getSourceMethodName ())
-				.append (": ")
-				.append (logRecord.getMessage ());
+		return sb;
+	}
+
+	/**
+	 * Append the text of a record, before the lines are prefixed
+	 *
+	 * @param logRecord
+	 * @param resultBuilder
+	 */
+	private void appendRaw (LogRecord logRecord, StringBuilder resultBuilder) {
+		String threadName = (logRecord instanceof StructuredLogRecord ? ((StructuredLogRecord) logRecord).getThreadName () : Thread.currentThread ().getName ());
+		resultBuilder.append (threadName)
+				.append (" ");
+		timestamps.appendTimestamp (logRecord, resultBuilder)
+				.append (": ");
+
+		// Source class and method may be absent, depending on the caller information mode of the LoggerWrapper
+		String sourceClassName = logRecord.getSourceClassName ();
+		if (sourceClassName != null) {
+			resultBuilder.append (sourceClassName);
+
+			String sourceMethodName = logRecord.getSourceMethodName ();
+			if (sourceMethodName != null) {
+				resultBuilder.append (":")
+						.append (sourceMethodName);
+			}
+
+			resultBuilder.append (": ");
+		}
+
+		resultBuilder.append (logRecord.getMessage ());
 
 		Object[] params = logRecord.getParameters ();
 		if (params != null) {
@@ -52,7 +160,7 @@ public class DefaultFormatter extends Formatter {
 						String paramString = param.toString ();
 
 						resultBuilder.append ("\nParameter ")
-								.append (String.valueOf (paramIndex))
+								.append (paramIndex)
 								.append (" is a ")
 								.append (param.getClass ().getName ())
 								.append (": >")
@@ -60,22 +168,66 @@ public class DefaultFormatter extends Formatter {
 								.append ("<");
 					} else {
 						resultBuilder.append ("\nParameter ")
-								.append (String.valueOf (paramIndex))
+								.append (paramIndex)
 								.append (" is null.");
 					}
 				}
 			}
 		}
 
+		if (logRecord instanceof StructuredLogRecord) {
+			StructuredLogRecord structuredLogRecord = (StructuredLogRecord) logRecord;
+
+			long suppressedCount = structuredLogRecord.getSuppressedCount ();
+			if (suppressedCount > 0) {
+				resultBuilder.append ("\nSuppressed ")
+						.append (suppressedCount)
+						.append (" similar records");
+			}
+
+			long repeatCount = structuredLogRecord.getRepeatCount ();
+			if (repeatCount > 0) {
+				resultBuilder.append ("\nRepeated ")
+						.append (repeatCount)
+						.append (" times from ");
+				timestamps.appendTimestamp (structuredLogRecord.getFirstRepeatMillis (), resultBuilder)
+						.append (" to ");
+				timestamps.appendTimestamp (structuredLogRecord.getLastRepeatMillis (), resultBuilder);
+			}
+
+			LogContext.Snapshot context = structuredLogRecord.getContext ();
+			if (!context.isEmpty ()) {
+				resultBuilder.append ("\nContext: ");
+
+				for (int contextIndex = 0; contextIndex < context.size (); contextIndex++) {
+					if (contextIndex > 0) {
+						resultBuilder.append (", ");
+					}
+					resultBuilder.append (context.getKey (contextIndex))
+							.append ("=")
+							.append (context.getValue (contextIndex));
+				}
+			}
+
+			int fieldCount = structuredLogRecord.getFieldCount ();
+			if (fieldCount > 0) {
+				resultBuilder.append ("\nFields:");
+
+				for (int fieldIndex = 0; fieldIndex < fieldCount; fieldIndex++) {
+					resultBuilder.append ("\nField ")
+							.append (structuredLogRecord.getFieldKey (fieldIndex))
+							.append (": >");
+					structuredLogRecord.appendFieldValue (fieldIndex, resultBuilder)
+							.append ("<");
+				}
+			}
+		}
+
 		Throwable t = logRecord.getThrown ();
 		if (t != null) {
-			resultBuilder.append ("\nThrowing:\n")
-					.append (getFullThrowableMsg (t));
+			resultBuilder.append ("\nThrowing:\n");
+			throwableRenderer.append (t, resultBuilder);
 		}
-		
-		String result = resultBuilder.toString ().replaceAll ("\n", "\n" + prefix) + "\n";
-
-		return result;
 	}
 
 	/**
@@ -84,47 +236,9 @@ public class DefaultFormatter extends Formatter {
 	 *
 	 * @param throwable
 	 * @return
+	 * @see ThrowableRenderer#FULL
 	 */
 	public static String getFullThrowableMsg (Throwable throwable) {
-		StringBuilder resultBuilder = new StringBuilder ();
-		resultBuilder.append (throwable.getClass ().getCanonicalName ())
-				.append (": ")
-				.append (throwable.getMessage ());
-
-		StackTraceElement[] stackTraceElements = throwable.getStackTrace ();
-
-		if (stackTraceElements != null) {
-			if (stackTraceElements.length > 0) {
-				resultBuilder.append ("\nStack Trace:\n");
-
-				StackTraceElement stackTraceElement = stackTraceElements[0];
-				resultBuilder.append ("\t")
-						.append (stackTraceElement.getClassName ())
-						.append (":")
-						.append (stackTraceElement.getMethodName ())
-						.append ("():")
-						.append (stackTraceElement.getLineNumber ());
-
-				for (int i = 1; i < stackTraceElements.length; i++) {
-					stackTraceElement = stackTraceElements[i];
-					resultBuilder.append ("\n\tat ")
-							.append (stackTraceElement.getClassName ())
-							.append (":")
-							.append (stackTraceElement.getMethodName ())
-							.append ("():")
-							.append (stackTraceElement.getLineNumber ());
-				}
-			}
-		}
-
-		Throwable cause = throwable.getCause ();
-
-		if (cause != null) {
-			resultBuilder.append ("\nCaused by:\n")
-					.append (getFullThrowableMsg (cause));
-		}
-
-		String fullThrowableMsg = resultBuilder.toString ();
-		return fullThrowableMsg;
+		return ThrowableRenderer.FULL.render (throwable);
 	}
 }
@@ -0,0 +1,347 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.formatter;
+
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+import ru.dmerkushov.loghelper.LogContext;
+import ru.dmerkushov.loghelper.StructuredLogRecord;
+
+/**
+ * A formatter writing every record as a JSON object on a single line (JSON Lines). The members are written straight to the output buffer: text is escaped while it is copied, and runs of characters that need no escaping are copied at once.
+ * <p>
+ * A record object has the members:
+ * <ul>
+ * <li><code>timestamp</code> &mdash; the record time, rendered by the {@link TimestampService} of the formatter, and <code>millis</code> &mdash; the record time in milliseconds since the epoch;</li>
+ * <li><code>level</code>, <code>thread</code>, <code>class</code>, <code>method</code>, <code>message</code> &mdash; the raw record message;</li>
+ * <li><code>params</code> &mdash; an array of the parameters, each an object with <code>type</code> and <code>value</code>, or null. Absent if the record has no parameters;</li>
+ * <li><code>suppressed</code>, <code>repeats</code>, <code>context</code>, <code>fields</code> &mdash; for a {@link StructuredLogRecord}, absent if empty;</li>
+ * <li><code>thrown</code> &mdash; the throwable, an object with <code>class</code>, <code>message</code>, <code>stackTrace</code> and <code>cause</code>. A cause that closes a cycle in the chain has <code>circular</code> instead of <code>stackTrace</code> and <code>cause</code>. Absent if the record has no throwable.</li>
+ * </ul>
+ * The formatter is thread-safe.
+ *
+ * @author Dmitriy Merkushov
+ */
+public class JsonFormatter extends Formatter implements AppendingFormatter {
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray ();
+
+	private static final ThreadBuffer resultBuffer = new ThreadBuffer (512);
+
+	private final TimestampService timestamps;
+
+	/**
+	 * Create a formatter with the default timestamp service
+	 */
+	public JsonFormatter () {
+		this (null);
+	}
+
+	/**
+	 * Create a formatter
+	 * @param timestamps the service rendering the record timestamps. If null, the default one is used
+	 */
+	public JsonFormatter (TimestampService timestamps) {
+		this.timestamps = (timestamps != null ? timestamps : TimestampService.getDefault ());
+	}
+
+	public TimestampService getTimestampService () {
+		return timestamps;
+	}
+
+	@Override
+	public String format (LogRecord logRecord) {
+		StringBuilder result = resultBuffer.take ();
+		try {
+			return formatTo (logRecord, result).toString ();
+		} finally {
+			resultBuffer.release (result);
+		}
+	}
+
+	@Override
+	public StringBuilder formatTo (LogRecord logRecord, StringBuilder sb) {
+		sb.append ("{\"timestamp\":\"");
+		timestamps.appendTimestamp (logRecord, sb);
+		sb.append ("\",\"millis\":").append (logRecord.getMillis ());
+
+		sb.append (",\"level\":");
+		appendString (logRecord.getLevel ().getName (), sb);
+
+		sb.append (",\"thread\":");
+		appendString (logRecord instanceof StructuredLogRecord ? ((StructuredLogRecord) logRecord).getThreadName () : Thread.currentThread ().getName (), sb);
+
+		sb.append (",\"class\":");
+		appendString (logRecord.getSourceClassName (), sb);
+		sb.append (",\"method\":");
+		appendString (logRecord.getSourceMethodName (), sb);
+		sb.append (",\"message\":");
+		appendString (logRecord.getMessage (), sb);
+
+		Object[] params = logRecord.getParameters ();
+		if (params != null && params.length > 0) {
+			sb.append (",\"params\":[");
+			for (int paramIndex = 0; paramIndex < params.length; paramIndex++) {
+				if (paramIndex > 0) {
+					sb.append (',');
+				}
+				appendParam (params[paramIndex], sb);
+			}
+			sb.append (']');
+		}
+
+		if (logRecord instanceof StructuredLogRecord) {
+			appendStructured ((StructuredLogRecord) logRecord, sb);
+		}
+
+		Throwable t = logRecord.getThrown ();
+		if (t != null) {
+			sb.append (",\"thrown\":");
+			appendThrowable (t, sb);
+		}
+
+		return sb.append ("}\n");
+	}
+
+	private void appendStructured (StructuredLogRecord structuredLogRecord, StringBuilder sb) {
+		long suppressedCount = structuredLogRecord.getSuppressedCount ();
+		if (suppressedCount > 0) {
+			sb.append (",\"suppressed\":").append (suppressedCount);
+		}
+
+		long repeatCount = structuredLogRecord.getRepeatCount ();
+		if (repeatCount > 0) {
+			sb.append (",\"repeats\":{\"count\":").append (repeatCount)
+					.append (",\"firstMillis\":").append (structuredLogRecord.getFirstRepeatMillis ())
+					.append (",\"lastMillis\":").append (structuredLogRecord.getLastRepeatMillis ())
+					.append ('}');
+		}
+
+		LogContext.Snapshot context = structuredLogRecord.getContext ();
+		if (!context.isEmpty ()) {
+			sb.append (",\"context\":{");
+			for (int contextIndex = 0; contextIndex < context.size (); contextIndex++) {
+				if (contextIndex > 0) {
+					sb.append (',');
+				}
+				appendString (context.getKey (contextIndex), sb);
+				sb.append (':');
+				appendString (context.getValue (contextIndex), sb);
+			}
+			sb.append ('}');
+		}
+
+		int fieldCount = structuredLogRecord.getFieldCount ();
+		if (fieldCount > 0) {
+			sb.append (",\"fields\":{");
+			for (int fieldIndex = 0; fieldIndex < fieldCount; fieldIndex++) {
+				if (fieldIndex > 0) {
+					sb.append (',');
+				}
+				appendString (structuredLogRecord.getFieldKey (fieldIndex), sb);
+				sb.append (':');
+				appendField (structuredLogRecord, fieldIndex, sb);
+			}
+			sb.append ('}');
+		}
+	}
+
+	private static void appendField (StructuredLogRecord structuredLogRecord, int fieldIndex, StringBuilder sb) {
+		switch (structuredLogRecord.getFieldType (fieldIndex)) {
+			case LONG:
+			case INT:
+				sb.append (structuredLogRecord.getLongFieldValue (fieldIndex));
+				break;
+			case DOUBLE:
+				appendDouble (structuredLogRecord.getDoubleFieldValue (fieldIndex), sb);
+				break;
+			case BOOLEAN:
+				sb.append (structuredLogRecord.getBooleanFieldValue (fieldIndex));
+				break;
+			case CHARS:
+				appendString ((CharSequence) structuredLogRecord.getFieldValue (fieldIndex), sb);
+				break;
+			default:
+				Object fieldValue = structuredLogRecord.getFieldValue (fieldIndex);
+				appendString (fieldValue != null ? fieldValue.toString () : null, sb);
+		}
+	}
+
+	/**
+	 * Append a parameter as an object with its class name and value. Numbers and booleans are written as JSON numbers and booleans, other values as strings
+	 * @param param
+	 * @param sb
+	 */
+	private static void appendParam (Object param, StringBuilder sb) {
+		if (param == null) {
+			sb.append ("null");
+			return;
+		}
+
+		sb.append ("{\"type\":");
+		appendString (param.getClass ().getName (), sb);
+		sb.append (",\"value\":");
+		if (param instanceof Integer || param instanceof Long || param instanceof Short || param instanceof Byte) {
+			sb.append (((Number) param).longValue ());
+		} else if (param instanceof Double || param instanceof Float) {
+			appendDouble (((Number) param).doubleValue (), sb);
+		} else if (param instanceof Boolean) {
+			sb.append (((Boolean) param).booleanValue ());
+		} else if (param instanceof CharSequence) {
+			appendString ((CharSequence) param, sb);
+		} else {
+			appendString (param.toString (), sb);
+		}
+		sb.append ('}');
+	}
+
+	/**
+	 * Append a throwable as an object, with its causes nested. The cause chain is walked iteratively, and a cause met before in the chain is written as an object with <code>class</code>, <code>message</code> and <code>circular</code> only
+	 * @param throwable
+	 * @param sb
+	 */
+	private static void appendThrowable (Throwable throwable, StringBuilder sb) {
+		int depth = 0;
+		Throwable current = throwable;
+		while (true) {
+			appendThrowableHead (current, sb);
+			sb.append (",\"stackTrace\":[");
+			appendStackTrace (current.getStackTrace (), sb);
+			sb.append (']');
+			depth++;
+
+			Throwable cause = current.getCause ();
+			if (cause == null) {
+				break;
+			}
+
+			sb.append (",\"cause\":");
+			if (ThrowableRenderer.isInChain (throwable, current, cause)) {
+				appendThrowableHead (cause, sb);
+				sb.append (",\"circular\":true}");
+				break;
+			}
+			current = cause;
+		}
+
+		for (; depth > 0; depth--) {
+			sb.append ('}');
+		}
+	}
+
+	private static void appendThrowableHead (Throwable throwable, StringBuilder sb) {
+		sb.append ("{\"class\":");
+		appendString (throwable.getClass ().getName (), sb);
+		sb.append (",\"message\":");
+		appendString (throwable.getMessage (), sb);
+	}
+
+	private static void appendStackTrace (StackTraceElement[] stackTrace, StringBuilder sb) {
+		for (int elementIndex = 0; elementIndex < stackTrace.length; elementIndex++) {
+			if (elementIndex > 0) {
+				sb.append (',');
+			}
+			StackTraceElement element = stackTrace[elementIndex];
+			sb.append ("{\"class\":");
+			appendString (element.getClassName (), sb);
+			sb.append (",\"method\":");
+			appendString (element.getMethodName (), sb);
+			sb.append (",\"file\":");
+			appendString (element.getFileName (), sb);
+			sb.append (",\"line\":").append (element.getLineNumber ())
+					.append ('}');
+		}
+	}
+
+	/**
+	 * Append a double as a JSON number. NaN and infinities, having no JSON representation, are written as strings
+	 * @param value
+	 * @param sb
+	 */
+	private static void appendDouble (double value, StringBuilder sb) {
+		if (Double.isNaN (value) || Double.isInfinite (value)) {
+			sb.append ('"').append (value).append ('"');
+		} else {
+			sb.append (value);
+		}
+	}
+
+	/**
+	 * Append a JSON string: the text quoted and escaped. The runs of characters needing no escaping are copied by a single append each. Unpaired surrogates are escaped, so the string stays valid in any Unicode encoding
+	 * @param text if null, <code>null</code> is appended
+	 * @param sb
+	 */
+	static void appendString (CharSequence text, StringBuilder sb) {
+		if (text == null) {
+			sb.append ("null");
+			return;
+		}
+
+		sb.append ('"');
+		int length = text.length ();
+		int runStart = 0;
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt (i);
+			if (c >= 0x20 && c != '"' && c != '\\' && !Character.isSurrogate (c)) {
+				continue;
+			}
+			if (Character.isHighSurrogate (c) && i + 1 < length && Character.isLowSurrogate (text.charAt (i + 1))) {
+				i++;
+				continue;
+			}
+
+			if (i > runStart) {
+				sb.append (text, runStart, i);
+			}
+			runStart = i + 1;
+
+			switch (c) {
+				case '"':
+					sb.append ("\\\"");
+					break;
+				case '\\':
+					sb.append ("\\\\");
+					break;
+				case '\n':
+					sb.append ("\\n");
+					break;
+				case '\r':
+					sb.append ("\\r");
+					break;
+				case '\t':
+					sb.append ("\\t");
+					break;
+				case '\b':
+					sb.append ("\\b");
+					break;
+				case '\f':
+					sb.append ("\\f");
+					break;
+				default:
+					sb.append ("\\u")
+							.append (HEX_DIGITS[c >> 12])
+							.append (HEX_DIGITS[(c >> 8) & 0xF])
+							.append (HEX_DIGITS[(c >> 4) & 0xF])
+							.append (HEX_DIGITS[c & 0xF]);
+			}
+		}
+		if (length > runStart) {
+			sb.append (text, runStart, length);
+		}
+		sb.append ('"');
+	}
+
+}
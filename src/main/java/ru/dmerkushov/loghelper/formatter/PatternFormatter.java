@@ -0,0 +1,356 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.formatter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+import ru.dmerkushov.loghelper.LogContext;
+import ru.dmerkushov.loghelper.StructuredLogRecord;
+
+/**
+ * A formatter laying out records by a pattern. The pattern is compiled once, when the formatter is created, to an array of converters, each appending one part of a record. Formatting a record runs the converters in order.
+ * <p>
+ * The pattern consists of literal text and conversions:
+ * <ul>
+ * <li><code>%level</code> &mdash; the level name;</li>
+ * <li><code>%thread</code> &mdash; the name of the logging thread;</li>
+ * <li><code>%timestamp</code> &mdash; the record time, rendered by the {@link TimestampService} of the formatter;</li>
+ * <li><code>%class</code>, <code>%method</code> &mdash; the source class and method names;</li>
+ * <li><code>%message</code> &mdash; the raw record message;</li>
+ * <li><code>%params</code> &mdash; the record parameters as <code>" [p0, p1, ...]"</code>, nothing if there are none;</li>
+ * <li><code>%throwable</code> &mdash; a line break and the throwable, rendered by the {@link ThrowableRenderer} of the formatter, nothing if there is no throwable;</li>
+ * <li><code>%context{key}</code> &mdash; the value of a log context key; <code>%context</code> &mdash; all the log context as <code>key=value, ...</code>;</li>
+ * <li><code>%n</code> &mdash; a line break;</li>
+ * <li><code>%%</code> &mdash; the percent sign.</li>
+ * </ul>
+ * A conversion name is the longest of the names above that the letters after <code>%</code> start with, so letters may follow a conversion directly: <code>%nNext</code> is a line break and <code>Next</code>.
+ * The formatter is thread-safe.
+ *
+ * @author Dmitriy Merkushov
+ * @see LogContext
+ */
+public class PatternFormatter extends Formatter implements AppendingFormatter {
+
+	/**
+	 * The default pattern, a single line per record unless there is a throwable
+	 */
+	public static final String DEFAULT_PATTERN = "%timestamp %level [%thread] %class %method: %message%params%throwable%n";
+
+	/**
+	 * The conversion names, the longest first
+	 */
+	private static final String[] CONVERSION_NAMES = {"timestamp", "throwable", "message", "context", "thread", "method", "params", "level", "class", "n"};
+
+	private static final ThreadBuffer resultBuffer = new ThreadBuffer (256);
+
+	private final String pattern;
+	private final TimestampService timestamps;
+	private final ThrowableRenderer throwableRenderer;
+	private final Converter[] converters;
+
+	/**
+	 * Create a formatter with the default timestamp service
+	 * @param pattern if null, {@link PatternFormatter#DEFAULT_PATTERN} is used
+	 * @throws IllegalArgumentException if the pattern could not be compiled
+	 */
+	public PatternFormatter (String pattern) throws IllegalArgumentException {
+		this (pattern, null);
+	}
+
+	/**
+	 * Create a formatter
+	 * @param pattern if null, {@link PatternFormatter#DEFAULT_PATTERN} is used
+	 * @param timestamps the service rendering the record timestamps. If null, the default one is used
+	 * @throws IllegalArgumentException if the pattern could not be compiled
+	 */
+	public PatternFormatter (String pattern, TimestampService timestamps) throws IllegalArgumentException {
+		this (pattern, timestamps, null);
+	}
+
+	/**
+	 * Create a formatter
+	 * @param pattern if null, {@link PatternFormatter#DEFAULT_PATTERN} is used
+	 * @param timestamps the service rendering the record timestamps. If null, the default one is used
+	 * @param throwableRenderer the renderer of the record throwables. If null, {@link ThrowableRenderer#FULL} is used
+	 * @throws IllegalArgumentException if the pattern could not be compiled
+	 */
+	public PatternFormatter (String pattern, TimestampService timestamps, ThrowableRenderer throwableRenderer) throws IllegalArgumentException {
+		this.pattern = (pattern != null ? pattern : DEFAULT_PATTERN);
+		this.timestamps = (timestamps != null ? timestamps : TimestampService.getDefault ());
+		this.throwableRenderer = (throwableRenderer != null ? throwableRenderer : ThrowableRenderer.FULL);
+		this.converters = compile (this.pattern, this.timestamps, this.throwableRenderer);
+	}
+
+	public String getPattern () {
+		return pattern;
+	}
+
+	public TimestampService getTimestampService () {
+		return timestamps;
+	}
+
+	public ThrowableRenderer getThrowableRenderer () {
+		return throwableRenderer;
+	}
+
+	/**
+	 * Reset the throwable renderer
+	 * @see ThrowableRenderer#reset()
+	 */
+	@Override
+	public void reset () {
+		throwableRenderer.reset ();
+	}
+
+	@Override
+	public String format (LogRecord logRecord) {
+		StringBuilder result = resultBuffer.take ();
+		try {
+			return formatTo (logRecord, result).toString ();
+		} finally {
+			resultBuffer.release (result);
+		}
+	}
+
+	@Override
+	public StringBuilder formatTo (LogRecord logRecord, StringBuilder sb) {
+		for (Converter converter : converters) {
+			converter.append (logRecord, sb);
+		}
+		return sb;
+	}
+
+	/**
+	 * Compile a pattern to converters
+	 * @param pattern
+	 * @param timestamps
+	 * @param throwableRenderer
+	 * @return
+	 * @throws IllegalArgumentException if the pattern contains an unknown conversion or an unclosed brace
+	 */
+	private static Converter[] compile (String pattern, TimestampService timestamps, ThrowableRenderer throwableRenderer) throws IllegalArgumentException {
+		List<Converter> converters = new ArrayList<> ();
+		StringBuilder literal = new StringBuilder ();
+
+		int length = pattern.length ();
+		int i = 0;
+		while (i < length) {
+			char c = pattern.charAt (i);
+			if (c != '%') {
+				literal.append (c);
+				i++;
+				continue;
+			}
+
+			int conversionStart = i;
+			i++;
+			if (i < length && pattern.charAt (i) == '%') {
+				literal.append ('%');
+				i++;
+				continue;
+			}
+
+			int nameStart = i;
+			int lettersEnd = i;
+			while (lettersEnd < length && Character.isLetter (pattern.charAt (lettersEnd))) {
+				lettersEnd++;
+			}
+			String name = conversionName (pattern, nameStart, lettersEnd);
+			if (name == null) {
+				throw new IllegalArgumentException ("Unknown conversion %" + pattern.substring (nameStart, lettersEnd) + " at index " + conversionStart + " of pattern: " + pattern);
+			}
+			i = nameStart + name.length ();
+
+			String argument = null;
+			if (i < length && pattern.charAt (i) == '{') {
+				int argumentEnd = pattern.indexOf ('}', i);
+				if (argumentEnd < 0) {
+					throw new IllegalArgumentException ("Unclosed brace at index " + i + " of pattern: " + pattern);
+				}
+				argument = pattern.substring (i + 1, argumentEnd);
+				i = argumentEnd + 1;
+			}
+
+			Converter converter = converter (name, argument, timestamps, throwableRenderer);
+			if (converter == null) {
+				throw new IllegalArgumentException ("Unknown conversion %" + name + " at index " + conversionStart + " of pattern: " + pattern);
+			}
+
+			if (converter instanceof LiteralConverter) {
+				literal.append (((LiteralConverter) converter).text);
+			} else {
+				if (literal.length () > 0) {
+					converters.add (new LiteralConverter (literal.toString ()));
+					literal.setLength (0);
+				}
+				converters.add (converter);
+			}
+		}
+
+		if (literal.length () > 0) {
+			converters.add (new LiteralConverter (literal.toString ()));
+		}
+
+		return converters.toArray (new Converter[converters.size ()]);
+	}
+
+	/**
+	 * Get the longest conversion name the letters of a pattern start with
+	 * @param pattern
+	 * @param lettersStart
+	 * @param lettersEnd
+	 * @return null if the letters start with no conversion name
+	 */
+	private static String conversionName (String pattern, int lettersStart, int lettersEnd) {
+		for (String name : CONVERSION_NAMES) {
+			if (name.length () <= lettersEnd - lettersStart && pattern.startsWith (name, lettersStart)) {
+				return name;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get the converter of a conversion
+	 * @param name
+	 * @param argument the text in braces after the name. May be null
+	 * @param timestamps
+	 * @param throwableRenderer
+	 * @return null if the conversion is unknown
+	 */
+	private static Converter converter (String name, String argument, TimestampService timestamps, ThrowableRenderer throwableRenderer) {
+		switch (name) {
+			case "level":
+				return (LogRecord logRecord, StringBuilder sb) -> sb.append (logRecord.getLevel ().getName ());
+			case "thread":
+				return (LogRecord logRecord, StringBuilder sb) -> sb.append (logRecord instanceof StructuredLogRecord ? ((StructuredLogRecord) logRecord).getThreadName () : Thread.currentThread ().getName ());
+			case "timestamp":
+				return (LogRecord logRecord, StringBuilder sb) -> timestamps.appendTimestamp (logRecord, sb);
+			case "class":
+				return (LogRecord logRecord, StringBuilder sb) -> appendNotNull (logRecord.getSourceClassName (), sb);
+			case "method":
+				return (LogRecord logRecord, StringBuilder sb) -> appendNotNull (logRecord.getSourceMethodName (), sb);
+			case "message":
+				return (LogRecord logRecord, StringBuilder sb) -> sb.append (logRecord.getMessage ());
+			case "params":
+				return PatternFormatter::appendParams;
+			case "throwable":
+				return (LogRecord logRecord, StringBuilder sb) -> appendThrowable (logRecord, throwableRenderer, sb);
+			case "context":
+				if (argument != null) {
+					return new ContextKeyConverter (argument);
+				}
+				return PatternFormatter::appendContext;
+			case "n":
+				return new LiteralConverter ("\n");
+			default:
+				return null;
+		}
+	}
+
+	private static void appendNotNull (String text, StringBuilder sb) {
+		if (text != null) {
+			sb.append (text);
+		}
+	}
+
+	private static void appendParams (LogRecord logRecord, StringBuilder sb) {
+		Object[] params = logRecord.getParameters ();
+		if (params == null || params.length < 1) {
+			return;
+		}
+
+		sb.append (" [");
+		for (int paramIndex = 0; paramIndex < params.length; paramIndex++) {
+			if (paramIndex > 0) {
+				sb.append (", ");
+			}
+			sb.append (params[paramIndex]);
+		}
+		sb.append (']');
+	}
+
+	private static void appendThrowable (LogRecord logRecord, ThrowableRenderer throwableRenderer, StringBuilder sb) {
+		Throwable t = logRecord.getThrown ();
+		if (t != null) {
+			sb.append ('\n');
+			throwableRenderer.append (t, sb);
+		}
+	}
+
+	private static void appendContext (LogRecord logRecord, StringBuilder sb) {
+		LogContext.Snapshot context = getContext (logRecord);
+		for (int contextIndex = 0; contextIndex < context.size (); contextIndex++) {
+			if (contextIndex > 0) {
+				sb.append (", ");
+			}
+			sb.append (context.getKey (contextIndex))
+					.append ('=')
+					.append (context.getValue (contextIndex));
+		}
+	}
+
+	/**
+	 * Get the log context of a record: the one captured by a structured record, or the current one of the logging thread
+	 * @param logRecord
+	 * @return
+	 */
+	private static LogContext.Snapshot getContext (LogRecord logRecord) {
+		if (logRecord instanceof StructuredLogRecord) {
+			return ((StructuredLogRecord) logRecord).getContext ();
+		}
+		return LogContext.getSnapshot ();
+	}
+
+	/**
+	 * A compiled part of a pattern
+	 */
+	private interface Converter {
+
+		void append (LogRecord logRecord, StringBuilder sb);
+	}
+
+	private static final class LiteralConverter implements Converter {
+
+		final String text;
+
+		LiteralConverter (String text) {
+			this.text = text;
+		}
+
+		@Override
+		public void append (LogRecord logRecord, StringBuilder sb) {
+			sb.append (text);
+		}
+	}
+
+	private static final class ContextKeyConverter implements Converter {
+
+		final String key;
+
+		ContextKeyConverter (String key) {
+			this.key = key;
+		}
+
+		@Override
+		public void append (LogRecord logRecord, StringBuilder sb) {
+			appendNotNull (getContext (logRecord).get (key), sb);
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.formatter;
+
+/**
+ * A string buffer reused by the formatters, one per thread. A record may be logged on the same thread while another one is formatted, e.g. by <code>toString ()</code> of a parameter; the buffer is then in use, and a new one is given, so the text of the outer record is not overwritten.
+ *
+ * @author Dmitriy Merkushov
+ */
+final class ThreadBuffer {
+
+	/**
+	 * Buffers grown larger than this are not kept for reuse
+	 */
+	private static final int MAX_REUSED_BUFFER_CAPACITY = 64 * 1024;
+
+	private final int initialCapacity;
+	private final ThreadLocal<Slot> slots = ThreadLocal.withInitial (Slot::new);
+
+	/**
+	 * Create a per-thread buffer
+	 * @param initialCapacity
+	 */
+	ThreadBuffer (int initialCapacity) {
+		this.initialCapacity = initialCapacity;
+	}
+
+	/**
+	 * Take the buffer of the calling thread, emptied
+	 * @return a new buffer if the thread's one is in use
+	 */
+	StringBuilder take () {
+		Slot slot = slots.get ();
+		if (slot.inUse) {
+			return new StringBuilder (initialCapacity);
+		}
+
+		if (slot.buffer == null || slot.buffer.capacity () > MAX_REUSED_BUFFER_CAPACITY) {
+			slot.buffer = new StringBuilder (initialCapacity);
+		}
+		slot.inUse = true;
+		slot.buffer.setLength (0);
+		return slot.buffer;
+	}
+
+	/**
+	 * Give back a buffer taken by {@link ThreadBuffer#take()}
+	 * @param buffer
+	 */
+	void release (StringBuilder buffer) {
+		Slot slot = slots.get ();
+		if (slot.buffer == buffer) {
+			slot.inUse = false;
+		}
+	}
+
+	private static final class Slot {
+
+		StringBuilder buffer;
+		boolean inUse;
+	}
+
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.formatter;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Renders throwables as text: the class name and the message, the stack trace, and the causes, described recursively. The format is the one of {@link DefaultFormatter#getFullThrowableMsg(java.lang.Throwable)}.
+ * <p>
+ * To keep exception storms from dominating the logs, a renderer may:
+ * <ul>
+ * <li>cache the stack traces it has rendered. A trace rendered for the first time is numbered, <code>Stack Trace #id:</code>, and the same trace rendered again is replaced by <code>Stack Trace: same trace as #id</code>. The cache is bounded: a trace pushed out of it is rendered in full again, with a new number. The rolling file handlers {@link ThrowableRenderer#reset() reset} the cache of their formatter's renderer when they switch to a new file, so a trace is rendered in full the first time it appears in every file;</li>
+ * <li>fold the frames a cause has in common with the trace of the throwable it caused;</li>
+ * <li>limit the number of frames rendered per trace.</li>
+ * </ul>
+ * The renderer is thread-safe.
+ *
+ * @author Dmitriy Merkushov
+ */
+public class ThrowableRenderer {
+
+	/**
+	 * The renderer writing every throwable in full, with no cache, no folding and no depth limit
+	 */
+	public static final ThrowableRenderer FULL = new ThrowableRenderer (0, false, 0);
+
+	/**
+	 * The default trace cache capacity, namely 1024 traces
+	 */
+	public static final int DEFAULT_CACHE_CAPACITY = 1024;
+
+	private final Trace[] traces;
+	private final int mask;
+	private final AtomicLong lastTraceId = new AtomicLong ();
+	private final boolean foldCommonFrames;
+	private final int maxDepth;
+
+	/**
+	 * Create a throwable renderer caching the traces with the default capacity and folding the common frames, with no depth limit
+	 * @see ThrowableRenderer#DEFAULT_CACHE_CAPACITY
+	 */
+	public ThrowableRenderer () {
+		this (DEFAULT_CACHE_CAPACITY, true, 0);
+	}
+
+	/**
+	 * Create a throwable renderer
+	 * @param cacheCapacity maximum number of cached traces, rounded up to a power of two. If 0, the traces are not cached
+	 * @param foldCommonFrames if <code>true</code>, the frames a cause has in common with the trace of the throwable it caused are not rendered
+	 * @param maxDepth maximum number of frames rendered per trace. If 0, the number is not limited
+	 * @throws IllegalArgumentException if the capacity or the depth is negative
+	 */
+	public ThrowableRenderer (int cacheCapacity, boolean foldCommonFrames, int maxDepth) throws IllegalArgumentException {
+		if (cacheCapacity < 0) {
+			throw new IllegalArgumentException ("Cache capacity is negative");
+		}
+		if (maxDepth < 0) {
+			throw new IllegalArgumentException ("Maximum depth is negative");
+		}
+
+		if (cacheCapacity > 0) {
+			int tableSize = Integer.highestOneBit (cacheCapacity);
+			if (tableSize < cacheCapacity) {
+				tableSize <<= 1;
+			}
+			traces = new Trace[tableSize];
+			mask = tableSize - 1;
+		} else {
+			traces = null;
+			mask = 0;
+		}
+
+		this.foldCommonFrames = foldCommonFrames;
+		this.maxDepth = maxDepth;
+	}
+
+	/**
+	 * Get the trace cache capacity
+	 * @return 0 if the traces are not cached
+	 */
+	public int getCacheCapacity () {
+		return (traces != null ? traces.length : 0);
+	}
+
+	public boolean isFoldCommonFrames () {
+		return foldCommonFrames;
+	}
+
+	/**
+	 * Get the maximum number of frames rendered per trace
+	 * @return 0 if the number is not limited
+	 */
+	public int getMaxDepth () {
+		return maxDepth;
+	}
+
+	/**
+	 * Forget the cached traces, so every trace is rendered in full the next time. The trace numbers go on growing
+	 */
+	public void reset () {
+		if (traces != null) {
+			Arrays.fill (traces, null);
+		}
+	}
+
+	/**
+	 * Render a throwable
+	 * @param throwable
+	 * @return
+	 */
+	public String render (Throwable throwable) {
+		return append (throwable, new StringBuilder ()).toString ();
+	}
+
+	/**
+	 * Append a rendered throwable to a buffer
+	 * @param throwable
+	 * @param sb
+	 * @return <code>sb</code>
+	 */
+	public StringBuilder append (Throwable throwable, StringBuilder sb) {
+		StackTraceElement[] enclosingTrace = null;
+		Throwable current = throwable;
+		while (true) {
+			sb.append (current.getClass ().getCanonicalName ())
+					.append (": ")
+					.append (current.getMessage ());
+
+			StackTraceElement[] stackTrace = current.getStackTrace ();
+			if (stackTrace != null && stackTrace.length > 0) {
+				appendStackTrace (stackTrace, enclosingTrace, sb);
+			}
+
+			Throwable cause = current.getCause ();
+			if (cause == null) {
+				break;
+			}
+
+			sb.append ("\nCaused by:\n");
+			if (isInChain (throwable, current, cause)) {
+				sb.append ("Circular reference to ")
+						.append (cause.getClass ().getCanonicalName ())
+						.append (": ")
+						.append (cause.getMessage ());
+				break;
+			}
+
+			enclosingTrace = stackTrace;
+			current = cause;
+		}
+
+		return sb;
+	}
+
+	private void appendStackTrace (StackTraceElement[] stackTrace, StackTraceElement[] enclosingTrace, StringBuilder sb) {
+		if (traces != null) {
+			int hash = Arrays.hashCode (stackTrace);
+			int index = (hash ^ (hash >>> 16)) & mask;
+
+			Trace trace = traces[index];
+			if (trace != null && trace.hash == hash && Arrays.equals (trace.stackTrace, stackTrace)) {
+				sb.append ("\nStack Trace: same trace as #")
+						.append (trace.id);
+				return;
+			}
+
+			trace = new Trace (stackTrace, hash, lastTraceId.incrementAndGet ());
+			traces[index] = trace;
+			sb.append ("\nStack Trace #")
+					.append (trace.id)
+					.append (":\n");
+		} else {
+			sb.append ("\nStack Trace:\n");
+		}
+
+		int commonFrames = 0;
+		if (foldCommonFrames && enclosingTrace != null) {
+			int i = stackTrace.length - 1;
+			int j = enclosingTrace.length - 1;
+			// The first frame is always rendered
+			while (i > 0 && j >= 0 && stackTrace[i].equals (enclosingTrace[j])) {
+				i--;
+				j--;
+			}
+			commonFrames = stackTrace.length - 1 - i;
+		}
+
+		int ownFrames = stackTrace.length - commonFrames;
+		int renderedFrames = (maxDepth > 0 ? Math.min (ownFrames, maxDepth) : ownFrames);
+
+		sb.append ('\t');
+		appendFrame (stackTrace[0], sb);
+		for (int i = 1; i < renderedFrames; i++) {
+			sb.append ("\n\tat ");
+			appendFrame (stackTrace[i], sb);
+		}
+
+		if (renderedFrames < ownFrames) {
+			sb.append ("\n\t... ")
+					.append (ownFrames - renderedFrames)
+					.append (" more");
+		}
+		if (commonFrames > 0) {
+			sb.append ("\n\t... ")
+					.append (commonFrames)
+					.append (" in common with the enclosing trace");
+		}
+	}
+
+	private static void appendFrame (StackTraceElement frame, StringBuilder sb) {
+		sb.append (frame.getClassName ())
+				.append (':')
+				.append (frame.getMethodName ())
+				.append ("():")
+				.append (frame.getLineNumber ());
+	}
+
+	/**
+	 * Check if a throwable is in the cause chain from the first throwable to the last one, inclusive
+	 * @param first
+	 * @param last
+	 * @param throwable
+	 * @return
+	 */
+	static boolean isInChain (Throwable first, Throwable last, Throwable throwable) {
+		for (Throwable t = first; t != null; t = t.getCause ()) {
+			if (t == throwable) {
+				return true;
+			}
+			if (t == last) {
+				break;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * A cached stack trace
+	 */
+	private static final class Trace {
+
+		final StackTraceElement[] stackTrace;
+		final int hash;
+		final long id;
+
+		Trace (StackTraceElement[] stackTrace, int hash, long id) {
+			this.stackTrace = stackTrace;
+			this.hash = hash;
+			this.id = id;
+		}
+	}
+
+}
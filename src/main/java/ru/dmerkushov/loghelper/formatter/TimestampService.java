@@ -0,0 +1,295 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.formatter;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.LogRecord;
+
+/**
+ * Timestamp rendering shared by the formatters and the file handlers. The text of the date and the time up to a second is cached, so rendering a timestamp only appends the cached text and the fraction of a second.
+ * <p>
+ * The class also keeps an optional coarse clock: a background thread reads the system clock once per tick, and {@link TimestampService#currentTimeMillis()} returns the last value read.
+ * <p>
+ * The instances are thread-safe.
+ *
+ * @author Dmitriy Merkushov
+ */
+public final class TimestampService {
+
+	/**
+	 * Precision of the rendered timestamps
+	 */
+	public enum Precision {
+
+		/**
+		 * Milliseconds, not padded, as of SimpleDateFormat pattern "yyyy-MM-dd HH:mm:ss.S Z"
+		 */
+		MILLISECONDS,
+		/**
+		 * Nanoseconds, padded to nine digits, as of DateTimeFormatter pattern "yyyy-MM-dd HH:mm:ss.SSSSSSSSS Z". The time is taken from {@link LogRecord#getInstant()}
+		 */
+		NANOSECONDS
+	}
+
+	private static final String COARSE_CLOCK_THREAD_NAME = "log-helper coarse clock";
+
+	/**
+	 * Number of cached seconds. Records of a few neighbouring seconds, coming from several threads, do not push each other out of the cache
+	 */
+	private static final int CACHED_SECONDS = 4;
+
+	private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern ("yyyy-MM-dd");
+	private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern ("HH:mm:ss");
+	private static final DateTimeFormatter FILE_TIME_FORMATTER = DateTimeFormatter.ofPattern ("HH-mm-ss");
+	private static final DateTimeFormatter OFFSET_FORMATTER = DateTimeFormatter.ofPattern ("Z");
+
+	private static final TimestampService DEFAULT = new TimestampService (ZoneId.systemDefault (), Precision.MILLISECONDS);
+
+	private static volatile Thread coarseClockThread;
+	private static volatile long coarseMillis;
+	private static long coarseTickMillis;
+
+	private final ZoneId zone;
+	private final Precision precision;
+	private final AtomicReferenceArray<Second> seconds = new AtomicReferenceArray<> (CACHED_SECONDS);
+
+	/**
+	 * Create a timestamp service
+	 * @param zone if null, the default system time zone is used
+	 * @param precision if null, {@link Precision#MILLISECONDS} is used
+	 */
+	public TimestampService (ZoneId zone, Precision precision) {
+		this.zone = (zone != null ? zone : ZoneId.systemDefault ());
+		this.precision = (precision != null ? precision : Precision.MILLISECONDS);
+	}
+
+	/**
+	 * Get the shared timestamp service of the default system time zone, with millisecond precision
+	 * @return
+	 */
+	public static TimestampService getDefault () {
+		return DEFAULT;
+	}
+
+	public ZoneId getZone () {
+		return zone;
+	}
+
+	public Precision getPrecision () {
+		return precision;
+	}
+
+	/**
+	 * Append the timestamp of a record, in the precision of the service
+	 * @param logRecord
+	 * @param sb
+	 * @return <code>sb</code>
+	 */
+	public StringBuilder appendTimestamp (LogRecord logRecord, StringBuilder sb) {
+		if (precision == Precision.NANOSECONDS) {
+			return appendTimestamp (logRecord.getInstant (), sb);
+		}
+		return appendTimestamp (logRecord.getMillis (), sb);
+	}
+
+	/**
+	 * Append a timestamp, in the precision of the service
+	 * @param instant
+	 * @param sb
+	 * @return <code>sb</code>
+	 */
+	public StringBuilder appendTimestamp (Instant instant, StringBuilder sb) {
+		if (precision != Precision.NANOSECONDS) {
+			return appendTimestamp (instant.toEpochMilli (), sb);
+		}
+
+		Second second = getSecond (instant.getEpochSecond ());
+		sb.append (second.date)
+				.append (' ')
+				.append (second.time)
+				.append ('.');
+		appendPadded (instant.getNano (), 9, sb);
+		return sb.append (' ')
+				.append (second.offset);
+	}
+
+	/**
+	 * Append a timestamp with millisecond precision, formatted as by SimpleDateFormat pattern "yyyy-MM-dd HH:mm:ss.S Z"
+	 * @param millis
+	 * @param sb
+	 * @return <code>sb</code>
+	 */
+	public StringBuilder appendTimestamp (long millis, StringBuilder sb) {
+		Second second = getSecond (Math.floorDiv (millis, 1000L));
+		return sb.append (second.date)
+				.append (' ')
+				.append (second.time)
+				.append ('.')
+				.append ((int) Math.floorMod (millis, 1000L))
+				.append (' ')
+				.append (second.offset);
+	}
+
+	/**
+	 * Append a timestamp fit for a file name, formatted as by SimpleDateFormat pattern "yyyy-MM-dd_HH-mm-ss.SZ"
+	 * @param millis
+	 * @param sb
+	 * @return <code>sb</code>
+	 */
+	public StringBuilder appendFileTimestamp (long millis, StringBuilder sb) {
+		Second second = getSecond (Math.floorDiv (millis, 1000L));
+		return sb.append (second.date)
+				.append ('_')
+				.append (second.fileTime)
+				.append ('.')
+				.append ((int) Math.floorMod (millis, 1000L))
+				.append (second.offset);
+	}
+
+	/**
+	 * Append a date, formatted as "yyyy-MM-dd"
+	 * @param millis
+	 * @param sb
+	 * @return <code>sb</code>
+	 */
+	public StringBuilder appendDate (long millis, StringBuilder sb) {
+		return sb.append (getSecond (Math.floorDiv (millis, 1000L)).date);
+	}
+
+	/**
+	 * Format a date as "yyyy-MM-dd"
+	 * @param millis
+	 * @return
+	 */
+	public String formatDate (long millis) {
+		return getSecond (Math.floorDiv (millis, 1000L)).date;
+	}
+
+	private Second getSecond (long epochSecond) {
+		int slot = (int) Math.floorMod (epochSecond, (long) CACHED_SECONDS);
+		Second second = seconds.get (slot);
+		if (second == null || second.epochSecond != epochSecond) {
+			second = new Second (epochSecond, Instant.ofEpochSecond (epochSecond).atZone (zone));
+			seconds.set (slot, second);
+		}
+		return second;
+	}
+
+	private static void appendPadded (int value, int digits, StringBuilder sb) {
+		for (int bound = 10; digits > 1; digits--, bound *= 10) {
+			if (value < bound) {
+				sb.append ('0');
+			}
+		}
+		sb.append (value);
+	}
+
+	/**
+	 * Get the current time in milliseconds. If the coarse clock is running, returns its last tick, without reading the system clock
+	 * @return
+	 * @see TimestampService#startCoarseClock(long)
+	 */
+	public static long currentTimeMillis () {
+		if (coarseClockThread != null) {
+			return coarseMillis;
+		}
+		return System.currentTimeMillis ();
+	}
+
+	/**
+	 * Start the coarse clock. If it is running already with the same tick, nothing is done; with another tick, it is restarted
+	 * @param tickMillis the interval of reading the system clock. The coarse time lags behind the system time by up to this interval
+	 * @throws IllegalArgumentException if <code>tickMillis</code> is not positive
+	 */
+	public static synchronized void startCoarseClock (long tickMillis) throws IllegalArgumentException {
+		if (tickMillis <= 0L) {
+			throw new IllegalArgumentException ("Coarse clock tick is not positive: " + tickMillis);
+		}
+
+		if (coarseClockThread != null && coarseTickMillis == tickMillis) {
+			return;
+		}
+
+		stopCoarseClock ();
+
+		coarseTickMillis = tickMillis;
+		coarseMillis = System.currentTimeMillis ();
+		Thread thread = new Thread (() -> tick (tickMillis), COARSE_CLOCK_THREAD_NAME);
+		thread.setDaemon (true);
+		coarseClockThread = thread;
+		thread.start ();
+	}
+
+	/**
+	 * Stop the coarse clock. {@link TimestampService#currentTimeMillis()} reads the system clock again
+	 */
+	public static synchronized void stopCoarseClock () {
+		Thread thread = coarseClockThread;
+		if (thread != null) {
+			coarseClockThread = null;
+			thread.interrupt ();
+		}
+	}
+
+	public static boolean isCoarseClockRunning () {
+		return coarseClockThread != null;
+	}
+
+	/**
+	 * Get the tick of the coarse clock
+	 * @return 0 if the coarse clock is not running
+	 */
+	public static synchronized long getCoarseClockTickMillis () {
+		return (coarseClockThread != null ? coarseTickMillis : 0L);
+	}
+
+	private static void tick (long tickMillis) {
+		Thread thread = Thread.currentThread ();
+		while (coarseClockThread == thread) {
+			coarseMillis = System.currentTimeMillis ();
+			try {
+				Thread.sleep (tickMillis);
+			} catch (InterruptedException ex) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * The cached text of a second
+	 */
+	private static final class Second {
+
+		final long epochSecond;
+		final String date;
+		final String time;
+		final String fileTime;
+		final String offset;
+
+		Second (long epochSecond, ZonedDateTime dateTime) {
+			this.epochSecond = epochSecond;
+			this.date = DATE_FORMATTER.format (dateTime);
+			this.time = TIME_FORMATTER.format (dateTime);
+			this.fileTime = FILE_TIME_FORMATTER.format (dateTime);
+			this.offset = OFFSET_FORMATTER.format (dateTime);
+		}
+	}
+
+}
@@ -0,0 +1,451 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.handler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.ErrorManager;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import ru.dmerkushov.loghelper.StructuredLogRecord;
+
+/**
+ * Handler that passes records to a wrapped handler asynchronously, on a dedicated consumer thread.
+ * <p>
+ * Records are queued in a preallocated ring buffer: many producers, one consumer, no locks on the way in or out. Producers claim slots by compare-and-set on the tail counter, and every slot has a sequence number telling whether it is free or filled. The consumer flushes the wrapped handler whenever it has drained the buffer, so a burst of records is flushed once.
+ * <p>
+ * Records that are not {@link StructuredLogRecord}s are copied to structured ones when queued, so the wrapped handler's formatter sees the logging thread's name and log context rather than the consumer's.
+ * <p>
+ * What a producer does when the buffer is full is defined by the {@link QueueFullPolicy}. Closing the handler (also done by a shutdown hook) stops accepting records, drains the buffer into the wrapped handler, including the records of producers still publishing at that moment, and closes it.
+ *
+ * @author Dmitriy Merkushov
+ */
+public class AsyncHandler extends Handler {
+
+	/**
+	 * What a producer does when the ring buffer is full
+	 */
+	public enum QueueFullPolicy {
+		/**
+		 * Wait until the consumer frees a slot
+		 */
+		BLOCK,
+		/**
+		 * Drop the record being published
+		 */
+		DROP_NEWEST,
+		/**
+		 * Drop the record if its level is below the drop level, wait as with {@link QueueFullPolicy#BLOCK} otherwise
+		 */
+		DROP_BELOW_LEVEL,
+		/**
+		 * Busy-spin for a while, then park in short intervals until a slot is free. Lower latency than {@link QueueFullPolicy#BLOCK}, at the cost of CPU
+		 */
+		SPIN_THEN_PARK
+	}
+
+	/**
+	 * The default ring buffer capacity, namely 8192 records
+	 */
+	public static final int DEFAULT_CAPACITY = 8192;
+
+	private static final int SPIN_COUNT = 1000;
+	private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos (100);
+
+	private final Handler target;
+	private final QueueFullPolicy queueFullPolicy;
+	private final int dropLevelValue;
+
+	private final LogRecord[] records;
+	private final AtomicLongArray sequences;
+	private final int mask;
+	private final AtomicLong tail = new AtomicLong ();
+	private long head = 0L;
+
+	private final AtomicLong droppedCount = new AtomicLong ();
+	private final AtomicInteger activeProducers = new AtomicInteger ();
+	private final ReentrantLock notFullLock = new ReentrantLock ();
+	private final Condition notFull = notFullLock.newCondition ();
+	private volatile int blockedProducers = 0;
+	private volatile boolean consumerParked = false;
+	private volatile boolean closed = false;
+
+	private final Thread consumer;
+	private final Thread shutdownHook;
+
+	/**
+	 * Create an asynchronous handler with default capacity and the {@link QueueFullPolicy#BLOCK} policy
+	 * @param target the wrapped handler
+	 */
+	public AsyncHandler (Handler target) {
+		this (target, DEFAULT_CAPACITY, QueueFullPolicy.BLOCK, null);
+	}
+
+	/**
+	 * Create an asynchronous handler
+	 * @param target the wrapped handler
+	 * @param capacity ring buffer capacity. Rounded up to a power of two
+	 * @param queueFullPolicy
+	 * @param dropLevel records below this level are dropped when the buffer is full, with the {@link QueueFullPolicy#DROP_BELOW_LEVEL} policy. If null, {@link Level#INFO} is used
+	 * @throws NullPointerException if target or queueFullPolicy is null
+	 * @throws IllegalArgumentException if capacity is less than 1
+	 */
+	public AsyncHandler (Handler target, int capacity, QueueFullPolicy queueFullPolicy, Level dropLevel) throws NullPointerException, IllegalArgumentException {
+		if (target == null) {
+			throw new NullPointerException ("target");
+		}
+		if (queueFullPolicy == null) {
+			throw new NullPointerException ("queueFullPolicy");
+		}
+		if (capacity < 1) {
+			throw new IllegalArgumentException ("Capacity is less than 1: " + capacity);
+		}
+
+		int bufferSize = Integer.highestOneBit (capacity);
+		if (bufferSize < capacity) {
+			bufferSize <<= 1;
+		}
+
+		this.target = target;
+		this.queueFullPolicy = queueFullPolicy;
+		this.dropLevelValue = (dropLevel != null ? dropLevel : Level.INFO).intValue ();
+		this.records = new LogRecord[bufferSize];
+		this.sequences = new AtomicLongArray (bufferSize);
+		for (int i = 0; i < bufferSize; i++) {
+			sequences.set (i, i);
+		}
+		this.mask = bufferSize - 1;
+
+		consumer = new Thread (this::consume, "log-helper AsyncHandler consumer");
+		consumer.setDaemon (true);
+		consumer.start ();
+
+		shutdownHook = new Thread (this::close, "log-helper AsyncHandler shutdown");
+		Runtime.getRuntime ().addShutdownHook (shutdownHook);
+	}
+
+	/**
+	 * Get the wrapped handler
+	 * @return
+	 */
+	public Handler getTarget () {
+		return target;
+	}
+
+	/**
+	 * Get the policy used when the ring buffer is full
+	 * @return
+	 */
+	public QueueFullPolicy getQueueFullPolicy () {
+		return queueFullPolicy;
+	}
+
+	/**
+	 * Get the number of records dropped because the ring buffer was full, and not yet reported to the wrapped handler
+	 * @return
+	 */
+	public long getDroppedCount () {
+		return droppedCount.get ();
+	}
+
+	@Override
+	public void publish (LogRecord record) {
+		if (!isLoggable (record)) {
+			return;
+		}
+
+		// Counted before checking closed, so close() can wait for the producers that have passed the check
+		activeProducers.incrementAndGet ();
+		try {
+			if (!closed) {
+				enqueue (capture (record));
+			}
+		} finally {
+			activeProducers.decrementAndGet ();
+		}
+	}
+
+	/**
+	 * Make a record carry what its formatting takes from the logging thread: the caller, inferred if needed, the thread name and the log context
+	 * @param record
+	 * @return the record itself if it is a {@link StructuredLogRecord}, its structured copy otherwise
+	 */
+	private static LogRecord capture (LogRecord record) {
+		String sourceClassName = record.getSourceClassName ();
+		if (record instanceof StructuredLogRecord) {
+			return record;
+		}
+
+		StructuredLogRecord structuredRecord = new StructuredLogRecord (record.getLevel (), record.getMessage ());
+		structuredRecord.setInstant (record.getInstant ());
+		structuredRecord.setSequenceNumber (record.getSequenceNumber ());
+		structuredRecord.setLoggerName (record.getLoggerName ());
+		structuredRecord.setSourceClassName (sourceClassName);
+		structuredRecord.setSourceMethodName (record.getSourceMethodName ());
+		structuredRecord.setParameters (record.getParameters ());
+		structuredRecord.setThrown (record.getThrown ());
+		structuredRecord.setResourceBundle (record.getResourceBundle ());
+		structuredRecord.setResourceBundleName (record.getResourceBundleName ());
+		return structuredRecord;
+	}
+
+	private void enqueue (LogRecord record) {
+		if (offer (record)) {
+			return;
+		}
+
+		switch (queueFullPolicy) {
+			case DROP_NEWEST:
+				droppedCount.incrementAndGet ();
+				break;
+			case DROP_BELOW_LEVEL:
+				if (record.getLevel ().intValue () < dropLevelValue) {
+					droppedCount.incrementAndGet ();
+				} else {
+					block (record);
+				}
+				break;
+			case SPIN_THEN_PARK:
+				spinThenPark (record);
+				break;
+			default:
+				block (record);
+		}
+	}
+
+	/**
+	 * Try to put a record to the ring buffer
+	 * @param record
+	 * @return <code>false</code> if the buffer is full
+	 */
+	private boolean offer (LogRecord record) {
+		while (true) {
+			long position = tail.get ();
+			int index = (int) position & mask;
+			long difference = sequences.get (index) - position;
+
+			if (difference == 0) {
+				if (tail.compareAndSet (position, position + 1)) {
+					records[index] = record;
+					sequences.lazySet (index, position + 1);
+
+					if (consumerParked) {
+						LockSupport.unpark (consumer);
+					}
+					return true;
+				}
+			} else if (difference < 0) {
+				return false;
+			}
+		}
+	}
+
+	private void block (LogRecord record) {
+		notFullLock.lock ();
+		try {
+			blockedProducers++;
+			while (!offer (record)) {
+				if (closed) {
+					droppedCount.incrementAndGet ();
+					return;
+				}
+				notFull.await (1, TimeUnit.MILLISECONDS);
+			}
+		} catch (InterruptedException ex) {
+			droppedCount.incrementAndGet ();
+			Thread.currentThread ().interrupt ();
+		} finally {
+			blockedProducers--;
+			notFullLock.unlock ();
+		}
+	}
+
+	private void spinThenPark (LogRecord record) {
+		int spins = 0;
+		while (!offer (record)) {
+			if (closed) {
+				droppedCount.incrementAndGet ();
+				return;
+			}
+			if (spins < SPIN_COUNT) {
+				spins++;
+				Thread.onSpinWait ();
+			} else {
+				LockSupport.parkNanos (PARK_NANOS);
+			}
+		}
+	}
+
+	/**
+	 * Take a record from the ring buffer. Called by the consumer thread only
+	 * @return null if the buffer is empty
+	 */
+	private LogRecord poll () {
+		int index = (int) head & mask;
+		if (sequences.get (index) != head + 1) {
+			return null;
+		}
+
+		LogRecord record = records[index];
+		records[index] = null;
+		sequences.lazySet (index, head + records.length);
+		head++;
+
+		if (blockedProducers > 0) {
+			notFullLock.lock ();
+			try {
+				notFull.signalAll ();
+			} finally {
+				notFullLock.unlock ();
+			}
+		}
+
+		return record;
+	}
+
+	private void consume () {
+		boolean drained = true;
+		while (true) {
+			LogRecord record = poll ();
+			if (record != null) {
+				publishToTarget (record);
+				drained = false;
+				continue;
+			}
+
+			if (!drained) {
+				reportDropped ();
+				target.flush ();
+				drained = true;
+			}
+
+			if (closed && tail.get () == head) {
+				break;
+			}
+
+			consumerParked = true;
+			if (tail.get () == head && !closed) {
+				LockSupport.parkNanos (this, PARK_NANOS * 10);
+			}
+			consumerParked = false;
+		}
+	}
+
+	private void publishToTarget (LogRecord record) {
+		try {
+			target.publish (record);
+		} catch (RuntimeException ex) {
+			reportError ("Wrapped handler failed to publish a record", ex, ErrorManager.WRITE_FAILURE);
+		}
+	}
+
+	private void reportDropped () {
+		long dropped = droppedCount.getAndSet (0L);
+		if (dropped > 0) {
+			LogRecord droppedRecord = new LogRecord (Level.WARNING, "log-helper AsyncHandler dropped " + dropped + " records: the queue was full");
+			droppedRecord.setSourceClassName (AsyncHandler.class.getName ());
+			droppedRecord.setSourceMethodName ("publish");
+			publishToTarget (droppedRecord);
+		}
+	}
+
+	/**
+	 * Does nothing: the consumer thread flushes the wrapped handler whenever it drains the ring buffer
+	 */
+	@Override
+	public void flush () {
+	}
+
+	/**
+	 * Stop accepting records, drain the ring buffer into the wrapped handler, and close it. Waits for the consumer thread to finish the drain, then for the producers still publishing, whose records are drained on the calling thread
+	 * @throws SecurityException
+	 */
+	@Override
+	public void close () throws SecurityException {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+		}
+
+		LockSupport.unpark (consumer);
+		try {
+			consumer.join ();
+		} catch (InterruptedException ex) {
+			Thread.currentThread ().interrupt ();
+		}
+
+		// A producer that passed the closed check as the consumer exited may have queued a record since
+		while (activeProducers.get () > 0) {
+			Thread.yield ();
+		}
+		LogRecord record;
+		while ((record = poll ()) != null) {
+			publishToTarget (record);
+		}
+
+		reportDropped ();
+		target.flush ();
+		target.close ();
+
+		if (Thread.currentThread () != shutdownHook) {
+			try {
+				Runtime.getRuntime ().removeShutdownHook (shutdownHook);
+			} catch (IllegalStateException ex) {
+				// Shutdown is in progress
+			}
+		}
+	}
+
+	/**
+	 * Set the level of both this handler and the wrapped one
+	 * @param newLevel
+	 * @throws SecurityException
+	 */
+	@Override
+	public synchronized void setLevel (Level newLevel) throws SecurityException {
+		super.setLevel (newLevel);
+		target.setLevel (newLevel);
+	}
+
+	/**
+	 * Get the formatter of the wrapped handler
+	 * @return
+	 */
+	@Override
+	public Formatter getFormatter () {
+		return target.getFormatter ();
+	}
+
+	/**
+	 * Set the formatter of the wrapped handler
+	 * @param newFormatter
+	 * @throws SecurityException
+	 */
+	@Override
+	public synchronized void setFormatter (Formatter newFormatter) throws SecurityException {
+		target.setFormatter (newFormatter);
+	}
+
+}
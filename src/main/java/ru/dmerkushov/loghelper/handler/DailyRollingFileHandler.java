@@ -7,14 +7,30 @@ package ru.dmerkushov.loghelper.handler;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.ErrorManager;
+import java.util.logging.Filter;
+import java.util.logging.Formatter;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.StreamHandler;
+import ru.dmerkushov.loghelper.formatter.AppendingFormatter;
+import ru.dmerkushov.loghelper.formatter.TimestampService;
 
 /**
- * Simple daily rolling file handler
+ * Simple daily rolling file handler.
+ * <p>
+ * The handler extends StreamHandler for compatibility, but does not use its writer: records are written through a {@link FileChannelOutput}.
+ * <p>
+ * The start of the next day in the default time zone is computed once per day, so choosing the log file for a record is a comparison of two <code>long</code>s. The next day's log file is opened by a background thread shortly before midnight, so the logging threads only switch to it.
  *
  * @author Dmitriy Merkushov
  */
@@ -27,6 +43,36 @@ public class DailyRollingFileHandler extends StreamHandler {
 	private long unique = 0;
 	private FileOutputStream fos;
 	private File file;
+	private FileChannelOutput output;
+	private int bufferSize = FileChannelOutput.DEFAULT_BUFFER_SIZE;
+	private boolean alignedWrites = false;
+	private boolean doneHeader = false;
+	private FlushPolicy flushPolicy = FlushPolicy.EVERY_RECORD;
+	private ScheduledFuture<?> scheduledFlush;
+	private int pendingRecords = 0;
+	private final ZoneId zone = TimestampService.getDefault ().getZone ();
+	private long currentDayStart;
+	private long nextDayStart;
+	private LogFile nextLogFile;
+	private ScheduledFuture<?> scheduledPreparation;
+	private int outputGeneration = 0;
+	private boolean closed = false;
+	private StringBuilder recordBuffer = new StringBuilder (RECORD_BUFFER_CAPACITY);
+	private boolean recordBufferInUse = false;
+	/**
+	 * How long before midnight the next day's log file is opened, namely 1 minute
+	 */
+	public static final long PREPARE_AHEAD_MILLIS = 60 * 1000L;
+	/**
+	 * Log file name date formatter, thread-safe equivalent of {@link DailyRollingFileHandler#getDateFormat()}
+	 */
+	private static final DateTimeFormatter FILENAME_DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE;
+
+	/**
+	 * Initial capacity of the reusable record buffer. A buffer grown larger than {@link #MAX_RECORD_BUFFER_CAPACITY} by a huge record is replaced
+	 */
+	private static final int RECORD_BUFFER_CAPACITY = 512;
+	private static final int MAX_RECORD_BUFFER_CAPACITY = 64 * 1024;
 	/**
 	 * Default log filename pattern, namely "log_%d_%u"
 	 */
@@ -41,7 +87,7 @@ public class DailyRollingFileHandler extends StreamHandler {
 	}
 
 	/**
-	 * Get the date format used by the handler
+	 * Get the date format used by the handler. The log file names are formatted with an equivalent thread-safe formatter
 	 * @return 
 	 */
 	public static SimpleDateFormat getDateFormat () {
@@ -66,7 +112,7 @@ public class DailyRollingFileHandler extends StreamHandler {
 
 	/**
 	 * Get the {@link java.io.FileOutputStream} instance for this handler where the last record has been logged (or, if none has been logged by this handler, where the first must be)
-	 * @return 
+	 * @return null in the {@link DailyRollingFileHandler#setOutputOptions(int, boolean) aligned writes mode}
 	 */
 	public FileOutputStream getFos () {
 		return fos;
@@ -89,9 +135,7 @@ public class DailyRollingFileHandler extends StreamHandler {
 	 * @see DailyRollingFileHandler#DEFAULT_LOG_FILENAME_PATTERN
 	 */
 	public DailyRollingFileHandler () throws IOException {
-		super ();
-		this.pattern = DEFAULT_LOG_FILENAME_PATTERN;
-		this.previousFilename = generateFilename (new java.util.Date ());
+		this (DEFAULT_LOG_FILENAME_PATTERN);
 	}
 
 	/**
@@ -127,10 +171,12 @@ public class DailyRollingFileHandler extends StreamHandler {
 		}
 
 		this.pattern = pattern;
-		this.previousFilename = generateFilename (new java.util.Date ());
-		file = new File (previousFilename);
-		fos = new FileOutputStream (file, true);
-		super.setOutputStream (fos);
+
+		long now = TimestampService.currentTimeMillis ();
+		LocalDate today = Instant.ofEpochMilli (now).atZone (zone).toLocalDate ();
+		useLogFile (openLogFile (today, unique, null, getCharset (), bufferSize, alignedWrites));
+		setDay (today);
+		schedulePreparation ();
 //		firstLogRecord ();
 	}
 
@@ -140,48 +186,461 @@ public class DailyRollingFileHandler extends StreamHandler {
 			return;
 		}
 
-		String filename = generateFilename (new java.util.Date (record.getMillis ()));
+		// Change the log file. Late records of the previous day go to the current file, so that records racing at midnight do not make the handler switch back and forth
+		long millis = record.getMillis ();
+		if (millis >= nextDayStart) {
+			switchDay (millis);
+		}
+
+		if (output == null) {
+			return;
+		}
+
+		Formatter formatter = getFormatter ();
+		CharSequence msg;
+		try {
+			msg = formatRecord (formatter, record);
+		} catch (Exception ex) {
+			reportError (null, ex, ErrorManager.FORMAT_FAILURE);
+			return;
+		}
+
+		try {
+			if (!doneHeader) {
+				output.write (formatter.getHead (this));
+				doneHeader = true;
+			}
+			output.write (msg);
+		} catch (IOException ex) {
+			reportError (null, ex, ErrorManager.WRITE_FAILURE);
+		}
+
+		pendingRecords++;
+		if (flushPolicy.isFlushNeeded (record, pendingRecords, output.getPendingBytes ())) {
+			flush ();
+		}
+	}
+
+	/**
+	 * Format a record. An {@link AppendingFormatter} formats it to the reusable record buffer of the handler, so no String is created per record. A record published while another one is formatted, e.g. by <code>toString ()</code> of a parameter, is formatted to a new buffer
+	 * @param formatter
+	 * @param record
+	 * @return
+	 */
+	private CharSequence formatRecord (Formatter formatter, LogRecord record) {
+		if (!(formatter instanceof AppendingFormatter)) {
+			return formatter.format (record);
+		}
+		if (recordBufferInUse) {
+			return ((AppendingFormatter) formatter).formatTo (record, new StringBuilder (RECORD_BUFFER_CAPACITY));
+		}
+
+		if (recordBuffer.capacity () > MAX_RECORD_BUFFER_CAPACITY) {
+			recordBuffer = new StringBuilder (RECORD_BUFFER_CAPACITY);
+		}
+		recordBuffer.setLength (0);
+		recordBufferInUse = true;
+		try {
+			return ((AppendingFormatter) formatter).formatTo (record, recordBuffer);
+		} finally {
+			recordBufferInUse = false;
+		}
+	}
+
+	/**
+	 * Check if the record would be logged by this handler. Unlike StreamHandler, does not depend on a StreamHandler writer
+	 * @param record
+	 * @return
+	 */
+	@Override
+	public boolean isLoggable (LogRecord record) {
+		if (record == null) {
+			return false;
+		}
+
+		int levelValue = getLevel ().intValue ();
+		if (record.getLevel ().intValue () < levelValue || levelValue == Level.OFF.intValue ()) {
+			return false;
+		}
 
-		// Change the log file
-		if (!previousFilename.equals (filename)) {
-			file = new File (filename);
+		Filter filter = getFilter ();
+		return filter == null || filter.isLoggable (record);
+	}
+
+	@Override
+	public synchronized void flush () {
+		if (output != null) {
 			try {
-				fos = new FileOutputStream (file, true);
+				output.flush ();
 			} catch (IOException ex) {
-				super.reportError (null, ex, ErrorManager.GENERIC_FAILURE);
+				reportError (null, ex, ErrorManager.FLUSH_FAILURE);
 			}
+		}
+
+		pendingRecords = 0;
+	}
+
+	/**
+	 * Close the handler. Waits for the background thread to finish closing the previous log files
+	 * @throws SecurityException
+	 */
+	@Override
+	public void close () throws SecurityException {
+		synchronized (this) {
+			closed = true;
+			if (scheduledFlush != null) {
+				scheduledFlush.cancel (false);
+				scheduledFlush = null;
+			}
+			if (scheduledPreparation != null) {
+				scheduledPreparation.cancel (false);
+				scheduledPreparation = null;
+			}
+			discardNextLogFile ();
+		}
+
+		// Not holding the lock: the background thread may need it to finish
+		HandlerWorker.awaitPending ();
+
+		synchronized (this) {
+			closeOutput ();
+		}
+	}
+
+	/**
+	 * Switch to the log file of the day of a record. If the file could not be opened, the handler keeps writing to the current one until the next switch
+	 * @param millis the record time
+	 */
+	private void switchDay (long millis) {
+		LocalDate day = Instant.ofEpochMilli (millis).atZone (zone).toLocalDate ();
+
+		LogFile logFile = nextLogFile;
+		nextLogFile = null;
+		outputGeneration++;
+		if (logFile != null && !logFile.day.equals (day)) {
+			discardLogFile (logFile);
+			logFile = null;
+		}
+
+		if (logFile == null) {
+			// Not prepared in time, or a record of another day
 			try {
-				Thread.sleep (50);
-			} catch (InterruptedException ex) {
-				super.reportError (null, ex, ErrorManager.GENERIC_FAILURE);
+				logFile = openLogFile (day, unique, previousFilename, getCharset (), bufferSize, alignedWrites);
+			} catch (IOException ex) {
+				reportError ("Could not open the log file of " + day + ", still writing to " + previousFilename, ex, ErrorManager.OPEN_FAILURE);
 			}
-			previousFilename = filename;
-			super.setOutputStream (fos);
 		}
 
-		super.publish (record);
+		if (logFile != null) {
+			retireOutput ();
+			useLogFile (logFile);
+			resetFormatter ();
+		}
+		setDay (day);
+		schedulePreparation ();
+	}
 
-		super.flush ();
+	/**
+	 * Make the formatter forget the records of the previous log file
+	 * @see AppendingFormatter#reset()
+	 */
+	private void resetFormatter () {
+		Formatter formatter = getFormatter ();
+		if (formatter instanceof AppendingFormatter) {
+			((AppendingFormatter) formatter).reset ();
+		}
 	}
 
-	private synchronized String generateFilename (java.util.Date date) {
-		String dateStr = dateFormat.format (date);
+	private void setDay (LocalDate day) {
+		currentDayStart = day.atStartOfDay (zone).toInstant ().toEpochMilli ();
+		nextDayStart = day.plusDays (1).atStartOfDay (zone).toInstant ().toEpochMilli ();
+	}
 
-		String prePattern = pattern.replaceAll ("%d", dateStr);
+	private void useLogFile (LogFile logFile) {
+		file = logFile.file;
+		previousFilename = logFile.filename;
+		unique = logFile.unique;
+		fos = logFile.fos;
+		output = logFile.output;
+		doneHeader = false;
+		pendingRecords = 0;
+	}
 
-		String filename = prePattern.replaceAll ("%u", String.valueOf (unique));
+	/**
+	 * Open the log file of a day
+	 * @param day
+	 * @param startUnique the unique number to start the search of a free file name from
+	 * @param currentFilename the name of the log file in use, to be reused as is. May be null
+	 * @param charset
+	 * @param bufferSize
+	 * @param alignedWrites
+	 * @return
+	 * @throws IOException
+	 */
+	private LogFile openLogFile (LocalDate day, long startUnique, String currentFilename, Charset charset, int bufferSize, boolean alignedWrites) throws IOException {
+		String prePattern = substitute (pattern, "%d", FILENAME_DATE_FORMATTER.format (day));
+
+		long fileUnique = startUnique;
+		String filename = substitute (prePattern, "%u", String.valueOf (fileUnique));
 
 		// Moving to a new date. Maybe we should find a new unique number
-		if (!filename.equals (previousFilename)) {
-			File logFile = new File (filename);
-			while (logFile.exists ()) {
-				unique++;
-				filename = prePattern.replaceAll ("%u", String.valueOf (unique));
-				logFile = new File (filename);
+		if (!filename.equals (currentFilename)) {
+			while (new File (filename).exists ()) {
+				fileUnique++;
+				filename = substitute (prePattern, "%u", String.valueOf (fileUnique));
+			}
+		}
+
+		LogFile logFile = new LogFile ();
+		logFile.day = day;
+		logFile.filename = filename;
+		logFile.unique = fileUnique;
+		logFile.file = new File (filename);
+		logFile.created = !logFile.file.exists ();
+		if (alignedWrites) {
+			logFile.output = FileChannelOutput.open (logFile.file, true, charset, bufferSize, true);
+		} else {
+			logFile.fos = new FileOutputStream (logFile.file, true);
+			logFile.output = new FileChannelOutput (logFile.fos.getChannel (), charset, bufferSize);
+		}
+		return logFile;
+	}
+
+	/**
+	 * Schedule opening the next day's log file on the background thread
+	 */
+	private void schedulePreparation () {
+		if (scheduledPreparation != null) {
+			scheduledPreparation.cancel (false);
+		}
+
+		long delay = Math.max (nextDayStart - PREPARE_AHEAD_MILLIS - TimestampService.currentTimeMillis (), 0L);
+		scheduledPreparation = HandlerWorker.getExecutor ().schedule (this::prepareNextLogFile, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Open the next day's log file. Runs on the background thread, holding the handler lock only to read and set the fields
+	 */
+	private void prepareNextLogFile () {
+		LocalDate day;
+		long startUnique;
+		String currentFilename;
+		Charset charset;
+		int fileBufferSize;
+		boolean fileAlignedWrites;
+		int generation;
+		synchronized (this) {
+			if (closed || nextLogFile != null) {
+				return;
 			}
+			day = Instant.ofEpochMilli (nextDayStart).atZone (zone).toLocalDate ();
+			startUnique = unique;
+			currentFilename = previousFilename;
+			charset = getCharset ();
+			fileBufferSize = bufferSize;
+			fileAlignedWrites = alignedWrites;
+			generation = outputGeneration;
+		}
+
+		LogFile logFile;
+		try {
+			logFile = openLogFile (day, startUnique, currentFilename, charset, fileBufferSize, fileAlignedWrites);
+		} catch (IOException ex) {
+			reportError ("Could not open the next log file in advance", ex, ErrorManager.OPEN_FAILURE);
+			return;
+		}
+
+		synchronized (this) {
+			if (!closed && nextLogFile == null && generation == outputGeneration) {
+				nextLogFile = logFile;
+				return;
+			}
+		}
+		discardLogFile (logFile);
+	}
+
+	private void discardNextLogFile () {
+		outputGeneration++;
+		if (nextLogFile != null) {
+			discardLogFile (nextLogFile);
+			nextLogFile = null;
+		}
+	}
+
+	/**
+	 * Close a log file opened in advance and not used. Deletes it if it has been created for nothing
+	 * @param logFile
+	 */
+	private void discardLogFile (LogFile logFile) {
+		try {
+			logFile.output.close ();
+		} catch (IOException ex) {
+			reportError (null, ex, ErrorManager.CLOSE_FAILURE);
+		}
+		if (logFile.created && logFile.file.length () == 0) {
+			logFile.file.delete ();
+		}
+	}
+
+	private Charset getCharset () {
+		String encoding = getEncoding ();
+		return (encoding != null ? Charset.forName (encoding) : Charset.defaultCharset ());
+	}
+
+	/**
+	 * Replace all the occurences of a placeholder in a pattern, without regular expressions
+	 * @param pattern
+	 * @param placeholder
+	 * @param value
+	 * @return
+	 */
+	private static String substitute (String pattern, String placeholder, String value) {
+		StringBuilder sb = new StringBuilder (pattern.length () + value.length ());
+		int from = 0;
+		int index;
+		while ((index = pattern.indexOf (placeholder, from)) >= 0) {
+			sb.append (pattern, from, index).append (value);
+			from = index + placeholder.length ();
 		}
+		return sb.append (pattern, from, pattern.length ()).toString ();
+	}
 
-		return filename;
+	/**
+	 * Write the formatter tail, flush and close the current log file
+	 */
+	private void closeOutput () {
+		if (output == null) {
+			return;
+		}
+
+		try {
+			Formatter formatter = getFormatter ();
+			if (doneHeader && formatter != null) {
+				output.write (formatter.getTail (this));
+			}
+			output.close ();
+		} catch (IOException ex) {
+			reportError (null, ex, ErrorManager.CLOSE_FAILURE);
+		}
+		output = null;
+		fos = null;
+		pendingRecords = 0;
+	}
+
+	/**
+	 * Write the formatter tail to the current log file, and leave closing it to the background thread
+	 */
+	private void retireOutput () {
+		if (output == null) {
+			return;
+		}
+
+		FileChannelOutput previousOutput = output;
+		try {
+			Formatter formatter = getFormatter ();
+			if (doneHeader && formatter != null) {
+				previousOutput.write (formatter.getTail (this));
+			}
+		} catch (IOException ex) {
+			reportError (null, ex, ErrorManager.WRITE_FAILURE);
+		}
+
+		HandlerWorker.getExecutor ().execute (() -> {
+			try {
+				previousOutput.close ();
+			} catch (IOException ex) {
+				reportError (null, ex, ErrorManager.CLOSE_FAILURE);
+			}
+		});
+
+		output = null;
+		fos = null;
+		pendingRecords = 0;
+	}
+
+	private void reopenOutput () {
+		// The prepared log file has the previous settings
+		discardNextLogFile ();
+
+		// No output yet while the superclass constructor sets the encoding, and no day to prepare for
+		if (output == null) {
+			return;
+		}
+
+		if (!closed) {
+			schedulePreparation ();
+		}
+
+		// The header has been written to the file already
+		boolean headerWritten = doneHeader;
+		doneHeader = false;
+		closeOutput ();
+		try {
+			useLogFile (openLogFile (Instant.ofEpochMilli (currentDayStart).atZone (zone).toLocalDate (), unique, previousFilename, getCharset (), bufferSize, alignedWrites));
+			doneHeader = headerWritten;
+		} catch (IOException ex) {
+			reportError (null, ex, ErrorManager.OPEN_FAILURE);
+		}
+	}
+
+	/**
+	 * Set the character encoding of the log files. The current log file is reopened to apply it
+	 * @param encoding if null, the default platform encoding is used
+	 * @throws SecurityException
+	 * @throws UnsupportedEncodingException
+	 */
+	@Override
+	public synchronized void setEncoding (String encoding) throws SecurityException, UnsupportedEncodingException {
+		super.setEncoding (encoding);
+		reopenOutput ();
+	}
+
+	/**
+	 * Set the output options of the log files. The current log file is reopened to apply them
+	 * @param bufferSize the output buffer size in bytes
+	 * @param alignedWrites whether to write in aligned blocks, with direct I/O where supported
+	 * @see FileChannelOutput
+	 */
+	public synchronized void setOutputOptions (int bufferSize, boolean alignedWrites) {
+		if (bufferSize == this.bufferSize && alignedWrites == this.alignedWrites) {
+			return;
+		}
+
+		this.bufferSize = bufferSize;
+		this.alignedWrites = alignedWrites;
+		reopenOutput ();
+	}
+
+	public int getBufferSize () {
+		return bufferSize;
+	}
+
+	public boolean isAlignedWrites () {
+		return alignedWrites;
+	}
+
+	/**
+	 * Get the policy defining when the written records are flushed to the log file
+	 * @return
+	 */
+	public FlushPolicy getFlushPolicy () {
+		return flushPolicy;
+	}
+
+	/**
+	 * Set the policy defining when the written records are flushed to the log file.
+	 * @param flushPolicy if null, {@link FlushPolicy#EVERY_RECORD} is used
+	 */
+	public synchronized void setFlushPolicy (FlushPolicy flushPolicy) {
+		if (flushPolicy == null) {
+			flushPolicy = FlushPolicy.EVERY_RECORD;
+		}
+
+		if (scheduledFlush != null) {
+			scheduledFlush.cancel (false);
+		}
+		this.flushPolicy = flushPolicy;
+		scheduledFlush = flushPolicy.scheduleFlush (this);
 	}
 
 	private void firstLogRecord () {
@@ -190,4 +649,19 @@ public class DailyRollingFileHandler extends StreamHandler {
 		record.setMillis (date.getTime ());
 		publish (record);
 	}
+
+	/**
+	 * A log file with its output, opened for a day
+	 */
+	private static class LogFile {
+
+		LocalDate day;
+		String filename;
+		long unique;
+		File file;
+		boolean created;
+		FileOutputStream fos;
+		FileChannelOutput output;
+
+	}
 }
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.handler;
+
+import java.util.Objects;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import ru.dmerkushov.loghelper.LogContext;
+import ru.dmerkushov.loghelper.StructuredLogRecord;
+
+/**
+ * Handler that collapses bursts of identical records before passing them to a wrapped handler.
+ * <p>
+ * Records are identical if they have the same level, source class, source method and message (the template, before any parameter substitution). The first record of a burst is passed on at once. The identical records that follow it within the deduplication window are counted and dropped; when the window is over, a single {@link StructuredLogRecord} with the repeat count and the first and last repeat timestamps is passed on instead of them. The repeat record is attributed to the thread that created the last collapsed record.
+ * <p>
+ * While there are repeats to pass on, the handler worker thread sweeps the bursts every window, so a repeat record is passed on at most a window after its burst is over, even if no more records come.
+ * <p>
+ * Bursts are kept in a fixed-size, direct-mapped table: a new burst evicts the one occupying its slot, and the evicted burst's repeat record is passed on at once. So the memory used is bounded whatever the number of distinct records is.
+ *
+ * @author Dmitriy Merkushov
+ * @see ru.dmerkushov.loghelper.LoggerWrapper#setDeduplication(long, int)
+ */
+public class DeduplicatingHandler extends Handler {
+
+	/**
+	 * The default deduplication window, namely 1 second
+	 */
+	public static final long DEFAULT_WINDOW_MILLIS = 1000L;
+	/**
+	 * The default number of bursts tracked at once, namely 1024
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private final Handler target;
+	private final long windowMillis;
+	private final Burst[] bursts;
+	private final int mask;
+	private long lastSweepMillis = System.currentTimeMillis ();
+	private ScheduledFuture<?> scheduledSweep;
+
+	/**
+	 * Create a deduplicating handler with default window and capacity
+	 *
+	 * @param target the wrapped handler
+	 * @see DeduplicatingHandler#DEFAULT_WINDOW_MILLIS
+	 * @see DeduplicatingHandler#DEFAULT_CAPACITY
+	 */
+	public DeduplicatingHandler (Handler target) {
+		this (target, DEFAULT_WINDOW_MILLIS, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create a deduplicating handler
+	 *
+	 * @param target the wrapped handler
+	 * @param windowMillis length of the deduplication window in milliseconds, counted from the first record of a burst
+	 * @param capacity number of bursts tracked at once. Rounded up to a power of two
+	 * @throws NullPointerException if target is null
+	 * @throws IllegalArgumentException if the window or the capacity is less than 1
+	 */
+	public DeduplicatingHandler (Handler target, long windowMillis, int capacity) throws NullPointerException, IllegalArgumentException {
+		if (target == null) {
+			throw new NullPointerException ("target");
+		}
+		if (windowMillis < 1) {
+			throw new IllegalArgumentException ("Window is less than 1 ms: " + windowMillis);
+		}
+		if (capacity < 1) {
+			throw new IllegalArgumentException ("Capacity is less than 1: " + capacity);
+		}
+
+		int tableSize = Integer.highestOneBit (capacity);
+		if (tableSize < capacity) {
+			tableSize <<= 1;
+		}
+
+		this.target = target;
+		this.windowMillis = windowMillis;
+		this.bursts = new Burst[tableSize];
+		this.mask = tableSize - 1;
+	}
+
+	/**
+	 * Get the wrapped handler
+	 * @return
+	 */
+	public Handler getTarget () {
+		return target;
+	}
+
+	/**
+	 * Get the deduplication window length in milliseconds
+	 * @return
+	 */
+	public long getWindowMillis () {
+		return windowMillis;
+	}
+
+	@Override
+	public synchronized void publish (LogRecord record) {
+		if (!isLoggable (record)) {
+			return;
+		}
+
+		long recordMillis = record.getMillis ();
+		if (recordMillis - lastSweepMillis >= windowMillis) {
+			sweep (recordMillis);
+		}
+
+		Level level = record.getLevel ();
+		String sourceClassName = record.getSourceClassName ();
+		String sourceMethodName = record.getSourceMethodName ();
+		String message = record.getMessage ();
+
+		int index = index (level, sourceClassName, sourceMethodName, message);
+		Burst burst = bursts[index];
+
+		if (burst != null && burst.matches (level, sourceClassName, sourceMethodName, message)) {
+			if (recordMillis - burst.firstMillis < windowMillis) {
+				burst.repeat (record);
+				if (scheduledSweep == null) {
+					scheduledSweep = HandlerWorker.getExecutor ().scheduleWithFixedDelay (this::sweepPending, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+				}
+				return;
+			}
+			publishRepeats (burst);
+		} else if (burst != null) {
+			publishRepeats (burst);
+		}
+
+		bursts[index] = new Burst (level, sourceClassName, sourceMethodName, message, recordMillis);
+		target.publish (record);
+	}
+
+	/**
+	 * Pass on the repeat records of the bursts whose window is over, and forget these bursts
+	 * @param nowMillis
+	 */
+	private void sweep (long nowMillis) {
+		for (int i = 0; i < bursts.length; i++) {
+			Burst burst = bursts[i];
+			if (burst != null && nowMillis - burst.firstMillis >= windowMillis) {
+				publishRepeats (burst);
+				bursts[i] = null;
+			}
+		}
+		lastSweepMillis = nowMillis;
+	}
+
+	/**
+	 * Sweep the bursts on the handler worker thread. When no burst has repeats to pass on anymore, the periodic sweep is cancelled
+	 */
+	private synchronized void sweepPending () {
+		sweep (System.currentTimeMillis ());
+
+		for (Burst burst : bursts) {
+			if (burst != null && burst.repeatCount > 0) {
+				return;
+			}
+		}
+		cancelSweep ();
+	}
+
+	private void cancelSweep () {
+		if (scheduledSweep != null) {
+			scheduledSweep.cancel (false);
+			scheduledSweep = null;
+		}
+	}
+
+	private void publishRepeats (Burst burst) {
+		if (burst.repeatCount < 1) {
+			return;
+		}
+
+		LogRecord lastRecord = burst.lastRecord;
+		StructuredLogRecord repeatRecord = new StructuredLogRecord (lastRecord.getLevel (), lastRecord.getMessage ());
+		repeatRecord.setInstant (lastRecord.getInstant ());
+		repeatRecord.setThreadName (burst.lastThreadName);
+		repeatRecord.setLoggerName (lastRecord.getLoggerName ());
+		repeatRecord.setSourceClassName (lastRecord.getSourceClassName ());
+		repeatRecord.setSourceMethodName (lastRecord.getSourceMethodName ());
+		repeatRecord.setParameters (lastRecord.getParameters ());
+		repeatRecord.setThrown (lastRecord.getThrown ());
+		repeatRecord.setResourceBundle (lastRecord.getResourceBundle ());
+		repeatRecord.setResourceBundleName (lastRecord.getResourceBundleName ());
+		// A plain record has captured no context, and the thread passing the repeats on is not the one that logged them
+		repeatRecord.setContext (lastRecord instanceof StructuredLogRecord ? ((StructuredLogRecord) lastRecord).getContext () : LogContext.Snapshot.EMPTY);
+		repeatRecord.setRepeats (burst.repeatCount, burst.firstRepeatMillis, burst.lastRepeatMillis);
+
+		burst.repeatCount = 0;
+		burst.lastRecord = null;
+		burst.lastThreadName = null;
+
+		target.publish (repeatRecord);
+	}
+
+	private int index (Level level, String sourceClassName, String sourceMethodName, String message) {
+		int hash = ((level.intValue () * 31 + Objects.hashCode (sourceClassName)) * 31 + Objects.hashCode (sourceMethodName)) * 31 + Objects.hashCode (message);
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+
+	/**
+	 * Pass on the repeat records of all the tracked bursts, and flush the wrapped handler
+	 */
+	@Override
+	public synchronized void flush () {
+		for (int i = 0; i < bursts.length; i++) {
+			Burst burst = bursts[i];
+			if (burst != null) {
+				publishRepeats (burst);
+				bursts[i] = null;
+			}
+		}
+		cancelSweep ();
+
+		target.flush ();
+	}
+
+	@Override
+	public void close () throws SecurityException {
+		flush ();
+		target.close ();
+	}
+
+	/**
+	 * Set the level of both this handler and the wrapped one
+	 * @param newLevel
+	 * @throws SecurityException
+	 */
+	@Override
+	public synchronized void setLevel (Level newLevel) throws SecurityException {
+		super.setLevel (newLevel);
+		target.setLevel (newLevel);
+	}
+
+	/**
+	 * Get the formatter of the wrapped handler
+	 * @return
+	 */
+	@Override
+	public Formatter getFormatter () {
+		return target.getFormatter ();
+	}
+
+	/**
+	 * Set the formatter of the wrapped handler
+	 * @param newFormatter
+	 * @throws SecurityException
+	 */
+	@Override
+	public synchronized void setFormatter (Formatter newFormatter) throws SecurityException {
+		target.setFormatter (newFormatter);
+	}
+
+	/**
+	 * A burst of identical records
+	 */
+	private static final class Burst {
+
+		final Level level;
+		final String sourceClassName;
+		final String sourceMethodName;
+		final String message;
+		final long firstMillis;
+		long repeatCount;
+		long firstRepeatMillis;
+		long lastRepeatMillis;
+		LogRecord lastRecord;
+		String lastThreadName;
+
+		Burst (Level level, String sourceClassName, String sourceMethodName, String message, long firstMillis) {
+			this.level = level;
+			this.sourceClassName = sourceClassName;
+			this.sourceMethodName = sourceMethodName;
+			this.message = message;
+			this.firstMillis = firstMillis;
+		}
+
+		boolean matches (Level level, String sourceClassName, String sourceMethodName, String message) {
+			return this.level.equals (level) && Objects.equals (this.message, message) && Objects.equals (this.sourceMethodName, sourceMethodName) && Objects.equals (this.sourceClassName, sourceClassName);
+		}
+
+		void repeat (LogRecord record) {
+			if (repeatCount == 0) {
+				firstRepeatMillis = record.getMillis ();
+			}
+			repeatCount++;
+			lastRepeatMillis = record.getMillis ();
+			lastRecord = record;
+			lastThreadName = (record instanceof StructuredLogRecord ? ((StructuredLogRecord) record).getThreadName () : Thread.currentThread ().getName ());
+		}
+
+	}
+
+}
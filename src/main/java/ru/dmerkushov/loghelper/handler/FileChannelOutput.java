@@ -0,0 +1,345 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.handler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import ru.dmerkushov.loghelper.LogHelperDebug;
+
+/**
+ * Output engine of the file handlers: encodes characters with a CharsetEncoder straight into reusable direct byte buffers, and writes the buffers to a FileChannel with one gathering write when all of them are full, or when flushed. No byte arrays are created per record.
+ * <p>
+ * In the aligned mode, the file is opened with <code>O_DIRECT</code> where the platform supports it, and the output is written in whole blocks of {@link FileChannelOutput#ALIGNMENT} bytes from block-aligned file positions. A partial last block is padded with zeros for the write, the file is truncated back to its real length, and the block is written again with the next flush.
+ * <p>
+ * Instances are not thread-safe: the handlers using them synchronize the access.
+ *
+ * @author Dmitriy Merkushov
+ */
+public class FileChannelOutput implements LogFileOutput {
+
+	/**
+	 * The default total size of the buffers, namely 64KiB
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+	/**
+	 * The block size of the aligned mode, namely 4KiB
+	 */
+	public static final int ALIGNMENT = 4096;
+
+	private static final int BUFFER_COUNT = 4;
+	private static final OpenOption DIRECT = findDirectOpenOption ();
+
+	private final File file;
+	private final FileChannel channel;
+	private final CharsetEncoder encoder;
+	private final ByteBuffer[] buffers;
+	private final boolean aligned;
+	private int currentBuffer = 0;
+	private long position;
+	private int carriedBytes = 0;
+
+	/**
+	 * Open a file for output
+	 * @param file
+	 * @param append if <code>true</code>, the output is appended to the existing file contents. Otherwise, the file is truncated
+	 * @param charset if null, the default charset is used
+	 * @param bufferSize total size of the buffers. Rounded up to the alignment block size in the aligned mode
+	 * @param aligned whether to use the aligned mode
+	 * @return
+	 * @throws IOException if could not open the file
+	 */
+	public static FileChannelOutput open (File file, boolean append, Charset charset, int bufferSize, boolean aligned) throws IOException {
+		Set<OpenOption> options = new HashSet<> ();
+		options.add (StandardOpenOption.CREATE);
+		options.add (StandardOpenOption.WRITE);
+		if (!append) {
+			options.add (StandardOpenOption.TRUNCATE_EXISTING);
+		}
+
+		FileChannel channel = null;
+		if (aligned) {
+			// Positional writes are needed here, so no APPEND
+			options.add (StandardOpenOption.READ);
+			if (DIRECT != null) {
+				options.add (DIRECT);
+				try {
+					channel = FileChannel.open (file.toPath (), options);
+				} catch (IOException | UnsupportedOperationException ex) {
+					LogHelperDebug.printError ("Could not open " + file.getAbsolutePath () + " for direct I/O, writing aligned blocks through the page cache", ex, false);
+					options.remove (DIRECT);
+				}
+			}
+		} else if (append) {
+			options.add (StandardOpenOption.APPEND);
+		}
+
+		if (channel == null) {
+			channel = FileChannel.open (file.toPath (), options);
+		}
+
+		return new FileChannelOutput (file, channel, charset, bufferSize, aligned);
+	}
+
+	/**
+	 * Create an output for an already opened channel, not in the aligned mode. The output is written at the current channel position
+	 * @param channel
+	 * @param charset if null, the default charset is used
+	 * @param bufferSize total size of the buffers
+	 * @throws IOException if could not get the channel position
+	 */
+	public FileChannelOutput (FileChannel channel, Charset charset, int bufferSize) throws IOException {
+		this (null, channel, charset, bufferSize, false);
+	}
+
+	private FileChannelOutput (File file, FileChannel channel, Charset charset, int bufferSize, boolean aligned) throws IOException {
+		if (charset == null) {
+			charset = Charset.defaultCharset ();
+		}
+
+		this.file = file;
+		this.channel = channel;
+		this.aligned = aligned;
+		this.encoder = charset.newEncoder ()
+				.onMalformedInput (CodingErrorAction.REPLACE)
+				.onUnmappableCharacter (CodingErrorAction.REPLACE);
+
+		if (aligned) {
+			// One buffer of at least two blocks: gathering would break the block alignment
+			int alignedSize = Math.max ((bufferSize + ALIGNMENT - 1) / ALIGNMENT, 2) * ALIGNMENT;
+			ByteBuffer buffer = ByteBuffer.allocateDirect (alignedSize + ALIGNMENT).alignedSlice (ALIGNMENT);
+			buffers = new ByteBuffer[] {buffer};
+
+			long size = channel.size ();
+			position = size - size % ALIGNMENT;
+			carriedBytes = (int) (size - position);
+			if (carriedBytes > 0) {
+				// The partial last block is rewritten with the next flush
+				buffer.limit (ALIGNMENT);
+				// One whole-block read: direct I/O allows no reads at unaligned positions
+				channel.read (buffer, position);
+				buffer.limit (buffer.capacity ());
+				buffer.position (carriedBytes);
+			}
+		} else {
+			int eachSize = Math.max (bufferSize / BUFFER_COUNT, 256);
+			buffers = new ByteBuffer[BUFFER_COUNT];
+			for (int i = 0; i < BUFFER_COUNT; i++) {
+				buffers[i] = ByteBuffer.allocateDirect (eachSize);
+			}
+			position = channel.size ();
+		}
+	}
+
+	/**
+	 * Encode characters to the buffers, writing the buffers to the file if they get full
+	 * @param chars
+	 * @return the number of bytes the characters are encoded to
+	 * @throws IOException if could not write the buffers
+	 */
+	@Override
+	public int write (CharSequence chars) throws IOException {
+		CharBuffer in = CharBuffer.wrap (chars);
+		int encodedBytes = 0;
+
+		encoder.reset ();
+		boolean endOfInput = false;
+		while (true) {
+			ByteBuffer buffer = buffers[currentBuffer];
+			int before = buffer.position ();
+			CoderResult result = (endOfInput ? encoder.flush (buffer) : encoder.encode (in, buffer, true));
+			encodedBytes += buffer.position () - before;
+
+			if (result.isOverflow ()) {
+				nextBuffer ();
+			} else if (!endOfInput) {
+				endOfInput = true;
+			} else {
+				break;
+			}
+		}
+
+		return encodedBytes;
+	}
+
+	private void nextBuffer () throws IOException {
+		if (currentBuffer < buffers.length - 1) {
+			currentBuffer++;
+		} else {
+			writeBuffers ();
+		}
+	}
+
+	/**
+	 * Write the buffered bytes to the file
+	 * @throws IOException
+	 */
+	@Override
+	public void flush () throws IOException {
+		writeBuffers ();
+	}
+
+	private void writeBuffers () throws IOException {
+		if (aligned) {
+			writeAlignedBuffer ();
+			return;
+		}
+
+		long total = 0L;
+		for (int i = 0; i <= currentBuffer; i++) {
+			buffers[i].flip ();
+			total += buffers[i].remaining ();
+		}
+
+		long remaining = total;
+		while (remaining > 0) {
+			remaining -= channel.write (buffers, 0, currentBuffer + 1);
+		}
+
+		for (int i = 0; i <= currentBuffer; i++) {
+			buffers[i].clear ();
+		}
+		currentBuffer = 0;
+		position += total;
+	}
+
+	private void writeAlignedBuffer () throws IOException {
+		ByteBuffer buffer = buffers[0];
+		int dataEnd = buffer.position ();
+		if (dataEnd == carriedBytes) {
+			return;
+		}
+
+		int fullBlocksEnd = dataEnd - dataEnd % ALIGNMENT;
+		int writeEnd = (dataEnd + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+		for (int i = dataEnd; i < writeEnd; i++) {
+			buffer.put (i, (byte) 0);
+		}
+
+		buffer.position (0);
+		buffer.limit (writeEnd);
+		long writePosition = position;
+		while (buffer.hasRemaining ()) {
+			writePosition += channel.write (buffer, writePosition);
+		}
+		if (writeEnd > dataEnd) {
+			channel.truncate (position + dataEnd);
+		}
+
+		int tailBytes = dataEnd - fullBlocksEnd;
+		buffer.clear ();
+		if (tailBytes > 0 && fullBlocksEnd > 0) {
+			ByteBuffer tail = buffer.duplicate ();
+			tail.position (fullBlocksEnd);
+			tail.limit (dataEnd);
+			buffer.put (tail);
+		}
+		buffer.position (tailBytes);
+
+		carriedBytes = tailBytes;
+		position += fullBlocksEnd;
+	}
+
+	/**
+	 * Get the number of bytes written to this output but not yet to the file
+	 * @return
+	 */
+	@Override
+	public long getPendingBytes () {
+		return bufferedBytes () - carriedBytes;
+	}
+
+	/**
+	 * Get the file size, including the bytes not yet written to the file
+	 * @return
+	 */
+	@Override
+	public long size () {
+		return position + bufferedBytes ();
+	}
+
+	private long bufferedBytes () {
+		long bytes = 0L;
+		for (int i = 0; i <= currentBuffer; i++) {
+			bytes += buffers[i].position ();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Check if the output is in the aligned mode
+	 * @return
+	 */
+	public boolean isAligned () {
+		return aligned;
+	}
+
+	/**
+	 * Get the file this output writes to
+	 * @return null if the output has been created for an already opened channel
+	 */
+	@Override
+	public File getFile () {
+		return file;
+	}
+
+	/**
+	 * Get the channel this output writes to
+	 * @return
+	 */
+	public FileChannel getChannel () {
+		return channel;
+	}
+
+	/**
+	 * Flush the output and close the channel
+	 * @throws IOException
+	 */
+	@Override
+	public void close () throws IOException {
+		try {
+			flush ();
+		} finally {
+			channel.close ();
+		}
+	}
+
+	private static OpenOption findDirectOpenOption () {
+		OpenOption direct = null;
+		try {
+			Class<?> extendedOptionClass = Class.forName ("com.sun.nio.file.ExtendedOpenOption");
+			for (Object constant : extendedOptionClass.getEnumConstants ()) {
+				if ("DIRECT".equals (((Enum<?>) constant).name ())) {
+					direct = (OpenOption) constant;
+				}
+			}
+		} catch (ClassNotFoundException ex) {
+			// No direct I/O in this JRE
+		}
+		return direct;
+	}
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.handler;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Defines when a file handler flushes its output: after every N records, after every M bytes, every T milliseconds (by a background timer), and immediately after records at or above a level. The conditions combine: the output is flushed when any of them is met.
+ * <p>
+ * Flush policies are immutable and may be shared between handlers.
+ *
+ * @author Dmitriy Merkushov
+ */
+public class FlushPolicy {
+
+	/**
+	 * Flush after every record. This is the default for the rolling file handlers
+	 */
+	public static final FlushPolicy EVERY_RECORD = new FlushPolicy (1, 0L, 0L, null);
+
+	/**
+	 * Flush every second by the background timer, and immediately after records of level WARNING or above. Otherwise the output is written when its buffer fills. The default of the configurators for aligned writes, where every flush writes whole padded blocks
+	 */
+	public static final FlushPolicy BATCHED = new FlushPolicy (0, 0L, 1000L, Level.WARNING);
+
+	private final int everyRecords;
+	private final long everyBytes;
+	private final long intervalMillis;
+	private final Level immediateLevel;
+	private final int immediateLevelValue;
+
+	/**
+	 * Create a flush policy
+	 * @param everyRecords flush when this number of records is pending. 0 or less to ignore the record count
+	 * @param everyBytes flush when this number of bytes is pending. 0 or less to ignore the byte count
+	 * @param intervalMillis flush by a background timer with this interval. 0 or less for no timer
+	 * @param immediateLevel flush immediately after records of this level or above. If null, the record level is ignored
+	 */
+	public FlushPolicy (int everyRecords, long everyBytes, long intervalMillis, Level immediateLevel) {
+		this.everyRecords = Math.max (everyRecords, 0);
+		this.everyBytes = Math.max (everyBytes, 0L);
+		this.intervalMillis = Math.max (intervalMillis, 0L);
+		this.immediateLevel = immediateLevel;
+		this.immediateLevelValue = (immediateLevel != null ? immediateLevel.intValue () : Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Get the number of pending records that causes a flush
+	 * @return 0 if the record count is ignored
+	 */
+	public int getEveryRecords () {
+		return everyRecords;
+	}
+
+	/**
+	 * Get the number of pending bytes that causes a flush
+	 * @return 0 if the byte count is ignored
+	 */
+	public long getEveryBytes () {
+		return everyBytes;
+	}
+
+	/**
+	 * Get the background flush interval
+	 * @return 0 if there is no background flush
+	 */
+	public long getIntervalMillis () {
+		return intervalMillis;
+	}
+
+	/**
+	 * Get the level starting from which records are flushed immediately
+	 * @return null if the record level is ignored
+	 */
+	public Level getImmediateLevel () {
+		return immediateLevel;
+	}
+
+	/**
+	 * Check if a handler should flush after writing a record
+	 * @param record the record just written
+	 * @param pendingRecords the number of records written since the last flush, including this one
+	 * @param pendingBytes the number of bytes written since the last flush, including this record
+	 * @return
+	 */
+	public boolean isFlushNeeded (LogRecord record, int pendingRecords, long pendingBytes) {
+		return (everyRecords > 0 && pendingRecords >= everyRecords)
+				|| (everyBytes > 0 && pendingBytes >= everyBytes)
+				|| record.getLevel ().intValue () >= immediateLevelValue;
+	}
+
+	/**
+	 * Start flushing a handler by the background timer, if the policy has a flush interval
+	 * @param handler
+	 * @return the scheduled flush, to be cancelled when the handler is closed or gets another policy. null if the policy has no flush interval
+	 */
+	public ScheduledFuture<?> scheduleFlush (Handler handler) {
+		if (intervalMillis <= 0) {
+			return null;
+		}
+
+		return HandlerWorker.getExecutor ().scheduleWithFixedDelay (handler::flush, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public String toString () {
+		return "FlushPolicy{" + "everyRecords=" + everyRecords + ", everyBytes=" + everyBytes + ", intervalMillis=" + intervalMillis + ", immediateLevel=" + immediateLevel + '}';
+	}
+
+}
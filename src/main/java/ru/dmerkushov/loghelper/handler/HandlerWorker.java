@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.handler;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+/**
+ * The background thread of the file handlers: timed flushes, preparing the next log files, closing the previous ones. Keeps the file system work out of the logging threads
+ *
+ * @author Dmitriy Merkushov
+ */
+final class HandlerWorker {
+
+	private static final String THREAD_NAME = "log-helper handler worker";
+
+	private static ScheduledExecutorService executor;
+	/**
+	 * The thread of the executor. Replaced if the executor replaces its thread
+	 */
+	private static volatile Thread workerThread;
+
+	private HandlerWorker () {
+	}
+
+	/**
+	 * Get the executor of the background thread. The thread is a daemon, created on the first call
+	 * @return
+	 */
+	static synchronized ScheduledExecutorService getExecutor () {
+		if (executor == null) {
+			ScheduledThreadPoolExecutor newExecutor = new ScheduledThreadPoolExecutor (1, (Runnable r) -> {
+				Thread thread = new Thread (r, THREAD_NAME);
+				thread.setDaemon (true);
+				workerThread = thread;
+				return thread;
+			});
+			newExecutor.setRemoveOnCancelPolicy (true);
+			executor = newExecutor;
+		}
+		return executor;
+	}
+
+	/**
+	 * Wait until the tasks submitted to the background thread so far are done. Returns at once if called by the background thread itself
+	 */
+	static void awaitPending () {
+		ScheduledExecutorService currentExecutor;
+		synchronized (HandlerWorker.class) {
+			currentExecutor = executor;
+		}
+		if (currentExecutor == null || Thread.currentThread () == workerThread) {
+			return;
+		}
+
+		try {
+			currentExecutor.submit (() -> {
+			}).get ();
+		} catch (InterruptedException ex) {
+			Thread.currentThread ().interrupt ();
+		} catch (ExecutionException ex) {
+			// A no-op task does not fail
+		}
+	}
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.handler;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Output of a log file, used by the file handlers
+ *
+ * @author Dmitriy Merkushov
+ * @see FileChannelOutput
+ * @see MappedSegmentOutput
+ */
+public interface LogFileOutput extends Closeable {
+
+	/**
+	 * Encode characters to the output
+	 * @param chars
+	 * @return the number of bytes the characters are encoded to, or -1 if the output is bounded and the characters do not fit. Nothing is written in the latter case
+	 * @throws IOException
+	 */
+	int write (CharSequence chars) throws IOException;
+
+	/**
+	 * Write the buffered bytes to the file
+	 * @throws IOException
+	 */
+	void flush () throws IOException;
+
+	/**
+	 * Get the number of bytes written to this output but not yet to the file
+	 * @return
+	 */
+	long getPendingBytes ();
+
+	/**
+	 * Get the length of the log file contents, including the bytes not yet written to the file
+	 * @return
+	 */
+	long size ();
+
+	/**
+	 * Get the file this output writes to
+	 * @return null if not known
+	 */
+	File getFile ();
+
+}
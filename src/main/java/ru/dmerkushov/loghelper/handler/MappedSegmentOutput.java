@@ -0,0 +1,259 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.handler;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+import ru.dmerkushov.loghelper.LogHelperDebug;
+
+/**
+ * Output of a log file of a bounded size, written through a memory-mapped segment.
+ * <p>
+ * The file is preallocated to the segment size and mapped at once. Records are encoded straight into the mapping, at a bump pointer, so writing a record makes no system calls. When closed, the file is truncated to the real length of its contents.
+ * <p>
+ * If the process dies before the output is closed, the file keeps a zero-filled tail. {@link MappedSegmentOutput#trimZeroTail(java.io.File)} removes it, and is called for the file when it is opened. As the tail is told from the contents by the zero bytes, only the charsets that encode no character but U+0000 with a zero byte are supported: not UTF-16 or UTF-32, see {@link MappedSegmentOutput#isCharsetSupported(java.nio.charset.Charset)}.
+ * <p>
+ * Instances are not thread-safe: the handlers using them synchronize the access.
+ *
+ * @author Dmitriy Merkushov
+ */
+public class MappedSegmentOutput implements LogFileOutput {
+
+	private static final int TRIM_BLOCK_SIZE = 8192;
+
+	private final File file;
+	private final FileChannel channel;
+	private final CharsetEncoder encoder;
+	private MappedByteBuffer segment;
+
+	/**
+	 * Open a file for output through a mapped segment. The existing file contents are kept, and written after
+	 * @param file
+	 * @param charset if null, the default charset is used
+	 * @param segmentSize the file size bound. If the existing file contents are longer, the segment is made as long as the contents
+	 * @throws IOException if could not open or map the file
+	 * @throws IllegalArgumentException if the charset is not supported
+	 */
+	public MappedSegmentOutput (File file, Charset charset, long segmentSize) throws IOException, IllegalArgumentException {
+		if (charset == null) {
+			charset = Charset.defaultCharset ();
+		}
+		if (!isCharsetSupported (charset)) {
+			throw new IllegalArgumentException ("Charset not supported by mapped segments: " + charset.name ());
+		}
+
+		this.file = file;
+		this.encoder = charset.newEncoder ()
+				.onMalformedInput (CodingErrorAction.REPLACE)
+				.onUnmappableCharacter (CodingErrorAction.REPLACE);
+
+		trimZeroTail (file);
+
+		channel = FileChannel.open (file.toPath (), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		long contentLength = channel.size ();
+		segment = map (Math.max (segmentSize, contentLength));
+		segment.position ((int) contentLength);
+	}
+
+	private MappedByteBuffer map (long size) throws IOException {
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException ("Mapped segment size is too large: " + size);
+		}
+
+		// Mapping beyond the end of the file extends the file
+		return channel.map (FileChannel.MapMode.READ_WRITE, 0L, size);
+	}
+
+	/**
+	 * Encode characters to the segment
+	 * @param chars
+	 * @return the number of bytes the characters are encoded to, or -1 if they do not fit in the rest of the segment
+	 * @throws IOException if could not extend the segment for the characters that do not fit even in an empty segment
+	 */
+	@Override
+	public int write (CharSequence chars) throws IOException {
+		int start = segment.position ();
+
+		while (true) {
+			CharBuffer in = CharBuffer.wrap (chars);
+			encoder.reset ();
+			CoderResult result = encoder.encode (in, segment, true);
+			if (!result.isOverflow ()) {
+				result = encoder.flush (segment);
+			}
+			if (!result.isOverflow ()) {
+				return segment.position () - start;
+			}
+
+			segment.position (start);
+			if (start > 0) {
+				return -1;
+			}
+
+			// A record longer than a whole segment: make the segment as long as the record
+			long neededSize = (long) Math.ceil (chars.length () * (double) encoder.maxBytesPerChar ()) + 16;
+			unmap (segment);
+			segment = map (neededSize);
+		}
+	}
+
+	/**
+	 * Does nothing: the records written to the segment are in the page cache already, same as after a file write
+	 */
+	@Override
+	public void flush () {
+	}
+
+	/**
+	 * Force the records written to the segment to the storage device
+	 */
+	public void force () {
+		segment.force ();
+	}
+
+	/**
+	 * Always 0: nothing is kept apart from the file
+	 * @return
+	 */
+	@Override
+	public long getPendingBytes () {
+		return 0L;
+	}
+
+	@Override
+	public long size () {
+		return segment.position ();
+	}
+
+	/**
+	 * Get the segment size, i.e. the preallocated file size
+	 * @return
+	 */
+	public long getSegmentSize () {
+		return segment.capacity ();
+	}
+
+	@Override
+	public File getFile () {
+		return file;
+	}
+
+	/**
+	 * Unmap the segment, truncate the file to the real length of its contents, and close it
+	 * @throws IOException
+	 */
+	@Override
+	public void close () throws IOException {
+		long contentLength = segment.position ();
+		try {
+			unmap (segment);
+			channel.truncate (contentLength);
+		} finally {
+			channel.close ();
+		}
+	}
+
+	/**
+	 * Check if a charset may be written through a mapped segment: it must encode no character but U+0000 with a zero byte, or the zero-filled tail of a segment could not be told from the contents. Charsets encoding ASCII characters with zero bytes, like UTF-16 and UTF-32, are not supported
+	 * @param charset if null, the default charset is checked
+	 * @return
+	 */
+	public static boolean isCharsetSupported (Charset charset) {
+		if (charset == null) {
+			charset = Charset.defaultCharset ();
+		}
+		if (!charset.canEncode ()) {
+			return false;
+		}
+
+		for (byte b : "A\n".getBytes (charset)) {
+			if (b == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Truncate a file to the end of its last non-zero byte. Only fit for the files written in a {@link MappedSegmentOutput#isCharsetSupported(java.nio.charset.Charset) supported charset} Used to recover the files left by an output that has not been closed
+	 * @param file
+	 * @return the number of bytes removed
+	 * @throws IOException
+	 */
+	public static long trimZeroTail (File file) throws IOException {
+		if (!file.exists ()) {
+			return 0L;
+		}
+
+		try (FileChannel trimChannel = FileChannel.open (file.toPath (), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long size = trimChannel.size ();
+			long contentLength = size;
+			ByteBuffer block = ByteBuffer.allocate (TRIM_BLOCK_SIZE);
+
+			scan:
+			while (contentLength > 0) {
+				long blockStart = Math.max (contentLength - TRIM_BLOCK_SIZE, 0L);
+				block.clear ();
+				block.limit ((int) (contentLength - blockStart));
+				while (block.hasRemaining ()) {
+					if (trimChannel.read (block, blockStart + block.position ()) < 0) {
+						break;
+					}
+				}
+				for (int i = block.position () - 1; i >= 0; i--) {
+					if (block.get (i) != 0) {
+						contentLength = blockStart + i + 1;
+						break scan;
+					}
+				}
+				contentLength = blockStart;
+			}
+
+			if (contentLength < size) {
+				trimChannel.truncate (contentLength);
+			}
+			return size - contentLength;
+		}
+	}
+
+	/**
+	 * Release a mapping without waiting for the garbage collector, where the JRE allows it
+	 * @param buffer
+	 */
+	private static void unmap (MappedByteBuffer buffer) {
+		try {
+			Class<?> unsafeClass = Class.forName ("sun.misc.Unsafe");
+			Field theUnsafeField = unsafeClass.getDeclaredField ("theUnsafe");
+			theUnsafeField.setAccessible (true);
+			Method invokeCleaner = unsafeClass.getMethod ("invokeCleaner", ByteBuffer.class);
+			invokeCleaner.invoke (theUnsafeField.get (null), buffer);
+		} catch (ReflectiveOperationException | RuntimeException ex) {
+			LogHelperDebug.printError ("Could not unmap a log file segment, it will be unmapped by the garbage collector", ex, false);
+		}
+	}
+
+}
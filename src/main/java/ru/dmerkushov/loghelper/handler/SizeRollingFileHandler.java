@@ -5,15 +5,19 @@
 package ru.dmerkushov.loghelper.handler;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+import java.util.concurrent.ScheduledFuture;
 import java.util.logging.ErrorManager;
 import java.util.logging.Formatter;
 import java.util.logging.Handler;
 import java.util.logging.LogRecord;
+import ru.dmerkushov.loghelper.formatter.AppendingFormatter;
 import ru.dmerkushov.loghelper.formatter.DefaultFormatter;
+import ru.dmerkushov.loghelper.formatter.TimestampService;
 
 /**
  *
@@ -36,11 +40,36 @@ public class SizeRollingFileHandler extends Handler {
 	private String pattern;
 	private File logFile;
 	private long logSizeBound;
-	private java.util.Date creationDate = new java.util.Date ();
-	private static SimpleDateFormat renameDateFormat = new SimpleDateFormat ("yyyy-MM-dd_HH-mm-ss.SZ");
-	private static SimpleDateFormat patternDateFormat = new SimpleDateFormat ("yyyy-MM-dd");
-	private long unique = 0;
-	private FileOutputStream fos;
+	private long creationMillis = TimestampService.currentTimeMillis ();
+	private String creationDateText;
+	private File activeFile;
+	private LogFileOutput output;
+	private Segment currentSegment;
+	private Segment nextSegment;
+	private int segmentGeneration = 0;
+	private long segmentNumber = 0L;
+	private boolean closed = false;
+	private int bufferSize = FileChannelOutput.DEFAULT_BUFFER_SIZE;
+	private boolean alignedWrites = false;
+	private boolean mappedSegments = false;
+	private Charset charset;
+	private boolean utf8;
+	private float maxBytesPerChar;
+	private long logFileSize = 0L;
+	private boolean logFileHasRecords = false;
+	private long rolloverMargin = 0L;
+	private FlushPolicy flushPolicy = FlushPolicy.EVERY_RECORD;
+	private ScheduledFuture<?> scheduledFlush;
+	private int pendingRecords = 0;
+	private long pendingBytes = 0L;
+	private StringBuilder recordBuffer = new StringBuilder (RECORD_BUFFER_CAPACITY);
+	private boolean recordBufferInUse = false;
+
+	/**
+	 * Initial capacity of the reusable record buffer. A buffer grown larger than {@link #MAX_RECORD_BUFFER_CAPACITY} by a huge record is replaced
+	 */
+	private static final int RECORD_BUFFER_CAPACITY = 512;
+	private static final int MAX_RECORD_BUFFER_CAPACITY = 64 * 1024;
 
 	/**
 	 * Create a size rolling file handler.
@@ -75,8 +104,13 @@ public class SizeRollingFileHandler extends Handler {
 
 		this.pattern = pattern;
 		setLogSizeBound (maxLogSize);
+		creationDateText = TimestampService.getDefault ().formatDate (creationMillis);
 
 		createNewLogFile ();
+		activeFile = logFile;
+		currentSegment = new Segment (logFile);
+		recoverNextSegments ();
+		schedulePreparation ();
 	}
 
 	/**
@@ -125,23 +159,64 @@ public class SizeRollingFileHandler extends Handler {
 			return;
 		}
 
-		String recordMsg = getFormatter ().format (record);
-		long msgLength = recordMsg.length ();
+		CharSequence recordMsg = formatRecord (getFormatter (), record);
 
-		long currentLogFileLength = logFile.length ();
+		// The file size is counted in memory, never asked from the file system
+		if (logFileHasRecords && logFileSize + encodedLength (recordMsg) > logSizeBound - rolloverMargin) {
+			rollOver ();
+			recordMsg = reformatAfterRollOver (record, recordMsg);
+		}
 
-		if (currentLogFileLength + msgLength > logSizeBound) {
-			renameOldLogFile ();
-			createNewLogFile ();
+		if (output != null) {
+			try {
+				// A mapped segment also tells itself when a record does not fit
+				int written = output.write (recordMsg);
+				if (written < 0) {
+					rollOver ();
+					recordMsg = reformatAfterRollOver (record, recordMsg);
+					written = output.write (recordMsg);
+				}
+				if (written < 0) {
+					// Could not roll over, or the record does not fit even an empty segment
+					reportError ("Could not write a record of a log file, the mapped segment is full: " + logFile.getAbsolutePath (), null, ErrorManager.WRITE_FAILURE);
+				} else {
+					logFileSize += written;
+					logFileHasRecords = true;
+					pendingBytes += written;
+				}
+			} catch (IOException ex) {
+				reportError ("Could not write a record of a log file: " + logFile.getAbsolutePath (), ex, ErrorManager.WRITE_FAILURE);
+			}
 		}
 
-		try {
-			fos.write (recordMsg.getBytes ());
-		} catch (IOException ex) {
-			reportError ("Could not write a record of a log file: " + logFile.getAbsolutePath (), ex, ErrorManager.WRITE_FAILURE);
+		pendingRecords++;
+		if (flushPolicy.isFlushNeeded (record, pendingRecords, pendingBytes)) {
+			flush ();
+		}
+	}
+
+	/**
+	 * Get the policy defining when the written records are flushed to the log file
+	 * @return
+	 */
+	public FlushPolicy getFlushPolicy () {
+		return flushPolicy;
+	}
+
+	/**
+	 * Set the policy defining when the written records are flushed to the log file
+	 * @param flushPolicy if null, {@link FlushPolicy#EVERY_RECORD} is used
+	 */
+	public synchronized void setFlushPolicy (FlushPolicy flushPolicy) {
+		if (flushPolicy == null) {
+			flushPolicy = FlushPolicy.EVERY_RECORD;
 		}
 
-		flush ();
+		if (scheduledFlush != null) {
+			scheduledFlush.cancel (false);
+		}
+		this.flushPolicy = flushPolicy;
+		scheduledFlush = flushPolicy.scheduleFlush (this);
 	}
 
 	/**
@@ -164,17 +239,246 @@ public class SizeRollingFileHandler extends Handler {
 		return formatter;
 	}
 
-	private void renameOldLogFile () {
-		String dateText = renameDateFormat.format (new java.util.Date ());
+	/**
+	 * Format a record again if it has a throwable: it has been formatted before the rollover reset the formatter, so its trace may refer to the previous log file
+	 * @param record
+	 * @param recordMsg the record formatted before the rollover
+	 * @return
+	 */
+	private CharSequence reformatAfterRollOver (LogRecord record, CharSequence recordMsg) {
+		if (record.getThrown () == null) {
+			return recordMsg;
+		}
+		return formatRecord (getFormatter (), record);
+	}
+
+	/**
+	 * Switch to the next segment. The segment is normally prepared by the background thread, so only the output reference is swapped here. The previous segment is closed and renamed on the background thread
+	 */
+	private void rollOver () {
+		Segment next = nextSegment;
+		nextSegment = null;
+		segmentGeneration++;
+
+		if (next == null) {
+			// Not prepared in time
+			try {
+				next = openSegment (charset, bufferSize, alignedWrites, mappedSegments, logSizeBound);
+			} catch (IOException ex) {
+				reportError ("Could not open the next log file, going on with the current one: " + logFile.getAbsolutePath (), ex, ErrorManager.OPEN_FAILURE);
+				return;
+			}
+		}
+
+		Segment previous = currentSegment;
+		LogFileOutput previousOutput = output;
+
+		currentSegment = next;
+		output = next.output;
+		logFile = next.file;
+		logFileSize = next.size;
+		logFileHasRecords = false;
+		pendingRecords = 0;
+		pendingBytes = 0L;
+
+		// No record of the new segment may refer to the previous one
+		Formatter formatter = getFormatter ();
+		if (formatter instanceof AppendingFormatter) {
+			((AppendingFormatter) formatter).reset ();
+		}
+
+		final Segment current = next;
+		HandlerWorker.getExecutor ().execute (() -> retireSegment (previous, previousOutput, current));
+		schedulePreparation ();
+	}
+
+	/**
+	 * Close and rename the previous segment, then give the current one the active log file name. Runs on the background thread
+	 * @param previous
+	 * @param previousOutput
+	 * @param current
+	 */
+	private void retireSegment (Segment previous, LogFileOutput previousOutput, Segment current) {
+		if (previousOutput != null) {
+			try {
+				previousOutput.close ();
+			} catch (IOException ex) {
+				reportError ("IOException when closing log file: " + previous.file.getAbsolutePath (), ex, ErrorManager.CLOSE_FAILURE);
+			}
+		}
+
+		renameOldLogFile (previous.file);
+
+		if (current.file.renameTo (activeFile)) {
+			current.file = activeFile;
+			synchronized (this) {
+				if (currentSegment == current) {
+					logFile = activeFile;
+				}
+			}
+		} else {
+			reportError ("Error renaming log file: " + current.file.getAbsolutePath () + " to: " + activeFile.getAbsolutePath (), null, ErrorManager.GENERIC_FAILURE);
+		}
+	}
+
+	private void renameOldLogFile (File oldLogFile) {
+		StringBuilder renamePattern = new StringBuilder (pattern).append ("_renamed_");
+		TimestampService.getDefault ().appendFileTimestamp (TimestampService.currentTimeMillis (), renamePattern);
 
-		File renameTo = new File (generateFilename (pattern + "_renamed_" + dateText));
+		File renameTo = new File (generateFilename (renamePattern.toString ()));
 
-		boolean renameResult = logFile.renameTo (renameTo);
+		boolean renameResult = oldLogFile.renameTo (renameTo);
 		if (!renameResult) {
-			reportError ("Error renaming old log file: " + logFile.getAbsolutePath () + " to: " + renameTo.getAbsolutePath (), null, ErrorManager.GENERIC_FAILURE);
+			reportError ("Error renaming old log file: " + oldLogFile.getAbsolutePath () + " to: " + renameTo.getAbsolutePath (), null, ErrorManager.GENERIC_FAILURE);
+		}
+	}
+
+	/**
+	 * Open a new segment under a temporary name, and write the formatter head to it
+	 * @return
+	 * @throws IOException
+	 */
+	private Segment openSegment (Charset segmentCharset, int segmentBufferSize, boolean segmentAlignedWrites, boolean segmentMapped, long segmentSize) throws IOException {
+		long number;
+		synchronized (this) {
+			number = ++segmentNumber;
+		}
+
+		Segment segment = new Segment (new File (activeFile.getPath () + ".next" + number));
+		segment.file.delete ();
+		segment.output = createOutput (segment.file, false, segmentCharset, segmentBufferSize, segmentAlignedWrites, segmentMapped, segmentSize);
+		segment.size = segment.output.size ();
+
+		Formatter formatter = getFormatter ();
+		if (formatter != null) {
+			segment.size += segment.output.write (formatter.getHead (this));
+		}
+		return segment;
+	}
+
+	/**
+	 * Schedule preparing the next segment on the background thread
+	 */
+	private void schedulePreparation () {
+		HandlerWorker.getExecutor ().execute (this::prepareNextSegment);
+	}
+
+	/**
+	 * Prepare the next segment. Runs on the background thread, holding the handler lock only to read and set the fields
+	 */
+	private void prepareNextSegment () {
+		Charset segmentCharset;
+		int segmentBufferSize;
+		boolean segmentAlignedWrites;
+		boolean segmentMapped;
+		long segmentSize;
+		int generation;
+		synchronized (this) {
+			if (closed || nextSegment != null) {
+				return;
+			}
+			segmentCharset = charset;
+			segmentBufferSize = bufferSize;
+			segmentAlignedWrites = alignedWrites;
+			segmentMapped = mappedSegments;
+			segmentSize = logSizeBound;
+			generation = segmentGeneration;
+		}
+
+		Segment segment;
+		try {
+			segment = openSegment (segmentCharset, segmentBufferSize, segmentAlignedWrites, segmentMapped, segmentSize);
+		} catch (IOException ex) {
+			reportError ("Could not prepare the next log file", ex, ErrorManager.OPEN_FAILURE);
+			return;
+		}
+
+		synchronized (this) {
+			if (!closed && nextSegment == null && generation == segmentGeneration) {
+				nextSegment = segment;
+				return;
+			}
+		}
+		discardSegment (segment);
+	}
+
+	/**
+	 * Discard the prepared segment, as the handler settings have changed, and prepare another one
+	 */
+	private void discardNextSegment () {
+		segmentGeneration++;
+		if (nextSegment != null) {
+			discardSegment (nextSegment);
+			nextSegment = null;
+		}
+		if (!closed && activeFile != null) {
+			schedulePreparation ();
+		}
+	}
+
+	private void discardSegment (Segment segment) {
+		try {
+			segment.output.close ();
+		} catch (IOException ex) {
+			reportError (null, ex, ErrorManager.CLOSE_FAILURE);
+		}
+		segment.file.delete ();
+	}
+
+	/**
+	 * Handle the segments left under temporary names by a process that has not closed the handler: empty ones are deleted, others renamed as old log files. The segments of all the log files of the pattern are handled: the active file of the crashed process is still in place, so this handler has got another name
+	 */
+	private void recoverNextSegments () {
+		File directory = activeFile.getAbsoluteFile ().getParentFile ();
+		if (directory == null) {
+			return;
+		}
+
+		Pattern namePattern = logFileNamePattern ("\\.next\\d+");
+		File[] files = directory.listFiles ((File dir, String fileName) -> namePattern.matcher (fileName).matches ());
+		if (files == null) {
+			return;
+		}
+
+		boolean trimmable = MappedSegmentOutput.isCharsetSupported (charset);
+		for (File file : files) {
+			if (trimmable) {
+				try {
+					MappedSegmentOutput.trimZeroTail (file);
+				} catch (IOException ex) {
+					reportError ("Could not trim the zero-filled tail of log file: " + file.getAbsolutePath (), ex, ErrorManager.GENERIC_FAILURE);
+				}
+			}
+			if (file.length () == 0) {
+				file.delete ();
+			} else {
+				renameOldLogFile (file);
+			}
 		}
 	}
 
+	/**
+	 * Compile the pattern of the names of the log files: the name part of the filename pattern, with <code>%d</code> matching a date and <code>%u</code> a number, followed by a suffix
+	 * @param suffixRegex
+	 * @return
+	 */
+	private Pattern logFileNamePattern (String suffixRegex) {
+		StringBuilder regex = new StringBuilder ();
+		String name = new File (pattern).getName ();
+		int literalStart = 0;
+		for (int i = 0; i < name.length () - 1; i++) {
+			if (name.charAt (i) == '%' && (name.charAt (i + 1) == 'd' || name.charAt (i + 1) == 'u')) {
+				regex.append (Pattern.quote (name.substring (literalStart, i)));
+				regex.append (name.charAt (i + 1) == 'd' ? "\\d{4}-\\d{2}-\\d{2}" : "\\d+");
+				literalStart = i + 2;
+				i++;
+			}
+		}
+		regex.append (Pattern.quote (name.substring (literalStart)));
+		regex.append (suffixRegex);
+		return Pattern.compile (regex.toString ());
+	}
+
 	private void createNewLogFile () {
 		logFile = new File (generateFilename (pattern));
 
@@ -188,17 +492,13 @@ public class SizeRollingFileHandler extends Handler {
 			reportError ("Could not create log file (no exception thrown): " + logFile.getAbsolutePath (), null, ErrorManager.OPEN_FAILURE);
 		}
 
-		try {
-			fos = new FileOutputStream (logFile);
-		} catch (FileNotFoundException ex) {
-			reportError ("FileNotFoundException when creating FileOutputStream for log file: " + logFile.getAbsolutePath (), ex, ErrorManager.OPEN_FAILURE);
-		}
+		openOutput (false);
 
 		Formatter formatter = getFormatter ();
-		if (formatter != null) {
+		if (formatter != null && output != null) {
 			String head = formatter.getHead (this);
 			try {
-				fos.write (head.getBytes ());
+				logFileSize += output.write (head);
 			} catch (IOException ex) {
 				reportError ("IOException when writing head for log file: " + logFile.getAbsolutePath (), ex, ErrorManager.GENERIC_FAILURE);
 			}
@@ -206,13 +506,233 @@ public class SizeRollingFileHandler extends Handler {
 
 	}
 
-	private synchronized String generateFilename (String pattern) {
+	private void openOutput (boolean append) {
+		String encoding = getEncoding ();
+		charset = (encoding != null ? Charset.forName (encoding) : Charset.defaultCharset ());
+		utf8 = StandardCharsets.UTF_8.equals (charset);
+		maxBytesPerChar = (charset.canEncode () ? charset.newEncoder ().maxBytesPerChar () : 4.0f);
 
-		String generatedFilename = pattern.replaceAll ("%u", String.valueOf (unique)).replaceAll ("%d", patternDateFormat.format (creationDate));
+		logFileSize = 0L;
+		logFileHasRecords = false;
+		try {
+			output = createOutput (logFile, append, charset, bufferSize, alignedWrites, mappedSegments, logSizeBound);
+			// The only time the file size is taken from the file
+			logFileSize = output.size ();
+			logFileHasRecords = append && logFileSize > 0;
+		} catch (IOException ex) {
+			output = null;
+			reportError ("IOException when opening log file: " + logFile.getAbsolutePath (), ex, ErrorManager.OPEN_FAILURE);
+		}
+	}
+
+	private static LogFileOutput createOutput (File file, boolean append, Charset charset, int bufferSize, boolean alignedWrites, boolean mappedSegments, long logSizeBound) throws IOException {
+		if (mappedSegments && MappedSegmentOutput.isCharsetSupported (charset)) {
+			return new MappedSegmentOutput (file, charset, logSizeBound);
+		}
+		return FileChannelOutput.open (file, append, charset, bufferSize, alignedWrites);
+	}
+
+	private void closeOutput () {
+		if (output != null) {
+			try {
+				output.close ();
+			} catch (IOException ex) {
+				reportError ("IOException when closing log file: " + logFile.getAbsolutePath (), ex, ErrorManager.CLOSE_FAILURE);
+			}
+			output = null;
+		}
+		pendingRecords = 0;
+		pendingBytes = 0L;
+	}
+
+	/**
+	 * Format a record. An {@link AppendingFormatter} formats it to the reusable record buffer of the handler, so no String is created per record. A record published while another one is formatted, e.g. by <code>toString ()</code> of a parameter, is formatted to a new buffer
+	 * @param formatter
+	 * @param record
+	 * @return
+	 */
+	private CharSequence formatRecord (Formatter formatter, LogRecord record) {
+		if (!(formatter instanceof AppendingFormatter)) {
+			return formatter.format (record);
+		}
+		if (recordBufferInUse) {
+			return ((AppendingFormatter) formatter).formatTo (record, new StringBuilder (RECORD_BUFFER_CAPACITY));
+		}
+
+		if (recordBuffer.capacity () > MAX_RECORD_BUFFER_CAPACITY) {
+			recordBuffer = new StringBuilder (RECORD_BUFFER_CAPACITY);
+		}
+		recordBuffer.setLength (0);
+		recordBufferInUse = true;
+		try {
+			return ((AppendingFormatter) formatter).formatTo (record, recordBuffer);
+		} finally {
+			recordBufferInUse = false;
+		}
+	}
+
+	/**
+	 * Get the number of bytes a record takes in the log file. Exact for UTF-8 and single-byte charsets, an upper bound for others
+	 * @param recordMsg
+	 * @return
+	 */
+	private long encodedLength (CharSequence recordMsg) {
+		int length = recordMsg.length ();
+		if (!utf8) {
+			return (long) Math.ceil (length * (double) maxBytesPerChar);
+		}
+
+		long bytes = length;
+		for (int i = 0; i < length; i++) {
+			char c = recordMsg.charAt (i);
+			if (c >= 0x80) {
+				if (c < 0x800) {
+					bytes += 1;
+				} else if (Character.isHighSurrogate (c) && i + 1 < length && Character.isLowSurrogate (recordMsg.charAt (i + 1))) {
+					bytes += 2;
+					i++;
+				} else {
+					bytes += 2;
+				}
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Set the character encoding of the log files. The current log file is reopened to apply it
+	 * @param encoding if null, the default platform encoding is used
+	 * @throws SecurityException
+	 * @throws UnsupportedEncodingException
+	 */
+	@Override
+	public synchronized void setEncoding (String encoding) throws SecurityException, UnsupportedEncodingException {
+		super.setEncoding (encoding);
+
+		if (output != null) {
+			closeOutput ();
+			openOutput (true);
+		}
+		discardNextSegment ();
+		checkMappedCharset ();
+	}
+
+	/**
+	 * Report if the mapped segments are on but the charset does not support them, so the log files are written through a file channel
+	 * @return <code>true</code> if the mapped segments are on and the charset supports them
+	 */
+	private boolean checkMappedCharset () {
+		if (!mappedSegments) {
+			return false;
+		}
+		if (!MappedSegmentOutput.isCharsetSupported (charset)) {
+			reportError ("Mapped segments do not support charset " + (charset != null ? charset.name () : Charset.defaultCharset ().name ()) + ", writing the log files through a file channel", null, ErrorManager.GENERIC_FAILURE);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Set the output options of the log files. The current log file is reopened to apply them
+	 * @param bufferSize the output buffer size in bytes
+	 * @param alignedWrites whether to write in aligned blocks, with direct I/O where supported
+	 * @see FileChannelOutput
+	 */
+	public synchronized void setOutputOptions (int bufferSize, boolean alignedWrites) {
+		if (bufferSize == this.bufferSize && alignedWrites == this.alignedWrites) {
+			return;
+		}
+
+		this.bufferSize = bufferSize;
+		this.alignedWrites = alignedWrites;
+
+		if (output != null) {
+			closeOutput ();
+			openOutput (true);
+		}
+		discardNextSegment ();
+	}
+
+	public int getBufferSize () {
+		return bufferSize;
+	}
+
+	public boolean isAlignedWrites () {
+		return alignedWrites;
+	}
+
+	/**
+	 * Set whether the log files are written through memory-mapped segments. Each log file is then preallocated to the log size bound and mapped, so writing a record makes no system calls; the file is truncated to its real length when it rolls. The current log file is reopened to apply the mode.
+	 * <p>
+	 * When the mode is switched on, the zero-filled tails left in the log files of this pattern by a crashed process are trimmed.
+	 * <p>
+	 * Charsets that encode characters with zero bytes, like UTF-16 and UTF-32, are not supported: with them, the mode is reported as an error and the log files are written through a file channel.
+	 * @param mappedSegments
+	 * @see MappedSegmentOutput
+	 */
+	public synchronized void setMappedSegments (boolean mappedSegments) {
+		if (mappedSegments == this.mappedSegments) {
+			return;
+		}
+
+		this.mappedSegments = mappedSegments;
+
+		if (checkMappedCharset ()) {
+			recoverMappedSegments ();
+		}
+
+		if (output != null) {
+			closeOutput ();
+			openOutput (true);
+		}
+		discardNextSegment ();
+	}
+
+	public boolean isMappedSegments () {
+		return mappedSegments;
+	}
+
+	/**
+	 * Trim the zero-filled tails of the log files of this pattern, left by mapped segments not closed
+	 */
+	private void recoverMappedSegments () {
+		File directory = new File (pattern).getAbsoluteFile ().getParentFile ();
+		if (directory == null) {
+			return;
+		}
+
+		Pattern namePattern = logFileNamePattern ("(_renamed_.+|\\.next\\d+)?");
+
+		File[] files = directory.listFiles ((File dir, String fileName) -> namePattern.matcher (fileName).matches ());
+		if (files == null) {
+			return;
+		}
+
+		for (File file : files) {
+			if (file.equals (logFile) || (nextSegment != null && file.equals (nextSegment.file))) {
+				continue;
+			}
+			try {
+				MappedSegmentOutput.trimZeroTail (file);
+			} catch (IOException ex) {
+				reportError ("Could not trim the zero-filled tail of log file: " + file.getAbsolutePath (), ex, ErrorManager.GENERIC_FAILURE);
+			}
+		}
+	}
+
+	/**
+	 * Generate a file name for a pattern that is not taken by an existing file. Does not use the handler lock, as it is called by the background thread
+	 * @param pattern
+	 * @return
+	 */
+	private String generateFilename (String pattern) {
+		long unique = 0;
+
+		String generatedFilename = pattern.replaceAll ("%u", String.valueOf (unique)).replaceAll ("%d", creationDateText);
 		File generatedFile = new File (generatedFilename);
 		while (generatedFile.exists ()) {
 			unique++;
-			generatedFilename = pattern.replaceAll ("%u", String.valueOf (unique)).replaceAll ("%d", patternDateFormat.format (creationDate));;
+			generatedFilename = pattern.replaceAll ("%u", String.valueOf (unique)).replaceAll ("%d", creationDateText);
 			generatedFile = new File (generatedFilename);
 		}
 
@@ -220,36 +740,98 @@ public class SizeRollingFileHandler extends Handler {
 	}
 
 	@Override
-	public void flush () {
-		try {
-			fos.flush ();
-		} catch (IOException ex) {
-			reportError (null, ex, ErrorManager.FLUSH_FAILURE);
+	public synchronized void flush () {
+		if (output != null) {
+			try {
+				output.flush ();
+			} catch (IOException ex) {
+				reportError (null, ex, ErrorManager.FLUSH_FAILURE);
+			}
 		}
+		pendingRecords = 0;
+		pendingBytes = 0L;
 	}
 
+	/**
+	 * Close the handler. Waits for the background thread to finish closing and renaming the previous log files
+	 * @throws SecurityException
+	 */
 	@Override
 	public void close () throws SecurityException {
-		try {
-			fos.close ();
-		} catch (IOException ex) {
-			reportError (null, ex, ErrorManager.CLOSE_FAILURE);
+		synchronized (this) {
+			closed = true;
+			if (scheduledFlush != null) {
+				scheduledFlush.cancel (false);
+				scheduledFlush = null;
+			}
+			discardNextSegment ();
+		}
+
+		// Not holding the lock: the background thread may need it to finish
+		HandlerWorker.awaitPending ();
+
+		synchronized (this) {
+			closeOutput ();
 		}
 	}
 
+	/**
+	 * Get the size of the current log file, as counted by the handler
+	 * @return
+	 */
+	public synchronized long getLogFileSize () {
+		return logFileSize;
+	}
+
+	/**
+	 * Get the pre-rollover margin
+	 * @return
+	 * @see SizeRollingFileHandler#setRolloverMargin(long)
+	 */
+	public long getRolloverMargin () {
+		return rolloverMargin;
+	}
+
+	/**
+	 * Set the pre-rollover margin: the log file is rolled over when a record would make it longer than the log size bound minus the margin. Records are never split across log files, so the margin leaves room for the bytes the handler has not counted, like the formatter tail
+	 * @param rolloverMargin in bytes. Negative values are treated as 0
+	 */
+	public synchronized void setRolloverMargin (long rolloverMargin) {
+		this.rolloverMargin = Math.max (rolloverMargin, 0L);
+	}
+
 	public long getLogSizeBound () {
 		return logSizeBound;
 	}
 
-	public void setLogSizeBound (long logSizeBound) {
+	public synchronized void setLogSizeBound (long logSizeBound) {
 		if (logSizeBound < MINIMUM_LOG_SIZE_BOUND) {
 			logSizeBound = MINIMUM_LOG_SIZE_BOUND;
 		}
 
 		this.logSizeBound = logSizeBound;
+		if (mappedSegments) {
+			// The prepared segment has the previous size
+			discardNextSegment ();
+		}
 	}
 
 	public String getPattern () {
 		return pattern;
 	}
+
+	/**
+	 * A log file with its output
+	 */
+	private static class Segment {
+
+		volatile File file;
+		LogFileOutput output;
+		long size;
+
+		Segment (File file) {
+			this.file = file;
+		}
+
+	}
 }
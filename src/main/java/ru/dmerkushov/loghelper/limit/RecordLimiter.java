@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.limit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the records logged from a single call site. Counts the suppressed records, so that the next permitted record may tell how many similar records have been suppressed before it.
+ * <p>
+ * Implementations must be lock-free: the check is made on every loggable record of the call site.
+ *
+ * @author Dmitriy Merkushov
+ * @see ru.dmerkushov.loghelper.LoggerWrapper#setRecordLimiterFactory(java.util.function.Supplier)
+ */
+public abstract class RecordLimiter {
+
+	/**
+	 * Value returned by {@link RecordLimiter#acquire()} when the record is suppressed
+	 */
+	public static final long SUPPRESSED = -1L;
+
+	private final AtomicLong suppressedCount = new AtomicLong ();
+
+	/**
+	 * Check if a record may be logged now
+	 * @return the number of records suppressed since the previous permitted one, or {@link RecordLimiter#SUPPRESSED} if this record must be suppressed
+	 */
+	public long acquire () {
+		long result;
+		if (permit ()) {
+			result = suppressedCount.getAndSet (0L);
+		} else {
+			suppressedCount.incrementAndGet ();
+			result = SUPPRESSED;
+		}
+		return result;
+	}
+
+	/**
+	 * Get the number of records suppressed since the last permitted one
+	 * @return
+	 */
+	public long getSuppressedCount () {
+		return suppressedCount.get ();
+	}
+
+	/**
+	 * Decide if a record may be logged now
+	 * @return
+	 */
+	protected abstract boolean permit ();
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.limit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sampling limiter: permits one record of every N, starting with the first one
+ *
+ * @author Dmitriy Merkushov
+ */
+public class SamplingRecordLimiter extends RecordLimiter {
+
+	private final long sampleRate;
+	private final AtomicLong recordCount = new AtomicLong ();
+
+	/**
+	 * Create a sampling limiter
+	 * @param sampleRate N: one record of every N is permitted
+	 * @throws IllegalArgumentException if the sample rate is less than 1
+	 */
+	public SamplingRecordLimiter (long sampleRate) throws IllegalArgumentException {
+		if (sampleRate < 1) {
+			throw new IllegalArgumentException ("Sample rate is less than 1: " + sampleRate);
+		}
+
+		this.sampleRate = sampleRate;
+	}
+
+	@Override
+	protected boolean permit () {
+		return recordCount.getAndIncrement () % sampleRate == 0;
+	}
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.limit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket rate limiter: permits a sustained rate of records per second, with bursts up to the bucket size.
+ * <p>
+ * The bucket is kept as a single theoretical arrival time (the generic cell rate algorithm), updated by compare-and-set, so the check takes no lock.
+ *
+ * @author Dmitriy Merkushov
+ */
+public class TokenBucketRecordLimiter extends RecordLimiter {
+
+	private final long intervalNanos;
+	private final long burstNanos;
+	private final AtomicLong theoreticalArrivalTime;
+
+	/**
+	 * Create a token bucket rate limiter
+	 * @param recordsPerSecond sustained rate
+	 * @param burst bucket size: number of records that may be logged at once after a quiet period
+	 * @throws IllegalArgumentException if the rate is not positive or the burst is less than 1
+	 */
+	public TokenBucketRecordLimiter (double recordsPerSecond, int burst) throws IllegalArgumentException {
+		if (!(recordsPerSecond > 0)) {
+			throw new IllegalArgumentException ("Records per second must be positive: " + recordsPerSecond);
+		}
+		if (burst < 1) {
+			throw new IllegalArgumentException ("Burst is less than 1: " + burst);
+		}
+
+		this.intervalNanos = Math.max (1L, (long) (1000000000L / recordsPerSecond));
+		this.burstNanos = intervalNanos * (burst - 1);
+		this.theoreticalArrivalTime = new AtomicLong (System.nanoTime ());
+	}
+
+	@Override
+	protected boolean permit () {
+		long now = System.nanoTime ();
+
+		while (true) {
+			long tat = theoreticalArrivalTime.get ();
+			long base = (tat - now > 0 ? tat : now);
+			if (base - now > burstNanos) {
+				return false;
+			}
+			if (theoreticalArrivalTime.compareAndSet (tat, base + intervalNanos)) {
+				return true;
+			}
+		}
+	}
+
+}
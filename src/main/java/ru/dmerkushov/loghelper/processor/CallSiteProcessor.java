@@ -0,0 +1,131 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashSet;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Annotation processor generating compile-time {@link ru.dmerkushov.loghelper.CallSite call site} constants for classes annotated with {@link LogCallSites}.
+ * <p>
+ * For an annotated class <code>Foo</code>, a class <code>Foo_CallSites</code> is generated in the same package, with a <code>public static final CallSite</code> field for every method name of <code>Foo</code>. The field is named after the method, constructors are named <code>_init</code>. Overloads share one field. For a nested class, the generated class is named after the binary name of the class, with <code>$</code> replaced by <code>_</code>: <code>Outer_Inner_CallSites</code> for <code>Outer.Inner</code>.
+ * <p>
+ * The call sites are method-level only: they carry no line number, and the source method name set to the records is <code>method()</code>, the same for all the calls within the method. Records that need the line of the call should be logged through the other logging methods, which resolve the caller at runtime.
+ * <p>
+ * The constants are meant to be passed to {@link ru.dmerkushov.loghelper.LoggerWrapper#log(ru.dmerkushov.loghelper.CallSite, java.util.logging.Level, java.lang.String) LoggerWrapper.log (CallSite, ...)}, so no stack walk is made for such calls. Code that is not processed keeps using the other logging methods, which resolve the caller at runtime.
+ * <p>
+ * The processor is not registered as a service, so it must be enabled explicitly, e.g. with <code>javac -processor ru.dmerkushov.loghelper.processor.CallSiteProcessor</code>.
+ *
+ * @author Dmitriy Merkushov
+ */
+@SupportedAnnotationTypes ("ru.dmerkushov.loghelper.processor.LogCallSites")
+public class CallSiteProcessor extends AbstractProcessor {
+
+	/**
+	 * Suffix of the generated class names
+	 */
+	public static final String GENERATED_CLASS_SUFFIX = "_CallSites";
+
+	@Override
+	public SourceVersion getSupportedSourceVersion () {
+		return SourceVersion.latestSupported ();
+	}
+
+	@Override
+	public boolean process (Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (Element element : roundEnv.getElementsAnnotatedWith (LogCallSites.class)) {
+			if (element.getKind ().isClass ()) {
+				generateCallSites ((TypeElement) element);
+			} else {
+				processingEnv.getMessager ().printMessage (Diagnostic.Kind.ERROR, "@LogCallSites may only be applied to classes and enums", element);
+			}
+		}
+
+		return true;
+	}
+
+	private void generateCallSites (TypeElement typeElement) {
+		String className = processingEnv.getElementUtils ().getBinaryName (typeElement).toString ();
+		PackageElement packageElement = processingEnv.getElementUtils ().getPackageOf (typeElement);
+		String packageName = packageElement.isUnnamed () ? "" : packageElement.getQualifiedName ().toString ();
+		String nestedName = (packageName.isEmpty () ? className : className.substring (packageName.length () + 1));
+		String generatedSimpleName = nestedName.replace ('$', '_') + GENERATED_CLASS_SUFFIX;
+		String generatedName = packageName.isEmpty () ? generatedSimpleName : packageName + "." + generatedSimpleName;
+
+		JavaFileObject sourceFile;
+		try {
+			sourceFile = processingEnv.getFiler ().createSourceFile (generatedName, typeElement);
+		} catch (IOException ex) {
+			processingEnv.getMessager ().printMessage (Diagnostic.Kind.ERROR, "Could not create " + generatedName + ": " + ex.getMessage (), typeElement);
+			return;
+		}
+
+		try (PrintWriter out = new PrintWriter (sourceFile.openWriter ())) {
+			if (!packageName.isEmpty ()) {
+				out.println ("package " + packageName + ";");
+				out.println ();
+			}
+			out.println ("import ru.dmerkushov.loghelper.CallSite;");
+			out.println ();
+			out.println ("/**");
+			out.println (" * Call sites of {@link " + typeElement.getQualifiedName () + "}, generated by " + CallSiteProcessor.class.getName ());
+			out.println (" */");
+			out.println ("public final class " + generatedSimpleName + " {");
+			out.println ();
+
+			HashSet<String> fieldNames = new HashSet<String> ();
+			for (Element enclosed : typeElement.getEnclosedElements ()) {
+				String methodName;
+				String fieldName;
+				if (enclosed.getKind () == ElementKind.METHOD) {
+					methodName = enclosed.getSimpleName ().toString ();
+					fieldName = methodName;
+				} else if (enclosed.getKind () == ElementKind.CONSTRUCTOR) {
+					methodName = "<init>";
+					fieldName = "_init";
+				} else {
+					continue;
+				}
+
+				// Overloads share the call site
+				if (fieldNames.add (fieldName)) {
+					out.println ("\tpublic static final CallSite " + fieldName + " = CallSite.forMethod (\"" + className + "\", \"" + methodName + "\");");
+				}
+			}
+
+			out.println ();
+			out.println ("\tprivate " + generatedSimpleName + " () {");
+			out.println ("\t}");
+			out.println ();
+			out.println ("}");
+		} catch (IOException ex) {
+			processingEnv.getMessager ().printMessage (Diagnostic.Kind.ERROR, "Could not write " + generatedName + ": " + ex.getMessage (), typeElement);
+		}
+	}
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Propagation of {@link LogContext} between threads
+ *
+ * @author Dmitriy Merkushov
+ */
+public class LogContextTest {
+
+	@After
+	public void tearDown () {
+		LogContext.clear ();
+	}
+
+	@Test
+	public void testNotInheritedByNewThread () throws InterruptedException {
+		LogContext.put ("request", "42");
+
+		AtomicReference<LogContext.Snapshot> childSnapshot = new AtomicReference<> ();
+		Thread child = new Thread (() -> childSnapshot.set (LogContext.getSnapshot ()));
+		child.start ();
+		child.join ();
+
+		assertTrue (childSnapshot.get ().isEmpty ());
+	}
+
+	@Test
+	public void testPoolWorkerKeepsNoContext () throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor ();
+		try {
+			// The worker is created while the first request is served
+			LogContext.put ("request", "first");
+			executor.submit (LogContext.wrap (() -> {
+			})).get ();
+			LogContext.clear ();
+
+			assertNull (executor.submit (() -> LogContext.get ("request")).get ());
+		} finally {
+			executor.shutdown ();
+		}
+	}
+
+	@Test
+	public void testWrapPassesContext () throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor ();
+		try {
+			LogContext.put ("request", "42");
+			Callable<String> task = () -> LogContext.get ("request");
+
+			assertEquals ("42", executor.submit (LogContext.wrap (task)).get ());
+			// The worker's own context is restored after the task
+			assertNull (executor.submit (task).get ());
+		} finally {
+			executor.shutdown ();
+		}
+	}
+
+	@Test
+	public void testSnapshotIsImmutable () {
+		LogContext.put ("request", "42");
+		LogContext.Snapshot snapshot = LogContext.getSnapshot ();
+		LogContext.put ("request", "43");
+		LogContext.put ("user", "alice");
+
+		assertEquals ("42", snapshot.get ("request"));
+		assertEquals (1, snapshot.size ());
+		assertEquals ("43", LogContext.get ("request"));
+	}
+
+}
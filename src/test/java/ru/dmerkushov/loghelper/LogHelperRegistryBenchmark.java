@@ -0,0 +1,139 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of {@link LogHelper#getLoggerWrapper(java.lang.String)} with 1, 2, 4 and up to 64 threads, in lookups per second. Hits look up LoggerWrappers registered before; misses look up new names, so every lookup creates and registers a LoggerWrapper. As misses create loggers, their number per round is fixed rather than their time. Not a unit test: run it by hand, with the arguments <code>[seconds per hit round] [misses per round]</code>
+ *
+ * @author Dmitriy Merkushov
+ */
+public class LogHelperRegistryBenchmark {
+
+	private static final int MAX_THREADS = 64;
+	private static final int HIT_NAMES = 1024;
+
+	private static final AtomicInteger missRound = new AtomicInteger ();
+	private static volatile Object sink;
+
+	public static void main (String[] args) throws InterruptedException {
+		long hitRoundMillis = (args.length > 0 ? Long.parseLong (args[0]) * 1000L : 2000L);
+		int missesPerRound = (args.length > 1 ? Integer.parseInt (args[1]) : 20000);
+
+		String[] hitNames = new String[HIT_NAMES];
+		for (int i = 0; i < HIT_NAMES; i++) {
+			hitNames[i] = LogHelperRegistryBenchmark.class.getName () + ".hit" + i;
+			LogHelper.getLoggerWrapper (hitNames[i]);
+		}
+
+		// Warm-up round, not reported
+		measureHits (hitNames, MAX_THREADS, hitRoundMillis);
+		measureMisses (MAX_THREADS, missesPerRound);
+
+		for (int threads = 1; threads <= MAX_THREADS; threads *= 2) {
+			double hitRate = measureHits (hitNames, threads, hitRoundMillis);
+			double missRate = measureMisses (threads, missesPerRound);
+			System.out.printf ("%2d threads: hits %.0f lookups/s, misses %.0f lookups/s%n", threads, hitRate, missRate);
+		}
+	}
+
+	/**
+	 * Look up registered names from several threads for a given time
+	 * @param hitNames
+	 * @param threads
+	 * @param roundMillis
+	 * @return lookups per second, all threads together
+	 * @throws InterruptedException
+	 */
+	private static double measureHits (String[] hitNames, int threads, long roundMillis) throws InterruptedException {
+		AtomicLong lookups = new AtomicLong ();
+		long roundNanos = roundMillis * 1000000L;
+		return run (threads, (int thread) -> {
+			long count = 0L;
+			int nameIndex = thread * 31;
+			long end = System.nanoTime () + roundNanos;
+			while (System.nanoTime () < end) {
+				for (int i = 0; i < 100; i++) {
+					sink = LogHelper.getLoggerWrapper (hitNames[nameIndex++ & (HIT_NAMES - 1)]);
+				}
+				count += 100;
+			}
+			lookups.addAndGet (count);
+		}, lookups);
+	}
+
+	/**
+	 * Look up new names from several threads, a given number in total
+	 * @param threads
+	 * @param misses
+	 * @return lookups per second, all threads together
+	 * @throws InterruptedException
+	 */
+	private static double measureMisses (int threads, int misses) throws InterruptedException {
+		AtomicLong lookups = new AtomicLong ();
+		String prefix = LogHelperRegistryBenchmark.class.getName () + ".miss" + missRound.incrementAndGet () + ".";
+		int missesPerThread = misses / threads;
+		return run (threads, (int thread) -> {
+			for (int i = 0; i < missesPerThread; i++) {
+				sink = LogHelper.getLoggerWrapper (prefix + thread + "." + i);
+			}
+			lookups.addAndGet (missesPerThread);
+		}, lookups);
+	}
+
+	/**
+	 * Start the threads at once and wait for them
+	 * @param threads
+	 * @param body
+	 * @param lookups counted by the body
+	 * @return lookups per second
+	 * @throws InterruptedException
+	 */
+	private static double run (int threads, ThreadBody body, AtomicLong lookups) throws InterruptedException {
+		CountDownLatch start = new CountDownLatch (1);
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final int thread = t;
+			workers[t] = new Thread (() -> {
+				try {
+					start.await ();
+				} catch (InterruptedException ex) {
+					return;
+				}
+				body.run (thread);
+			});
+			workers[t].start ();
+		}
+
+		long startNanos = System.nanoTime ();
+		start.countDown ();
+		for (Thread worker : workers) {
+			worker.join ();
+		}
+		long elapsedNanos = System.nanoTime () - startNanos;
+
+		return lookups.get () * 1e9 / elapsedNanos;
+	}
+
+	private interface ThreadBody {
+
+		void run (int thread);
+	}
+
+}
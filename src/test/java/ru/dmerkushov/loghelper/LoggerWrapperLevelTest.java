@@ -0,0 +1,108 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Level checks of {@link LoggerWrapper}
+ *
+ * @author Dmitriy Merkushov
+ */
+public class LoggerWrapperLevelTest {
+
+	private LoggerWrapper loggerWrapper;
+	private Logger logger;
+	private CollectingHandler handler;
+
+	@Before
+	public void setUp () {
+		loggerWrapper = LogHelper.getLoggerWrapper (LoggerWrapperLevelTest.class.getName ());
+		logger = loggerWrapper.getLogger ();
+		handler = new CollectingHandler ();
+		logger.setUseParentHandlers (false);
+		logger.addHandler (handler);
+	}
+
+	@After
+	public void tearDown () {
+		logger.removeHandler (handler);
+		loggerWrapper.setJulLevel (null);
+	}
+
+	@Test
+	public void testLevelSetThroughWrapper () {
+		loggerWrapper.setJulLevel (Level.SEVERE);
+		loggerWrapper.fine ("fine");
+		loggerWrapper.severe ("severe");
+
+		assertFalse (loggerWrapper.isLoggable (Level.FINE));
+		assertEquals (1, handler.records.size ());
+		assertEquals ("severe", handler.records.get (0).getMessage ());
+	}
+
+	@Test
+	public void testLevelSetOnLoggerDirectly () {
+		loggerWrapper.setJulLevel (Level.SEVERE);
+		// As done by LogManager.readConfiguration ()
+		logger.setLevel (Level.FINE);
+		loggerWrapper.fine ("fine");
+		loggerWrapper.finer ("finer");
+
+		assertTrue (loggerWrapper.isLoggable (Level.FINE));
+		assertFalse (loggerWrapper.isLoggable (Level.FINER));
+		assertEquals (1, handler.records.size ());
+		assertEquals ("fine", handler.records.get (0).getMessage ());
+	}
+
+	@Test
+	public void testLevelSetThroughWrapperAfterLogger () {
+		logger.setLevel (Level.FINE);
+		loggerWrapper.setJulLevel (Level.WARNING);
+
+		assertFalse (loggerWrapper.isLoggable (Level.INFO));
+		assertTrue (loggerWrapper.isLoggable (Level.WARNING));
+	}
+
+	static class CollectingHandler extends Handler {
+
+		final List<LogRecord> records = new ArrayList<> ();
+
+		@Override
+		public synchronized void publish (LogRecord record) {
+			records.add (record);
+		}
+
+		@Override
+		public void flush () {
+		}
+
+		@Override
+		public void close () throws SecurityException {
+		}
+	}
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.formatter;
+
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Formatting a record while another one is formatted on the same thread, as when <code>toString ()</code> of a parameter logs
+ *
+ * @author Dmitriy Merkushov
+ */
+public class FormatterReentrancyTest {
+
+	@Test
+	public void testDefaultFormatter () {
+		checkReentrancy (new DefaultFormatter ());
+	}
+
+	@Test
+	public void testJsonFormatter () {
+		checkReentrancy (new JsonFormatter ());
+	}
+
+	@Test
+	public void testPatternFormatter () {
+		checkReentrancy (new PatternFormatter (null));
+	}
+
+	private static void checkReentrancy (Formatter formatter) {
+		LoggingParam param = new LoggingParam (formatter);
+		LogRecord record = new LogRecord (Level.WARNING, "outer message");
+		record.setSourceClassName ("some.Class");
+		record.setSourceMethodName ("method");
+		record.setParameters (new Object[] {param});
+
+		String expected = formatter.format (record);
+		param.logs = true;
+		String formatted = formatter.format (record);
+
+		assertEquals (expected, formatted);
+		assertTrue (param.innerFormatted.contains ("inner message"));
+	}
+
+	/**
+	 * A parameter formatting another record with the same formatter when turned to a string
+	 */
+	private static class LoggingParam {
+
+		final Formatter formatter;
+		boolean logs = false;
+		String innerFormatted = "";
+
+		LoggingParam (Formatter formatter) {
+			this.formatter = formatter;
+		}
+
+		@Override
+		public String toString () {
+			if (logs) {
+				innerFormatted = formatter.format (new LogRecord (Level.INFO, "inner message"));
+			}
+			return "param";
+		}
+	}
+
+}
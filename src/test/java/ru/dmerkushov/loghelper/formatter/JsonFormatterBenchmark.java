@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.formatter;
+
+import java.io.IOException;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import ru.dmerkushov.loghelper.StructuredLogRecord;
+
+/**
+ * Throughput of {@link JsonFormatter} compared to {@link DefaultFormatter}, in records formatted per second. Not a unit test: run it by hand, with the arguments <code>[seconds per round] [rounds]</code>
+ *
+ * @author Dmitriy Merkushov
+ */
+public class JsonFormatterBenchmark {
+
+	private static volatile int sink;
+
+	public static void main (String[] args) {
+		long roundMillis = (args.length > 0 ? Long.parseLong (args[0]) * 1000L : 2000L);
+		int rounds = (args.length > 1 ? Integer.parseInt (args[1]) : 5);
+
+		LogRecord[] records = createRecords ();
+		Formatter defaultFormatter = new DefaultFormatter ();
+		Formatter jsonFormatter = new JsonFormatter ();
+
+		// Warm-up round, not reported
+		measure (defaultFormatter, records, roundMillis);
+		measure (jsonFormatter, records, roundMillis);
+
+		for (int round = 1; round <= rounds; round++) {
+			double defaultRate = measure (defaultFormatter, records, roundMillis);
+			double jsonRate = measure (jsonFormatter, records, roundMillis);
+			System.out.printf ("Round %d: DefaultFormatter %.0f records/s, JsonFormatter %.0f records/s (%.2fx)%n", round, defaultRate, jsonRate, jsonRate / defaultRate);
+		}
+	}
+
+	/**
+	 * Format the records over and over for a given time
+	 * @param formatter
+	 * @param records
+	 * @param roundMillis
+	 * @return records formatted per second
+	 */
+	private static double measure (Formatter formatter, LogRecord[] records, long roundMillis) {
+		long count = 0L;
+		int length = 0;
+		long start = System.nanoTime ();
+		long end = start + roundMillis * 1000000L;
+		long now;
+		do {
+			for (LogRecord record : records) {
+				length += formatter.format (record).length ();
+			}
+			count += records.length;
+			now = System.nanoTime ();
+		} while (now < end);
+		sink = length;
+
+		return count * 1e9 / (now - start);
+	}
+
+	/**
+	 * Records of a typical mix: plain messages, parameters, fields, characters to escape, and a throwable
+	 * @return
+	 */
+	private static LogRecord[] createRecords () {
+		LogRecord plain = new StructuredLogRecord (Level.INFO, "Request processed in 15 ms");
+
+		LogRecord params = new StructuredLogRecord (Level.FINE, "User {0} logged in from {1}");
+		params.setParameters (new Object[] {"alice", "10.0.0.1"});
+
+		LogRecord fields = new StructuredLogRecord (Level.INFO, "Order placed", new String[] {"orderId", "amount", "currency"}, new Object[] {123456L, 99.95, "EUR"}, 3);
+
+		LogRecord escaped = new StructuredLogRecord (Level.WARNING, "Unexpected input: \"line one\nline two\"\tC:\\path");
+
+		LogRecord thrown = new StructuredLogRecord (Level.SEVERE, "Request failed");
+		thrown.setThrown (new IllegalStateException ("Connection reset", new IOException ("Broken pipe")));
+
+		LogRecord[] records = {plain, params, fields, escaped, thrown};
+		for (LogRecord record : records) {
+			record.setSourceClassName (JsonFormatterBenchmark.class.getName ());
+			record.setSourceMethodName ("createRecords");
+		}
+		return records;
+	}
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.formatter;
+
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import org.junit.Test;
+import ru.dmerkushov.loghelper.LogContext;
+import ru.dmerkushov.loghelper.StructuredLogRecord;
+
+import static org.junit.Assert.*;
+
+/**
+ * Output of {@link JsonFormatter}
+ *
+ * @author Dmitriy Merkushov
+ */
+public class JsonFormatterTest {
+
+	@Test
+	public void testStructure () {
+		LogRecord record = new StructuredLogRecord (Level.WARNING, "Hello");
+		record.setSourceClassName ("some.Class");
+		record.setSourceMethodName ("method");
+		((StructuredLogRecord) record).setThreadName ("worker");
+
+		String json = new JsonFormatter ().format (record);
+
+		assertTrue (json, json.startsWith ("{\"timestamp\":\""));
+		assertTrue (json, json.contains ("\",\"millis\":" + record.getMillis () + ",\"level\":\"WARNING\",\"thread\":\"worker\",\"class\":\"some.Class\",\"method\":\"method\",\"message\":\"Hello\"}"));
+		assertTrue (json, json.endsWith ("}\n"));
+	}
+
+	@Test
+	public void testNullsAndParams () {
+		LogRecord record = new LogRecord (Level.INFO, null);
+		record.setParameters (new Object[] {1, 2.5, true, "text", null, Double.NaN});
+
+		String json = new JsonFormatter ().format (record);
+
+		assertTrue (json, json.contains ("\"class\":null,\"method\":null,\"message\":null"));
+		assertTrue (json, json.contains ("\"params\":[{\"type\":\"java.lang.Integer\",\"value\":1},{\"type\":\"java.lang.Double\",\"value\":2.5},{\"type\":\"java.lang.Boolean\",\"value\":true},{\"type\":\"java.lang.String\",\"value\":\"text\"},null,{\"type\":\"java.lang.Double\",\"value\":\"NaN\"}]"));
+	}
+
+	@Test
+	public void testContextAndFields () {
+		LogContext.put ("request", "42");
+		StructuredLogRecord record;
+		try {
+			record = new StructuredLogRecord (Level.INFO, "message", new String[] {"user", "count"}, new Object[] {"alice", 3}, 2);
+		} finally {
+			LogContext.clear ();
+		}
+
+		String json = new JsonFormatter ().format (record);
+
+		assertTrue (json, json.contains (",\"context\":{\"request\":\"42\"}"));
+		assertTrue (json, json.contains (",\"fields\":{\"user\":\"alice\",\"count\":\"3\"}"));
+	}
+
+	@Test
+	public void testRepeats () {
+		StructuredLogRecord record = new StructuredLogRecord (Level.INFO, "message");
+		record.setRepeats (3L, 100L, 200L);
+
+		String json = new JsonFormatter ().format (record);
+
+		assertTrue (json, json.contains (",\"repeats\":{\"count\":3,\"firstMillis\":100,\"lastMillis\":200}"));
+	}
+
+	@Test
+	public void testEscaping () {
+		assertEquals ("\"plain\"", appendString ("plain"));
+		assertEquals ("\"\\\"quoted\\\" back\\\\slash\"", appendString ("\"quoted\" back\\slash"));
+		assertEquals ("\"a\\nb\\rc\\td\\be\\ff\"", appendString ("a\nb\rc\td\be\ff"));
+		assertEquals ("\"\\u0001\\u001f \\u0000\"", appendString ("\u0001\u001f \u0000"));
+		assertEquals ("null", appendString (null));
+		assertEquals ("\"\"", appendString (""));
+	}
+
+	@Test
+	public void testNonAsciiKept () {
+		assertEquals ("\"\u0436\u20ac\u00e9\"", appendString ("\u0436\u20ac\u00e9"));
+		// DEL and the line separators are valid JSON as they are
+		assertEquals ("\"\u007f\u2028\"", appendString ("\u007f\u2028"));
+	}
+
+	@Test
+	public void testSurrogates () {
+		// A pair is kept as it is
+		assertEquals ("\"a\ud83d\ude00b\"", appendString ("a\ud83d\ude00b"));
+		// Unpaired surrogates are escaped
+		assertEquals ("\"a\\ud83db\"", appendString ("a\ud83db"));
+		assertEquals ("\"a\\ude00b\"", appendString ("a\ude00b"));
+		assertEquals ("\"a\\ud83d\"", appendString ("a\ud83d"));
+		assertEquals ("\"\\ude00\ud83d\ude00\"", appendString ("\ude00\ud83d\ude00"));
+		assertEquals ("\"\\ude00\\ud83d\"", appendString ("\ude00\ud83d"));
+	}
+
+	@Test
+	public void testThrowable () {
+		LogRecord record = new LogRecord (Level.SEVERE, "failed");
+		record.setThrown (new IllegalStateException ("outer", new RuntimeException ("inner")));
+
+		String json = new JsonFormatter ().format (record);
+
+		assertTrue (json, json.contains (",\"thrown\":{\"class\":\"java.lang.IllegalStateException\",\"message\":\"outer\",\"stackTrace\":[{\"class\":\"" + JsonFormatterTest.class.getName () + "\",\"method\":\"testThrowable\""));
+		assertTrue (json, json.contains (",\"cause\":{\"class\":\"java.lang.RuntimeException\",\"message\":\"inner\",\"stackTrace\":["));
+		assertTrue (json, json.endsWith ("]}}}\n"));
+		assertFalse (json, json.contains ("circular"));
+	}
+
+	@Test
+	public void testCircularCause () {
+		Exception first = new Exception ("first");
+		Exception second = new Exception ("second", first);
+		first.initCause (second);
+		LogRecord record = new LogRecord (Level.SEVERE, "failed");
+		record.setThrown (first);
+
+		String json = new JsonFormatter ().format (record);
+
+		assertTrue (json, json.contains (",\"cause\":{\"class\":\"java.lang.Exception\",\"message\":\"first\",\"circular\":true}"));
+		assertTrue (json, json.endsWith ("\"circular\":true}}}}\n"));
+	}
+
+	private static String appendString (CharSequence text) {
+		StringBuilder sb = new StringBuilder ();
+		JsonFormatter.appendString (text, sb);
+		return sb.toString ();
+	}
+
+}
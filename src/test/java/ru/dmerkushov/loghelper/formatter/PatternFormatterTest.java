@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.formatter;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import org.junit.Test;
+import ru.dmerkushov.loghelper.LogContext;
+import ru.dmerkushov.loghelper.StructuredLogRecord;
+
+import static org.junit.Assert.*;
+
+/**
+ * Output of {@link PatternFormatter}
+ *
+ * @author Dmitriy Merkushov
+ */
+public class PatternFormatterTest {
+
+	private static final TimestampService UTC_MILLISECONDS = new TimestampService (ZoneOffset.UTC, TimestampService.Precision.MILLISECONDS);
+
+	@Test
+	public void testConversions () {
+		StructuredLogRecord record = createRecord ();
+		record.setParameters (new Object[] {1, "two"});
+
+		assertEquals ("WARNING|worker|some.Class|method|Hello {0}| [1, two]", format ("%level|%thread|%class|%method|%message|%params", record));
+	}
+
+	@Test
+	public void testTimestamp () {
+		StructuredLogRecord record = createRecord ();
+		record.setInstant (Instant.parse ("2014-01-02T03:04:05.006Z"));
+
+		assertEquals ("[2014-01-02 03:04:05.6 +0000]", format ("[%timestamp]", record));
+	}
+
+	@Test
+	public void testDefaultPattern () {
+		StructuredLogRecord record = createRecord ();
+		record.setInstant (Instant.parse ("2014-01-02T03:04:05.006Z"));
+
+		assertEquals ("2014-01-02 03:04:05.6 +0000 WARNING [worker] some.Class method: Hello {0}\n", format (null, record));
+	}
+
+	@Test
+	public void testMissingParts () {
+		LogRecord record = new LogRecord (Level.INFO, "message");
+
+		assertEquals ("[][]message\n", format ("[%class][%method]%message%params%throwable%n", record));
+	}
+
+	@Test
+	public void testThrowable () {
+		LogRecord record = createRecord ();
+		record.setThrown (new IllegalStateException ("failed"));
+
+		String formatted = format ("%message%throwable", record);
+
+		assertTrue (formatted, formatted.startsWith ("Hello {0}\njava.lang.IllegalStateException: failed\nStack Trace:\n\t" + PatternFormatterTest.class.getName () + ":testThrowable():"));
+	}
+
+	@Test
+	public void testLettersAfterConversion () {
+		LogRecord record = createRecord ();
+
+		assertEquals ("\nNext", format ("%nNext", record));
+		assertEquals ("WARNINGS", format ("%levelS", record));
+		assertEquals ("Hello {0}s", format ("%messages", record));
+	}
+
+	@Test
+	public void testPercentSign () {
+		LogRecord record = createRecord ();
+
+		assertEquals ("100% WARNING %level", format ("100%% %level %%level", record));
+	}
+
+	@Test
+	public void testLiteralOnly () {
+		assertEquals ("no conversions", format ("no conversions", createRecord ()));
+	}
+
+	@Test
+	public void testContext () {
+		LogContext.put ("request", "42");
+		LogContext.put ("user", "alice");
+		StructuredLogRecord record;
+		try {
+			record = createRecord ();
+		} finally {
+			LogContext.clear ();
+		}
+
+		assertEquals ("42 alice []", format ("%context{request} %context{user} [%context{missing}]", record));
+		assertEquals ("request=42, user=alice", format ("%context", record));
+	}
+
+	@Test (expected = IllegalArgumentException.class)
+	public void testUnknownConversion () {
+		new PatternFormatter ("%unknown");
+	}
+
+	@Test (expected = IllegalArgumentException.class)
+	public void testPercentAtEnd () {
+		new PatternFormatter ("text %");
+	}
+
+	@Test (expected = IllegalArgumentException.class)
+	public void testUnclosedBrace () {
+		new PatternFormatter ("%context{request");
+	}
+
+	private static StructuredLogRecord createRecord () {
+		StructuredLogRecord record = new StructuredLogRecord (Level.WARNING, "Hello {0}");
+		record.setSourceClassName ("some.Class");
+		record.setSourceMethodName ("method");
+		record.setThreadName ("worker");
+		return record;
+	}
+
+	private static String format (String pattern, LogRecord record) {
+		return new PatternFormatter (pattern, UTC_MILLISECONDS).format (record);
+	}
+
+}
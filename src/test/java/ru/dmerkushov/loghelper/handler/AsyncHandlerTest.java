@@ -0,0 +1,248 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.handler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import org.junit.After;
+import org.junit.Test;
+import ru.dmerkushov.loghelper.StructuredLogRecord;
+
+import static org.junit.Assert.*;
+
+/**
+ * Ring buffer policies of {@link AsyncHandler}
+ *
+ * @author Dmitriy Merkushov
+ */
+public class AsyncHandlerTest {
+
+	private AsyncHandler handler;
+	private CollectingHandler target;
+
+	@After
+	public void tearDown () {
+		if (target != null && target.release != null) {
+			target.release.countDown ();
+		}
+		if (handler != null) {
+			handler.close ();
+		}
+	}
+
+	@Test
+	public void testBlockDeliversAllRecords () throws InterruptedException {
+		target = new CollectingHandler ();
+		handler = new AsyncHandler (target, 4, AsyncHandler.QueueFullPolicy.BLOCK, null);
+
+		List<Thread> producers = new ArrayList<> ();
+		for (int p = 0; p < 4; p++) {
+			final int producer = p;
+			Thread thread = new Thread (() -> {
+				for (int i = 0; i < 250; i++) {
+					handler.publish (new LogRecord (Level.INFO, producer + ":" + i));
+				}
+			});
+			producers.add (thread);
+			thread.start ();
+		}
+		for (Thread thread : producers) {
+			thread.join ();
+		}
+		handler.close ();
+
+		assertEquals (1000, target.getMessages ().size ());
+		assertEquals (0L, handler.getDroppedCount ());
+		assertTrue (target.closed);
+	}
+
+	@Test
+	public void testBlockKeepsOrderOfProducer () {
+		target = new CollectingHandler ();
+		handler = new AsyncHandler (target, 2, AsyncHandler.QueueFullPolicy.BLOCK, null);
+
+		List<String> expected = new ArrayList<> ();
+		for (int i = 0; i < 100; i++) {
+			handler.publish (new LogRecord (Level.INFO, "record " + i));
+			expected.add ("record " + i);
+		}
+		handler.close ();
+
+		assertEquals (expected, target.getMessages ());
+	}
+
+	@Test
+	public void testDropNewestCountsDrops () throws InterruptedException {
+		target = new CollectingHandler ();
+		handler = new AsyncHandler (target, 4, AsyncHandler.QueueFullPolicy.DROP_NEWEST, null);
+
+		holdConsumer ();
+		for (int i = 0; i < 20; i++) {
+			handler.publish (new LogRecord (Level.SEVERE, "record " + i));
+		}
+		// The held record has left the buffer, four more fit in it
+		assertEquals (16L, handler.getDroppedCount ());
+
+		target.release.countDown ();
+		handler.close ();
+
+		List<String> messages = target.getMessages ();
+		assertEquals (6, messages.size ());
+		assertEquals ("log-helper AsyncHandler dropped 16 records: the queue was full", messages.get (5));
+		assertEquals (0L, handler.getDroppedCount ());
+	}
+
+	@Test
+	public void testDropBelowLevelKeepsRecordsAtDropLevel () throws InterruptedException {
+		target = new CollectingHandler ();
+		handler = new AsyncHandler (target, 4, AsyncHandler.QueueFullPolicy.DROP_BELOW_LEVEL, Level.WARNING);
+
+		holdConsumer ();
+		for (int i = 0; i < 4; i++) {
+			handler.publish (new LogRecord (Level.INFO, "filler " + i));
+		}
+		for (int i = 0; i < 10; i++) {
+			handler.publish (new LogRecord (Level.FINE, "dropped " + i));
+		}
+		assertEquals (10L, handler.getDroppedCount ());
+
+		// Blocks until the consumer is released
+		Thread producer = new Thread (() -> handler.publish (new LogRecord (Level.WARNING, "kept")));
+		producer.start ();
+		producer.join (100L);
+		assertTrue (producer.isAlive ());
+
+		target.release.countDown ();
+		producer.join ();
+		handler.close ();
+
+		List<String> messages = target.getMessages ();
+		assertTrue (messages.contains ("kept"));
+		for (String message : messages) {
+			assertFalse (message, message.startsWith ("dropped"));
+		}
+	}
+
+	@Test
+	public void testSpinThenParkDeliversAllRecords () {
+		target = new CollectingHandler ();
+		handler = new AsyncHandler (target, 2, AsyncHandler.QueueFullPolicy.SPIN_THEN_PARK, null);
+
+		for (int i = 0; i < 100; i++) {
+			handler.publish (new LogRecord (Level.INFO, "record " + i));
+		}
+		handler.close ();
+
+		assertEquals (100, target.getMessages ().size ());
+	}
+
+	@Test
+	public void testCloseDrainsBuffer () {
+		target = new CollectingHandler ();
+		target.delayMillis = 1L;
+		handler = new AsyncHandler (target, 64, AsyncHandler.QueueFullPolicy.BLOCK, null);
+
+		for (int i = 0; i < 50; i++) {
+			handler.publish (new LogRecord (Level.INFO, "record " + i));
+		}
+		handler.close ();
+
+		assertEquals (50, target.getMessages ().size ());
+
+		handler.publish (new LogRecord (Level.INFO, "after close"));
+		assertEquals (50, target.getMessages ().size ());
+	}
+
+	@Test
+	public void testCapturesThreadName () throws InterruptedException {
+		target = new CollectingHandler ();
+		handler = new AsyncHandler (target, 4, AsyncHandler.QueueFullPolicy.BLOCK, null);
+
+		Thread producer = new Thread (() -> handler.publish (new LogRecord (Level.INFO, "plain")), "producer thread");
+		producer.start ();
+		producer.join ();
+		handler.close ();
+
+		LogRecord record = target.records.get (0);
+		assertTrue (record instanceof StructuredLogRecord);
+		assertEquals ("producer thread", ((StructuredLogRecord) record).getThreadName ());
+	}
+
+	/**
+	 * Publish a record and wait until the consumer is stuck in the target with it
+	 * @throws InterruptedException
+	 */
+	private void holdConsumer () throws InterruptedException {
+		target.release = new CountDownLatch (1);
+		handler.publish (new LogRecord (Level.SEVERE, "held"));
+		assertTrue (target.entered.await (5L, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Keeps the records published to it
+	 */
+	static class CollectingHandler extends Handler {
+
+		final List<LogRecord> records = new ArrayList<> ();
+		final CountDownLatch entered = new CountDownLatch (1);
+		volatile CountDownLatch release;
+		volatile long delayMillis = 0L;
+		volatile boolean closed = false;
+
+		@Override
+		public void publish (LogRecord record) {
+			entered.countDown ();
+			try {
+				if (release != null) {
+					release.await ();
+				}
+				if (delayMillis > 0L) {
+					Thread.sleep (delayMillis);
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread ().interrupt ();
+			}
+			synchronized (records) {
+				records.add (record);
+			}
+		}
+
+		List<String> getMessages () {
+			List<String> messages = new ArrayList<> ();
+			synchronized (records) {
+				for (LogRecord record : records) {
+					messages.add (record.getMessage ());
+				}
+			}
+			return messages;
+		}
+
+		@Override
+		public void flush () {
+		}
+
+		@Override
+		public void close () throws SecurityException {
+			closed = true;
+		}
+	}
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.handler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.ErrorManager;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ru.dmerkushov.loghelper.formatter.PatternFormatter;
+
+import static org.junit.Assert.*;
+
+/**
+ * Day boundary switch of {@link DailyRollingFileHandler}
+ *
+ * @author Dmitriy Merkushov
+ */
+public class DailyRollingFileHandlerTest {
+
+	private File directory;
+	private DailyRollingFileHandler handler;
+	private LocalDate today;
+
+	@Before
+	public void setUp () throws IOException {
+		directory = Files.createTempDirectory ("DailyRollingFileHandlerTest").toFile ();
+		handler = new DailyRollingFileHandler (new File (directory, "log_%d_%u").getPath ());
+		handler.setFormatter (new SizeRollingFileHandlerTest.MessageFormatter ());
+		today = LocalDate.now (ZoneId.systemDefault ());
+	}
+
+	@After
+	public void tearDown () {
+		handler.close ();
+		deleteRecursively (directory);
+	}
+
+	@Test
+	public void testRecordsOfTheDayGoToOneFile () throws IOException {
+		publish ("first", today.atTime (0, 0));
+		publish ("second", today.atTime (23, 59, 59));
+		handler.close ();
+
+		assertEquals (Arrays.asList ("first", "second"), readLines (logFile (today)));
+	}
+
+	@Test
+	public void testSwitchAtMidnight () throws IOException {
+		LocalDate tomorrow = today.plusDays (1);
+		publish ("today", today.atTime (23, 59, 59));
+		publish ("tomorrow", tomorrow.atStartOfDay ());
+		publish ("tomorrow again", tomorrow.atTime (12, 0));
+		handler.close ();
+
+		assertEquals (Collections.singletonList ("today"), readLines (logFile (today)));
+		assertEquals (Arrays.asList ("tomorrow", "tomorrow again"), readLines (logFile (tomorrow)));
+		assertEquals (logFile (tomorrow).getAbsoluteFile (), handler.getFile ().getAbsoluteFile ());
+	}
+
+	@Test
+	public void testLateRecordStaysInCurrentFile () throws IOException {
+		LocalDate tomorrow = today.plusDays (1);
+		publish ("tomorrow", tomorrow.atStartOfDay ());
+		publish ("late", today.atTime (23, 59, 59));
+		handler.close ();
+
+		assertEquals (Arrays.asList ("tomorrow", "late"), readLines (logFile (tomorrow)));
+	}
+
+	@Test
+	public void testKeepsCurrentFileIfNextCannotBeOpened () throws IOException {
+		handler.close ();
+		deleteRecursively (directory);
+
+		// The file of the next day would be in a directory that does not exist
+		File todayDirectory = new File (directory, today.toString ());
+		todayDirectory.mkdirs ();
+		handler = new DailyRollingFileHandler (new File (directory, "%d" + File.separator + "log_%u").getPath ());
+		handler.setFormatter (new SizeRollingFileHandlerTest.MessageFormatter ());
+		handler.setErrorManager (new ErrorManager () {
+			@Override
+			public synchronized void error (String msg, Exception ex, int code) {
+			}
+		});
+
+		publish ("today", today.atTime (12, 0));
+		publish ("tomorrow", today.plusDays (1).atTime (0, 0));
+		handler.close ();
+
+		assertEquals (Arrays.asList ("today", "tomorrow"), readLines (new File (todayDirectory, "log_0")));
+	}
+
+	@Test
+	public void testRecordPublishedWhileFormatting () throws IOException {
+		handler.setFormatter (new PatternFormatter ("%message%params%n"));
+
+		LogRecord record = new LogRecord (Level.INFO, "outer");
+		record.setParameters (new Object[] {new SizeRollingFileHandlerTest.PublishingParam (handler, "inner")});
+		handler.publish (record);
+		handler.close ();
+
+		assertEquals (Arrays.asList ("inner", "outer [param]"), readLines (logFile (today)));
+	}
+
+	private void publish (String message, LocalDateTime time) {
+		LogRecord record = new LogRecord (Level.INFO, message);
+		Instant instant = time.atZone (ZoneId.systemDefault ()).toInstant ();
+		record.setInstant (instant);
+		handler.publish (record);
+	}
+
+	private File logFile (LocalDate day) {
+		return new File (directory, "log_" + day + "_0");
+	}
+
+	private static List<String> readLines (File file) throws IOException {
+		assertTrue (file + " does not exist", file.exists ());
+		return Files.readAllLines (file.toPath (), StandardCharsets.UTF_8);
+	}
+
+	private static void deleteRecursively (File file) {
+		File[] children = file.listFiles ();
+		if (children != null) {
+			for (File child : children) {
+				deleteRecursively (child);
+			}
+		}
+		file.delete ();
+	}
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.handler;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ru.dmerkushov.loghelper.LogContext;
+import ru.dmerkushov.loghelper.StructuredLogRecord;
+
+import static org.junit.Assert.*;
+
+/**
+ * Repeat summaries of {@link DeduplicatingHandler}
+ *
+ * @author Dmitriy Merkushov
+ */
+public class DeduplicatingHandlerTest {
+
+	private static final long WINDOW_MILLIS = 1000L;
+
+	private AsyncHandlerTest.CollectingHandler target;
+	private DeduplicatingHandler handler;
+	private long startMillis;
+
+	@Before
+	public void setUp () {
+		target = new AsyncHandlerTest.CollectingHandler ();
+		handler = new DeduplicatingHandler (target, WINDOW_MILLIS, 16);
+		// Far enough in the future for the periodic sweep to leave the bursts alone
+		startMillis = System.currentTimeMillis () + 3600000L;
+	}
+
+	@After
+	public void tearDown () {
+		handler.close ();
+	}
+
+	@Test
+	public void testFirstRecordPasses () {
+		publish ("message", 0L);
+
+		assertEquals (Collections.singletonList ("message"), target.getMessages ());
+	}
+
+	@Test
+	public void testRepeatsSummarized () {
+		for (int i = 0; i < 5; i++) {
+			publish ("message", i * 10L);
+		}
+		assertEquals (1, target.records.size ());
+
+		handler.flush ();
+
+		assertEquals (Arrays.asList ("message", "message"), target.getMessages ());
+		StructuredLogRecord summary = (StructuredLogRecord) target.records.get (1);
+		assertEquals (4L, summary.getRepeatCount ());
+		assertEquals (startMillis + 10L, summary.getFirstRepeatMillis ());
+		assertEquals (startMillis + 40L, summary.getLastRepeatMillis ());
+	}
+
+	@Test
+	public void testDifferentRecordsPass () {
+		publish ("first", 0L);
+		publish ("second", 10L);
+		publish ("first", 20L);
+		handler.flush ();
+
+		assertEquals (Arrays.asList ("first", "second", "first"), target.getMessages ());
+		assertEquals (1L, ((StructuredLogRecord) target.records.get (2)).getRepeatCount ());
+	}
+
+	@Test
+	public void testNewBurstAfterWindow () {
+		publish ("message", 0L);
+		publish ("message", 10L);
+		publish ("message", 20L);
+		publish ("message", WINDOW_MILLIS + 10L);
+
+		assertEquals (Arrays.asList ("message", "message", "message"), target.getMessages ());
+		assertEquals (2L, ((StructuredLogRecord) target.records.get (1)).getRepeatCount ());
+		assertEquals (0L, ((StructuredLogRecord) target.records.get (2)).getRepeatCount ());
+	}
+
+	@Test
+	public void testSummaryCarriesThreadName () throws InterruptedException {
+		publish ("message", 0L);
+		Thread repeater = new Thread (() -> publish ("message", 10L), "repeater");
+		repeater.start ();
+		repeater.join ();
+		handler.flush ();
+
+		assertEquals ("repeater", ((StructuredLogRecord) target.records.get (1)).getThreadName ());
+	}
+
+	@Test
+	public void testSummaryOfPlainRecordsHasNoContext () {
+		for (int i = 0; i < 3; i++) {
+			LogRecord record = new LogRecord (Level.INFO, "plain");
+			record.setInstant (Instant.ofEpochMilli (startMillis + i));
+			handler.publish (record);
+		}
+
+		// Another request is served by the thread passing the repeats on
+		LogContext.put ("request", "other");
+		try {
+			handler.flush ();
+		} finally {
+			LogContext.clear ();
+		}
+
+		assertTrue (((StructuredLogRecord) target.records.get (1)).getContext ().isEmpty ());
+	}
+
+	@Test
+	public void testPeriodicSweepPublishesSummary () throws InterruptedException {
+		handler.close ();
+		handler = new DeduplicatingHandler (target, 50L, 16);
+		for (int i = 0; i < 3; i++) {
+			handler.publish (new StructuredLogRecord (Level.INFO, "message"));
+		}
+		assertEquals (1, target.getMessages ().size ());
+
+		// No record comes after the burst, the summary must be published anyway
+		long deadline = System.currentTimeMillis () + 5000L;
+		while (target.getMessages ().size () < 2 && System.currentTimeMillis () < deadline) {
+			Thread.sleep (10L);
+		}
+
+		assertEquals (2, target.getMessages ().size ());
+		assertEquals (2L, ((StructuredLogRecord) target.records.get (1)).getRepeatCount ());
+	}
+
+	private void publish (String message, long offsetMillis) {
+		LogRecord record = new StructuredLogRecord (Level.INFO, message);
+		record.setInstant (Instant.ofEpochMilli (startMillis + offsetMillis));
+		record.setSourceClassName (DeduplicatingHandlerTest.class.getName ());
+		record.setSourceMethodName ("publish");
+		handler.publish (record);
+	}
+
+}
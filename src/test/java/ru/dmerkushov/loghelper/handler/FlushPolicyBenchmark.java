@@ -0,0 +1,77 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.handler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Throughput of {@link SizeRollingFileHandler} with the flush policies, compared to {@link FlushPolicy#EVERY_RECORD}, in records published per second. Not a unit test: run it by hand, with the arguments <code>[seconds per round] [rounds]</code>
+ *
+ * @author Dmitriy Merkushov
+ */
+public class FlushPolicyBenchmark {
+
+	private static final long LOG_SIZE_BOUND = 16L * 1024L * 1024L;
+
+	public static void main (String[] args) throws IOException {
+		long roundMillis = (args.length > 0 ? Long.parseLong (args[0]) * 1000L : 2000L);
+		int rounds = (args.length > 1 ? Integer.parseInt (args[1]) : 5);
+
+		LogRecord record = new LogRecord (Level.INFO, String.format ("Request %08d processed in %d ms by worker %s", 12345678, 15, "pool-1-thread-7"));
+		FlushPolicy[] policies = {
+			FlushPolicy.EVERY_RECORD,
+			FlushPolicy.BATCHED,
+			new FlushPolicy (256, 64L * 1024L, 0L, null)
+		};
+		String[] policyNames = {"every record", "batched", "every 256 records or 64 KB"};
+
+		// Warm-up round, not reported
+		for (FlushPolicy policy : policies) {
+			measure (record, policy, roundMillis);
+		}
+
+		for (int round = 1; round <= rounds; round++) {
+			StringBuilder line = new StringBuilder ("Round ").append (round).append (':');
+			double everyRecordRate = 0.0;
+			for (int i = 0; i < policies.length; i++) {
+				double rate = measure (record, policies[i], roundMillis);
+				if (i == 0) {
+					everyRecordRate = rate;
+				}
+				line.append (i > 0 ? ", " : " ").append (policyNames[i]).append (String.format (" %.0f records/s (%.2fx)", rate, rate / everyRecordRate));
+			}
+			System.out.println (line);
+		}
+	}
+
+	private static double measure (LogRecord record, FlushPolicy flushPolicy, long roundMillis) throws IOException {
+		File directory = Files.createTempDirectory ("FlushPolicyBenchmark").toFile ();
+		SizeRollingFileHandler handler = new SizeRollingFileHandler (new File (directory, "log").getPath (), LOG_SIZE_BOUND);
+		handler.setFormatter (new SizeRollingFileHandlerTest.MessageFormatter ());
+		handler.setFlushPolicy (flushPolicy);
+		try {
+			return SizeRollingFileHandlerBenchmark.measure (handler, record, roundMillis);
+		} finally {
+			handler.close ();
+			SizeRollingFileHandlerBenchmark.delete (directory);
+		}
+	}
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.handler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Per-record latency of {@link SizeRollingFileHandler} under bursty load, with {@link MappedSegmentOutput mapped segments} compared to the {@link FileChannelOutput file channel} output. Records are published in bursts with pauses between them, and the time of every publish call is taken; the percentiles are reported in microseconds. Both modes flush by the {@link FlushPolicy#BATCHED} policy. Not a unit test: run it by hand, with the arguments <code>[bursts per round] [rounds]</code>
+ *
+ * @author Dmitriy Merkushov
+ */
+public class MappedSegmentBenchmark {
+
+	private static final long LOG_SIZE_BOUND = 4L * 1024L * 1024L;
+	private static final int BURST_RECORDS = 1000;
+	private static final long PAUSE_NANOS = TimeUnit.MILLISECONDS.toNanos (5);
+
+	public static void main (String[] args) throws IOException {
+		int bursts = (args.length > 0 ? Integer.parseInt (args[0]) : 200);
+		int rounds = (args.length > 1 ? Integer.parseInt (args[1]) : 5);
+
+		LogRecord record = new LogRecord (Level.INFO, String.format ("Request %08d processed in %d ms by worker %s", 12345678, 15, "pool-1-thread-7"));
+
+		// Warm-up round, not reported
+		measure (record, false, bursts);
+		measure (record, true, bursts);
+
+		for (int round = 1; round <= rounds; round++) {
+			long[] channelLatencies = measure (record, false, bursts);
+			long[] mappedLatencies = measure (record, true, bursts);
+			System.out.printf ("Round %d: file channel %s; mapped %s%n", round, percentiles (channelLatencies), percentiles (mappedLatencies));
+		}
+	}
+
+	/**
+	 * Publish bursts of records, pausing between them
+	 * @param record
+	 * @param mappedSegments
+	 * @param bursts
+	 * @return the latency of every publish call in nanoseconds, sorted
+	 * @throws IOException
+	 */
+	private static long[] measure (LogRecord record, boolean mappedSegments, int bursts) throws IOException {
+		File directory = Files.createTempDirectory ("MappedSegmentBenchmark").toFile ();
+		SizeRollingFileHandler handler = new SizeRollingFileHandler (new File (directory, "log").getPath (), LOG_SIZE_BOUND);
+		handler.setEncoding ("UTF-8");
+		handler.setFormatter (new SizeRollingFileHandlerTest.MessageFormatter ());
+		handler.setFlushPolicy (FlushPolicy.BATCHED);
+		handler.setMappedSegments (mappedSegments);
+
+		long[] latencies = new long[bursts * BURST_RECORDS];
+		int count = 0;
+		try {
+			for (int burst = 0; burst < bursts; burst++) {
+				for (int i = 0; i < BURST_RECORDS; i++) {
+					long start = System.nanoTime ();
+					handler.publish (record);
+					latencies[count++] = System.nanoTime () - start;
+				}
+				LockSupport.parkNanos (PAUSE_NANOS);
+			}
+		} finally {
+			handler.close ();
+			SizeRollingFileHandlerBenchmark.delete (directory);
+		}
+
+		Arrays.sort (latencies);
+		return latencies;
+	}
+
+	private static String percentiles (long[] sortedLatencies) {
+		return String.format ("p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us",
+				percentile (sortedLatencies, 0.5), percentile (sortedLatencies, 0.99), percentile (sortedLatencies, 0.999), sortedLatencies[sortedLatencies.length - 1] / 1000.0);
+	}
+
+	private static double percentile (long[] sortedLatencies, double fraction) {
+		int index = (int) Math.min (sortedLatencies.length - 1, (long) (sortedLatencies.length * fraction));
+		return sortedLatencies[index] / 1000.0;
+	}
+
+}
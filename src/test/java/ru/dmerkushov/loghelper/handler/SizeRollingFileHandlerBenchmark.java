@@ -0,0 +1,158 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.handler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Throughput of {@link SizeRollingFileHandler}, which counts the log file size in memory, compared to a handler asking the file system for the size of the log file on every record, as the handler did before. Both flush every record, so only the size accounting and the output differ; the handler is also measured with {@link FlushPolicy#BATCHED}. Not a unit test: run it by hand, with the arguments <code>[seconds per round] [rounds]</code>
+ *
+ * @author Dmitriy Merkushov
+ */
+public class SizeRollingFileHandlerBenchmark {
+
+	private static final long LOG_SIZE_BOUND = 16L * 1024L * 1024L;
+
+	public static void main (String[] args) throws IOException {
+		long roundMillis = (args.length > 0 ? Long.parseLong (args[0]) * 1000L : 2000L);
+		int rounds = (args.length > 1 ? Integer.parseInt (args[1]) : 5);
+
+		LogRecord record = new LogRecord (Level.INFO, String.format ("Request %08d processed in %d ms by worker %s", 12345678, 15, "pool-1-thread-7"));
+
+		// Warm-up round, not reported
+		measureFileLength (record, roundMillis);
+		measureCounted (record, FlushPolicy.EVERY_RECORD, roundMillis);
+		measureCounted (record, FlushPolicy.BATCHED, roundMillis);
+
+		for (int round = 1; round <= rounds; round++) {
+			double fileLengthRate = measureFileLength (record, roundMillis);
+			double countedRate = measureCounted (record, FlushPolicy.EVERY_RECORD, roundMillis);
+			double batchedRate = measureCounted (record, FlushPolicy.BATCHED, roundMillis);
+			System.out.printf ("Round %d: File.length() per record %.0f records/s, counted %.0f records/s (%.2fx), counted and batched %.0f records/s (%.2fx)%n", round, fileLengthRate, countedRate, countedRate / fileLengthRate, batchedRate, batchedRate / fileLengthRate);
+		}
+	}
+
+	private static double measureFileLength (LogRecord record, long roundMillis) throws IOException {
+		File directory = Files.createTempDirectory ("SizeRollingFileHandlerBenchmark").toFile ();
+		Handler handler = new FileLengthHandler (new File (directory, "log"));
+		try {
+			return measure (handler, record, roundMillis);
+		} finally {
+			handler.close ();
+			delete (directory);
+		}
+	}
+
+	private static double measureCounted (LogRecord record, FlushPolicy flushPolicy, long roundMillis) throws IOException {
+		File directory = Files.createTempDirectory ("SizeRollingFileHandlerBenchmark").toFile ();
+		SizeRollingFileHandler handler = new SizeRollingFileHandler (new File (directory, "log").getPath (), LOG_SIZE_BOUND);
+		handler.setFormatter (new SizeRollingFileHandlerTest.MessageFormatter ());
+		handler.setFlushPolicy (flushPolicy);
+		try {
+			return measure (handler, record, roundMillis);
+		} finally {
+			handler.close ();
+			delete (directory);
+		}
+	}
+
+	/**
+	 * Publish a record over and over for a given time
+	 * @param handler
+	 * @param record
+	 * @param roundMillis
+	 * @return records published per second
+	 */
+	static double measure (Handler handler, LogRecord record, long roundMillis) {
+		long count = 0L;
+		long start = System.nanoTime ();
+		long end = start + roundMillis * 1000000L;
+		long now;
+		do {
+			for (int i = 0; i < 100; i++) {
+				handler.publish (record);
+			}
+			count += 100;
+			now = System.nanoTime ();
+		} while (now < end);
+
+		return count * 1e9 / (now - start);
+	}
+
+	static void delete (File directory) {
+		File[] files = directory.listFiles ();
+		if (files != null) {
+			for (File file : files) {
+				file.delete ();
+			}
+		}
+		directory.delete ();
+	}
+
+	/**
+	 * Writes the records the way the size rolling handler did before counting the size: asks the file system for the log file length on every record, writes through a file output stream and flushes every record
+	 */
+	static class FileLengthHandler extends Handler {
+
+		private final File file;
+		private FileOutputStream fos;
+		private int rolledCount = 0;
+
+		FileLengthHandler (File file) throws IOException {
+			this.file = file;
+			this.fos = new FileOutputStream (file);
+			setFormatter (new SizeRollingFileHandlerTest.MessageFormatter ());
+		}
+
+		@Override
+		public synchronized void publish (LogRecord record) {
+			String recordMsg = getFormatter ().format (record);
+			byte[] bytes = recordMsg.getBytes ();
+
+			try {
+				if (file.length () + bytes.length > LOG_SIZE_BOUND) {
+					fos.close ();
+					file.renameTo (new File (file.getPath () + "_renamed_" + (++rolledCount)));
+					fos = new FileOutputStream (file);
+				}
+				fos.write (bytes);
+				fos.flush ();
+			} catch (IOException ex) {
+				throw new IllegalStateException (ex);
+			}
+		}
+
+		@Override
+		public void flush () {
+		}
+
+		@Override
+		public synchronized void close () {
+			try {
+				fos.close ();
+			} catch (IOException ex) {
+				throw new IllegalStateException (ex);
+			}
+		}
+	}
+
+}
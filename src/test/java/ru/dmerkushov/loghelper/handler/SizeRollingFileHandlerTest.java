@@ -0,0 +1,229 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.handler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ru.dmerkushov.loghelper.formatter.PatternFormatter;
+
+import static org.junit.Assert.*;
+
+/**
+ * Size accounting and rollover of {@link SizeRollingFileHandler}
+ *
+ * @author Dmitriy Merkushov
+ */
+public class SizeRollingFileHandlerTest {
+
+	private static final long LOG_SIZE_BOUND = 1024L;
+
+	private File directory;
+	private SizeRollingFileHandler handler;
+
+	@Before
+	public void setUp () throws IOException {
+		directory = Files.createTempDirectory ("SizeRollingFileHandlerTest").toFile ();
+		handler = new SizeRollingFileHandler (new File (directory, "log").getPath (), LOG_SIZE_BOUND);
+		handler.setEncoding ("UTF-8");
+		handler.setFormatter (new MessageFormatter ());
+	}
+
+	@After
+	public void tearDown () {
+		handler.close ();
+		for (File file : directory.listFiles ()) {
+			file.delete ();
+		}
+		directory.delete ();
+	}
+
+	@Test
+	public void testSizeCountedInBytes () throws IOException {
+		// Two-byte and three-byte characters in UTF-8
+		publish ("\u0436\u0436\u0436 \u20ac");
+		publish ("plain");
+		handler.flush ();
+
+		File[] files = directory.listFiles ();
+		assertEquals (1, files.length);
+		assertEquals (files[0].length (), handler.getLogFileSize ());
+		assertEquals (("\u0436\u0436\u0436 \u20ac\nplain\n").getBytes (StandardCharsets.UTF_8).length, handler.getLogFileSize ());
+	}
+
+	@Test
+	public void testRollOver () throws IOException {
+		List<String> messages = publishNumbered (50);
+		handler.close ();
+
+		assertFilesBounded ();
+		assertEquals (messages, readAllMessages ());
+		assertTrue (directory.listFiles ().length > 1);
+	}
+
+	@Test
+	public void testRollOverWithMargin () throws IOException {
+		handler.setRolloverMargin (256L);
+		List<String> messages = publishNumbered (50);
+		handler.close ();
+
+		for (File file : directory.listFiles ()) {
+			assertTrue (file.getName () + " is " + file.length () + " bytes long", file.length () <= LOG_SIZE_BOUND - 256L);
+		}
+		assertEquals (messages, readAllMessages ());
+	}
+
+	@Test
+	public void testRollOverMappedSegments () throws IOException {
+		handler.setMappedSegments (true);
+		List<String> messages = publishNumbered (50);
+		handler.close ();
+
+		assertFilesBounded ();
+		assertEquals (messages, readAllMessages ());
+	}
+
+	@Test
+	public void testRecordLargerThanBound () throws IOException {
+		StringBuilder large = new StringBuilder ();
+		for (int i = 0; i < LOG_SIZE_BOUND * 2; i++) {
+			large.append ('x');
+		}
+		publish ("before");
+		publish (large.toString ());
+		publish ("after");
+		handler.close ();
+
+		List<String> messages = readAllMessages ();
+		assertEquals (3, messages.size ());
+		assertTrue (messages.contains (large.toString ()));
+	}
+
+	@Test
+	public void testRecoverSegmentsOfCrashedProcess () throws IOException {
+		handler.close ();
+
+		// As left by a process that crashed with this active file: a prepared segment with records, and an empty one
+		File crashedActiveFile = directory.listFiles ()[0];
+		File leftover = new File (crashedActiveFile.getPath () + ".next1");
+		File emptyLeftover = new File (crashedActiveFile.getPath () + ".next2");
+		Files.write (leftover.toPath (), "left over\n".getBytes (StandardCharsets.UTF_8));
+		emptyLeftover.createNewFile ();
+
+		handler = new SizeRollingFileHandler (new File (directory, "log").getPath (), LOG_SIZE_BOUND);
+		handler.close ();
+
+		assertFalse (leftover.exists ());
+		assertFalse (emptyLeftover.exists ());
+		List<String> renamed = new ArrayList<> ();
+		for (File file : directory.listFiles ()) {
+			if (file.getName ().contains ("_renamed_")) {
+				renamed.addAll (Files.readAllLines (file.toPath (), StandardCharsets.UTF_8));
+			}
+		}
+		assertEquals (Collections.singletonList ("left over"), renamed);
+	}
+
+	@Test
+	public void testRecordPublishedWhileFormatting () throws IOException {
+		handler.setFormatter (new PatternFormatter ("%message%params%n"));
+
+		LogRecord record = new LogRecord (Level.INFO, "outer");
+		record.setParameters (new Object[] {new PublishingParam (handler, "inner")});
+		handler.publish (record);
+		handler.close ();
+
+		assertEquals (Arrays.asList ("inner", "outer [param]"), Files.readAllLines (directory.listFiles ()[0].toPath (), StandardCharsets.UTF_8));
+	}
+
+	private void publish (String message) {
+		handler.publish (new LogRecord (Level.INFO, message));
+	}
+
+	private List<String> publishNumbered (int count) {
+		List<String> messages = new ArrayList<> ();
+		for (int i = 0; i < count; i++) {
+			String message = String.format ("record %03d %080d", i, i);
+			publish (message);
+			messages.add (message);
+		}
+		return messages;
+	}
+
+	private void assertFilesBounded () {
+		for (File file : directory.listFiles ()) {
+			assertTrue (file.getName () + " is " + file.length () + " bytes long", file.length () <= LOG_SIZE_BOUND);
+		}
+	}
+
+	/**
+	 * Read the messages of all the log files, sorted, as the records are numbered
+	 * @return
+	 * @throws IOException
+	 */
+	private List<String> readAllMessages () throws IOException {
+		List<String> messages = new ArrayList<> ();
+		for (File file : directory.listFiles ()) {
+			messages.addAll (Files.readAllLines (file.toPath (), StandardCharsets.UTF_8));
+		}
+		Collections.sort (messages);
+		return messages;
+	}
+
+	/**
+	 * A parameter publishing a record to a handler when turned to a string
+	 */
+	static class PublishingParam {
+
+		private final Handler handler;
+		private final String message;
+
+		PublishingParam (Handler handler, String message) {
+			this.handler = handler;
+			this.message = message;
+		}
+
+		@Override
+		public String toString () {
+			handler.publish (new LogRecord (Level.INFO, message));
+			return "param";
+		}
+	}
+
+	/**
+	 * Formats a record as its message on a line
+	 */
+	static class MessageFormatter extends Formatter {
+
+		@Override
+		public String format (LogRecord record) {
+			return record.getMessage () + "\n";
+		}
+	}
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2014 dmerkushov.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.dmerkushov.loghelper.limit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import org.junit.Test;
+import ru.dmerkushov.loghelper.CallerInfoMode;
+import ru.dmerkushov.loghelper.LogHelper;
+import ru.dmerkushov.loghelper.LoggerWrapper;
+import ru.dmerkushov.loghelper.StructuredLogRecord;
+
+import static org.junit.Assert.*;
+
+/**
+ * Counts of the record limiters
+ *
+ * @author Dmitriy Merkushov
+ */
+public class RecordLimiterTest {
+
+	@Test
+	public void testSamplingPermitsOneOfN () {
+		RecordLimiter limiter = new SamplingRecordLimiter (3L);
+
+		assertEquals (0L, limiter.acquire ());
+		assertEquals (RecordLimiter.SUPPRESSED, limiter.acquire ());
+		assertEquals (RecordLimiter.SUPPRESSED, limiter.acquire ());
+		assertEquals (2L, limiter.getSuppressedCount ());
+		assertEquals (2L, limiter.acquire ());
+		assertEquals (0L, limiter.getSuppressedCount ());
+
+		int permitted = 0;
+		for (int i = 0; i < 300; i++) {
+			if (limiter.acquire () != RecordLimiter.SUPPRESSED) {
+				permitted++;
+			}
+		}
+		assertEquals (100, permitted);
+	}
+
+	@Test
+	public void testSamplingRateOfOnePermitsAll () {
+		RecordLimiter limiter = new SamplingRecordLimiter (1L);
+
+		for (int i = 0; i < 10; i++) {
+			assertEquals (0L, limiter.acquire ());
+		}
+	}
+
+	@Test (expected = IllegalArgumentException.class)
+	public void testSamplingRateLessThanOne () {
+		new SamplingRecordLimiter (0L);
+	}
+
+	@Test
+	public void testTokenBucketBurst () throws InterruptedException {
+		// One token every 100 ms, so none is added while the burst is taken
+		RecordLimiter limiter = new TokenBucketRecordLimiter (10.0, 3);
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals (0L, limiter.acquire ());
+		}
+		for (int i = 0; i < 4; i++) {
+			assertEquals (RecordLimiter.SUPPRESSED, limiter.acquire ());
+		}
+		assertEquals (4L, limiter.getSuppressedCount ());
+
+		Thread.sleep (150L);
+		assertEquals (4L, limiter.acquire ());
+		assertEquals (RecordLimiter.SUPPRESSED, limiter.acquire ());
+	}
+
+	@Test (expected = IllegalArgumentException.class)
+	public void testTokenBucketRateNotPositive () {
+		new TokenBucketRecordLimiter (0.0, 1);
+	}
+
+	@Test (expected = IllegalArgumentException.class)
+	public void testTokenBucketBurstLessThanOne () {
+		new TokenBucketRecordLimiter (1.0, 0);
+	}
+
+	@Test
+	public void testLimiterPerCallSite () {
+		checkLimiterPerCallSite (CallerInfoMode.FULL);
+	}
+
+	@Test
+	public void testLimiterPerCallSiteWithoutCallerInfo () {
+		checkLimiterPerCallSite (CallerInfoMode.NONE);
+	}
+
+	private void checkLimiterPerCallSite (CallerInfoMode mode) {
+		LoggerWrapper loggerWrapper = LogHelper.getLoggerWrapper (RecordLimiterTest.class.getName () + "." + mode);
+		Logger logger = loggerWrapper.getLogger ();
+		CollectingHandler handler = new CollectingHandler ();
+		logger.setUseParentHandlers (false);
+		logger.addHandler (handler);
+		try {
+			loggerWrapper.setCallerInfoMode (mode);
+			loggerWrapper.setRecordLimiterFactory (() -> new SamplingRecordLimiter (2L));
+
+			for (int i = 0; i < 5; i++) {
+				loggerWrapper.info ("first");
+				loggerWrapper.info ("second");
+			}
+		} finally {
+			logger.removeHandler (handler);
+		}
+
+		// Records 1, 3 and 5 of each call site
+		assertEquals (6, handler.records.size ());
+		int firstCount = 0;
+		for (LogRecord record : handler.records) {
+			if (record.getMessage ().equals ("first")) {
+				firstCount++;
+			}
+		}
+		assertEquals (3, firstCount);
+		assertEquals (0L, ((StructuredLogRecord) handler.records.get (0)).getSuppressedCount ());
+		assertEquals (1L, ((StructuredLogRecord) handler.records.get (5)).getSuppressedCount ());
+	}
+
+	/**
+	 * Keeps the records published to it
+	 */
+	static class CollectingHandler extends Handler {
+
+		final List<LogRecord> records = new ArrayList<> ();
+
+		@Override
+		public synchronized void publish (LogRecord record) {
+			records.add (record);
+		}
+
+		@Override
+		public void flush () {
+		}
+
+		@Override
+		public void close () throws SecurityException {
+		}
+	}
+
+}